@@ -0,0 +1,91 @@
+package com.hymnsmobile.pipeline;
+
+import com.google.protobuf.TextFormat;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNet;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetJson;
+import com.hymnsmobile.pipeline.utils.ProtoUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares loading a full-size Hymnal.net snapshot the old way (an unbuffered, unclosed FileInputStream), with a
+ * buffered stream, and from a gzipped file the way snapshots are written now (the current path).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SnapshotLoadingBenchmark {
+
+  private static final String SONG = "src/test/resources/hymnalnet/storage/c60.textproto";
+
+  /**
+   * Roughly the number of songs in a real snapshot.
+   */
+  private static final int SONGS = 15_000;
+
+  private Path snapshot;
+  private Path gzippedSnapshot;
+
+  @Setup
+  public void setUp() throws IOException {
+    HymnalNet.Builder template = HymnalNet.newBuilder();
+    TextFormat.merge(Files.readString(Path.of(SONG), StandardCharsets.UTF_8), template);
+    HymnalNetJson song = template.getHymnanlNetJson(0);
+
+    HymnalNet.Builder builder = HymnalNet.newBuilder();
+    for (int i = 0; i < SONGS; i++) {
+      builder.addHymnanlNetJson(
+          song.toBuilder().setKey(song.getKey().toBuilder().setHymnNumber(String.valueOf(i))));
+    }
+    snapshot = Files.createTempFile("snapshot", ".binaryproto");
+    try (OutputStream output = Files.newOutputStream(snapshot)) {
+      builder.build().writeTo(output);
+    }
+    gzippedSnapshot = Files.createTempFile("snapshot", ".binaryproto");
+    try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(gzippedSnapshot), ProtoUtils.BUFFER_SIZE)) {
+      builder.build().writeTo(output);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(snapshot);
+    Files.deleteIfExists(gzippedSnapshot);
+  }
+
+  @Benchmark
+  public HymnalNet parseFromFileInputStream() throws IOException {
+    try (InputStream input = new FileInputStream(snapshot.toFile())) {
+      return HymnalNet.parseFrom(input);
+    }
+  }
+
+  @Benchmark
+  public HymnalNet parseFromBufferedStream() throws IOException {
+    try (InputStream input = new BufferedInputStream(new FileInputStream(snapshot.toFile()))) {
+      return HymnalNet.parseFrom(input);
+    }
+  }
+
+  @Benchmark
+  public HymnalNet parseGzipped() throws IOException {
+    return ProtoUtils.parseFile(gzippedSnapshot, HymnalNet.parser());
+  }
+}
@@ -0,0 +1,71 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.google.protobuf.util.JsonFormat;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetJson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares parsing a Hymnal.net response by first reading the whole body into a string (the old path) against merging
+ * straight from a stream (the current path), with and without gzip on the wire.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseParsingBenchmark {
+
+  private static final String RESPONSE = "src/test/resources/hymnalnet/input/_v2_hymn_h_1";
+
+  private byte[] body;
+  private byte[] gzippedBody;
+
+  @Setup
+  public void setUp() throws IOException {
+    body = Files.readAllBytes(Path.of(RESPONSE));
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+      gzip.write(body);
+    }
+    gzippedBody = compressed.toByteArray();
+  }
+
+  @Benchmark
+  public HymnalNetJson parseFromString() throws IOException {
+    String response = new String(new ByteArrayInputStream(body).readAllBytes(), StandardCharsets.UTF_8);
+    HymnalNetJson.Builder builder = HymnalNetJson.newBuilder();
+    JsonFormat.parser().merge(response, builder);
+    return builder.build();
+  }
+
+  @Benchmark
+  public HymnalNetJson parseFromStream() throws IOException {
+    HymnalNetJson.Builder builder = HymnalNetJson.newBuilder();
+    JsonFormat.parser().merge(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8), builder);
+    return builder.build();
+  }
+
+  @Benchmark
+  public HymnalNetJson parseFromGzippedStream() throws IOException {
+    HymnalNetJson.Builder builder = HymnalNetJson.newBuilder();
+    JsonFormat.parser().merge(
+        new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(gzippedBody)), StandardCharsets.UTF_8),
+        builder);
+    return builder.build();
+  }
+}
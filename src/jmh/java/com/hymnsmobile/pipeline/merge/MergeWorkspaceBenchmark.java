@@ -0,0 +1,121 @@
+package com.hymnsmobile.pipeline.merge;
+
+import com.google.common.collect.ImmutableList;
+import com.hymnsmobile.pipeline.Profiler;
+import com.hymnsmobile.pipeline.models.Hymn;
+import com.hymnsmobile.pipeline.models.PipelineError;
+import com.hymnsmobile.pipeline.models.SongReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares merging several sources into a synthetic corpus with a single {@link MergeWorkspace} kept across every merge
+ * step (the current path) against building every hymn at the end of each step and copying them all back into a new
+ * workspace at the start of the next one (the old path). Both sanitize after every step.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MergeWorkspaceBenchmark {
+
+  /**
+   * Roughly the number of English hymns in a real run, each of which gets a Chinese translation.
+   */
+  private static final int HYMNS = 7_500;
+
+  /**
+   * Hymn types merged in after the initial corpus, one merge step each.
+   */
+  private static final ImmutableList<HymnType> MERGED_TYPES =
+      ImmutableList.of(HymnType.GERMAN, HymnType.RUSSIAN, HymnType.KOREAN, HymnType.JAPANESE);
+
+  /**
+   * Number of hymns each merge step adds, each a translation of an English hymn.
+   */
+  private static final int HYMNS_PER_STEP = 1_000;
+
+  private ImmutableList<Hymn> corpus;
+
+  @Setup
+  public void setUp() {
+    ImmutableList.Builder<Hymn> builder = ImmutableList.builder();
+    for (int i = 1; i <= HYMNS; i++) {
+      builder.add(Hymn.newBuilder()
+                      .setId(2 * i)
+                      .addReferences(reference(HymnType.CLASSIC_HYMN, i))
+                      .addLanguages(reference(HymnType.CHINESE, i))
+                      .build());
+      builder.add(Hymn.newBuilder()
+                      .setId(2 * i + 1)
+                      .addReferences(reference(HymnType.CHINESE, i))
+                      .addLanguages(reference(HymnType.CLASSIC_HYMN, i))
+                      .build());
+    }
+    corpus = builder.build();
+  }
+
+  @Benchmark
+  public ImmutableList<Hymn> keepWorkspaceAcrossSteps() {
+    SanitizationPipeline sanitizationPipeline = sanitizationPipeline();
+    MergeWorkspace workspace = workspaceOf(corpus);
+    sanitizationPipeline.sanitize(workspace);
+    for (HymnType hymnType : MERGED_TYPES) {
+      merge(workspace, hymnType);
+      sanitizationPipeline.sanitize(workspace);
+    }
+    return workspace.build();
+  }
+
+  @Benchmark
+  public ImmutableList<Hymn> rebuildWorkspaceEachStep() {
+    SanitizationPipeline sanitizationPipeline = sanitizationPipeline();
+    MergeWorkspace workspace = workspaceOf(corpus);
+    sanitizationPipeline.sanitize(workspace);
+    ImmutableList<Hymn> hymns = workspace.build();
+    for (HymnType hymnType : MERGED_TYPES) {
+      workspace = workspaceOf(hymns);
+      // Only what the step merges in needs sanitizing, just like with a single workspace.
+      workspace.takeChangedReferences();
+      merge(workspace, hymnType);
+      sanitizationPipeline.sanitize(workspace);
+      hymns = workspace.build();
+    }
+    return hymns;
+  }
+
+  private static void merge(MergeWorkspace workspace, HymnType hymnType) {
+    for (int i = 1; i <= HYMNS_PER_STEP; i++) {
+      SongReference reference = reference(hymnType, i);
+      SongReference parentReference = reference(HymnType.CLASSIC_HYMN, i);
+      workspace.add(Hymn.newBuilder().addReferences(reference).addLanguages(parentReference));
+      workspace.addLanguage(workspace.get(parentReference).orElseThrow(), reference);
+    }
+  }
+
+  private static MergeWorkspace workspaceOf(ImmutableList<Hymn> hymns) {
+    MergeWorkspace workspace = new MergeWorkspace();
+    hymns.forEach(hymn -> workspace.add(hymn.toBuilder()));
+    return workspace;
+  }
+
+  private static SanitizationPipeline sanitizationPipeline() {
+    Set<PipelineError> errors = new LinkedHashSet<>();
+    return new SanitizationPipeline(new LanguageAuditor(errors), new RelevantsAuditor(errors), new Profiler(), errors);
+  }
+
+  private static SongReference reference(HymnType hymnType, int number) {
+    return SongReference.newBuilder()
+        .setHymnType(hymnType.abbreviatedValue)
+        .setHymnNumber(String.valueOf(number))
+        .build();
+  }
+}
@@ -1,16 +1,41 @@
 package com.hymnsmobile.pipeline;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.io.CountingOutputStream;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
 import com.google.protobuf.Parser;
+import com.google.protobuf.TextFormat;
 import com.hymnsmobile.pipeline.dagger.PipelineScope;
+import com.hymnsmobile.pipeline.models.CompressionReport;
+import com.hymnsmobile.pipeline.models.SnapshotEntry;
+import com.hymnsmobile.pipeline.utils.ProtoUtils;
 
 import javax.inject.Inject;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Generic class that reads from and writes to files.
@@ -20,8 +45,45 @@ public class FileReadWriter {
 
   private static final Logger LOGGER = Logger.getGlobal();
 
+  /**
+   * Name of a full output, which can be read on its own.
+   */
+  public static final String OUTPUT = "output";
+
+  /**
+   * Name of an output that only contains the changes since the output before it.
+   */
+  public static final String DELTA = "delta";
+
+  /**
+   * Whether {@link #writeProto} also writes a human-readable textproto next to each binary proto. On by default. Turn
+   * it off for production runs with -Dpipeline.skipTextProtos=true.
+   */
+  private final boolean writeTextProtos;
+
+  /**
+   * Writes textprotos in the background, so that they stay off the critical path. The thread goes away once it is idle,
+   * so it never keeps the JVM alive after the last write.
+   */
+  private final ExecutorService textProtoWriter =
+      new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+  private final List<Future<?>> pendingWrites = new ArrayList<>();
+
+  private final LongAdder uncompressedBytesWritten = new LongAdder();
+  private final LongAdder compressedBytesWritten = new LongAdder();
+  private final LongAdder compressNanos = new LongAdder();
+  private final LongAdder compressedBytesRead = new LongAdder();
+  private final LongAdder uncompressedBytesRead = new LongAdder();
+  private final LongAdder decompressNanos = new LongAdder();
+
   @Inject
   public FileReadWriter() {
+    this(!Boolean.getBoolean("pipeline.skipTextProtos"));
+  }
+
+  @VisibleForTesting
+  public FileReadWriter(boolean writeTextProtos) {
+    this.writeTextProtos = writeTextProtos;
   }
 
   public Optional<File> readLargestFilePath(String path, Optional<String> fileMask) {
@@ -47,29 +109,320 @@ public class FileReadWriter {
       if (files == null) {
         throw new IllegalArgumentException(String.format("Not a directory: %s", directory));
       }
-      String latestOutputFile = directory + "/output.binaryproto";
-      try {
-        M parsed = parser.parseFrom(new FileInputStream(latestOutputFile));
-        return Optional.of(parsed);
-      } catch (InvalidProtocolBufferException | FileNotFoundException e) {
-        throw new IllegalArgumentException(String.format("Exception occurred while parsing: %s", latestOutputFile), e);
-      }
+      return Optional.of(parseFile(new File(directory, OUTPUT + ".binaryproto"), parser));
     });
   }
 
-  public <M extends Message> void writeProto(String directoryPath, M message) throws IOException {
+  /**
+   * Like {@link #readLatestOutput(String, Optional, Parser)}, except that outputs may also have been written as deltas
+   * on top of the output before them (see {@link #writeProto(String, String, Message)} with {@link #DELTA}). The most
+   * recent full output is read, and then every delta written since is replayed on top of it, in order.
+   * <p/>
+   * Which outputs those are comes from the {@link SnapshotCatalog} of {@code path}, which is created from the outputs
+   * matching {@code fileMask} if there isn't one yet.
+   */
+  public <M extends Message, D extends Message> Optional<M> readLatestOutput(
+      String path, Optional<String> fileMask, Parser<M> parser, Parser<D> deltaParser,
+      BiFunction<M, D, M> applyDelta) {
+    List<File> chain;
+    try {
+      chain = SnapshotCatalog.load(path, fileMask).getLatestChain();
+    } catch (IOException e) {
+      throw new IllegalArgumentException(String.format("Unable to read the catalog of %s", path), e);
+    }
+    if (chain.isEmpty()) {
+      return Optional.empty();
+    }
+    LOGGER.fine(String.format("Reading from %s and replaying %d deltas", chain.get(0).getParentFile().getName(),
+        chain.size() - 1));
+    M latest = parseFile(chain.get(0), parser);
+    for (File delta : chain.subList(1, chain.size())) {
+      latest = applyDelta.apply(latest, parseFile(delta, deltaParser));
+    }
+    return Optional.of(latest);
+  }
+
+  /**
+   * Adds the output that was just written to {@code directoryPath} to the {@link SnapshotCatalog} of the directory it
+   * is in. If {@code fullOutputsToKeep} is positive, the outputs there that are no longer needed are then deleted (see
+   * {@link SnapshotCatalog#applyRetention}).
+   *
+   * @param fileMask which directories are outputs, in case the catalog doesn't exist yet
+   * @param written what {@link #writeProto} returned for the output
+   * @param recordCount number of records in the output, or, for a delta, in the output it results in
+   * @param fullOutputsToKeep how many full outputs (along with their deltas) to keep, or 0 to keep everything
+   */
+  public void addToCatalog(String directoryPath, Optional<String> fileMask, SnapshotEntry written, int recordCount,
+      int fullOutputsToKeep) throws IOException {
+    String parent = new File(directoryPath).getParent();
+    SnapshotCatalog catalog = SnapshotCatalog.load(parent, fileMask);
+    catalog.add(directoryPath, written, recordCount);
+    if (fullOutputsToKeep > 0) {
+      List<String> dropped = catalog.applyRetention(fullOutputsToKeep);
+      if (!dropped.isEmpty()) {
+        LOGGER.warning(String.format("Deleting %d outputs from %s to keep only the last %d full outputs: %s",
+            dropped.size(), parent, fullOutputsToKeep, dropped));
+      }
+      for (String directory : dropped) {
+        deleteRecursively(directory);
+      }
+    }
+    // Saved only after deleting, so that an interruption in between leaves the catalog pointing at outputs that no
+    // longer exist (which loading tolerates), rather than leaving outputs behind that nothing knows about.
+    catalog.save();
+  }
+
+  public <M extends Message> SnapshotEntry writeProto(String directoryPath, M message) throws IOException {
+    return writeProto(directoryPath, OUTPUT, message);
+  }
+
+  /**
+   * Writes {@code message} into a new directory, as both {@code <name>.binaryproto} and {@code <name>.textproto}. The
+   * binary proto is gzipped. Readers detect that from its first bytes, so snapshots written before compression was
+   * introduced can still be read.
+   *
+   * @return the catalog entry of what was written, with the hashes of both the message and the file, which are
+   *     computed as the message is written rather than by reading it back (see {@link #addToCatalog})
+   */
+  public <M extends Message> SnapshotEntry writeProto(String directoryPath, String name, M message)
+      throws IOException {
     if (!new File(directoryPath).mkdirs()) {
       throw new IllegalArgumentException(String.format("Unable to create %s", directoryPath));
     }
-    try (FileOutputStream output = new FileOutputStream(directoryPath + "/output.binaryproto")) {
+    MessageDigest contentDigest = ProtoUtils.newSha256();
+    MessageDigest fileDigest = ProtoUtils.newSha256();
+    long fileSize;
+    long start = System.nanoTime();
+    try (CountingOutputStream compressed = new CountingOutputStream(
+        new BufferedOutputStream(new FileOutputStream(directoryPath + "/" + name + ".binaryproto")));
+         GZIPOutputStream output =
+             new GZIPOutputStream(new DigestOutputStream(compressed, fileDigest), ProtoUtils.BUFFER_SIZE)) {
+      CodedOutputStream coded =
+          CodedOutputStream.newInstance(new DigestOutputStream(output, contentDigest), ProtoUtils.BUFFER_SIZE);
+      message.writeTo(coded);
+      coded.flush();
+      output.finish();
+      fileSize = compressed.getCount();
+    }
+    compressedBytesWritten.add(fileSize);
+    uncompressedBytesWritten.add(message.getSerializedSize());
+    compressNanos.add(System.nanoTime() - start);
+    if (writeTextProtos) {
+      String textProtoFile = directoryPath + "/" + name + ".textproto";
+      // Streamed straight to the file, rather than building the whole text format of the message as one String.
+      Future<?> write = textProtoWriter.submit(() -> {
+        try (Writer writer = new BufferedWriter(new FileWriter(textProtoFile, StandardCharsets.UTF_8))) {
+          TextFormat.printer().print(message, writer);
+        }
+        return null;
+      });
+      synchronized (pendingWrites) {
+        pendingWrites.add(write);
+      }
+    }
+    return SnapshotEntry.newBuilder()
+        .setDirectory(new File(directoryPath).getName())
+        .setKind(name.equals(DELTA) ? SnapshotEntry.Kind.DELTA : SnapshotEntry.Kind.FULL)
+        .setContentSha256(ByteString.copyFrom(contentDigest.digest()))
+        .setFileSha256(ByteString.copyFrom(fileDigest.digest()))
+        .setFileSize(fileSize)
+        .setFormatVersion(SnapshotCatalog.GZIPPED)
+        .build();
+  }
+
+  /**
+   * Waits for every textproto that {@link #writeProto} is still writing in the background.
+   */
+  public void awaitPendingWrites() throws IOException, InterruptedException {
+    List<Future<?>> writes;
+    synchronized (pendingWrites) {
+      writes = new ArrayList<>(pendingWrites);
+      pendingWrites.clear();
+    }
+    for (Future<?> write : writes) {
+      try {
+        write.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException ioException) {
+          throw ioException;
+        }
+        throw new IllegalStateException("Unexpected exception while writing textproto", e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Reads a single proto from {@code fileName}, or returns empty if that file doesn't exist.
+   */
+  public <M extends Message> Optional<M> readProto(String fileName, Parser<M> parser) {
+    if (!new File(fileName).exists()) {
+      return Optional.empty();
+    }
+    try (InputStream input = new BufferedInputStream(new FileInputStream(fileName))) {
+      return Optional.of(parser.parseFrom(input));
+    } catch (IOException e) {
+      throw new IllegalArgumentException(String.format("Exception occurred while parsing: %s", fileName), e);
+    }
+  }
+
+  /**
+   * Writes a single proto to {@code fileName}, overwriting it if it already exists.
+   */
+  public <M extends Message> void writeProtoFile(String fileName, M message) throws IOException {
+    createParentDirectories(fileName);
+    try (OutputStream output = new BufferedOutputStream(new FileOutputStream(fileName))) {
       message.writeTo(output);
     }
-    writeString(directoryPath + "/output.textproto", message.toString());
+  }
+
+  /**
+   * Reads {@code fileName} as a UTF-8 string, or returns empty if that file doesn't exist.
+   */
+  public Optional<String> readString(String fileName) throws IOException {
+    Path path = Path.of(fileName);
+    if (!Files.exists(path)) {
+      return Optional.empty();
+    }
+    return Optional.of(Files.readString(path, StandardCharsets.UTF_8));
+  }
+
+  public boolean exists(String fileName) {
+    return Files.exists(Path.of(fileName));
+  }
+
+  /**
+   * Reads every length-delimited proto in {@code fileName}, or returns an empty list if that file doesn't exist. A
+   * truncated record at the end of the file, e.g. from a crash part-way through an append, is ignored.
+   */
+  public <M extends Message> List<M> readDelimitedProtos(String fileName, Parser<M> parser) {
+    if (!new File(fileName).exists()) {
+      return List.of();
+    }
+    List<M> messages = new ArrayList<>();
+    try (InputStream input = new BufferedInputStream(new FileInputStream(fileName))) {
+      while (true) {
+        M message;
+        try {
+          message = parser.parseDelimitedFrom(input);
+        } catch (InvalidProtocolBufferException e) {
+          LOGGER.warning(String.format("Ignoring truncated record at the end of %s", fileName));
+          break;
+        }
+        if (message == null) {
+          break;
+        }
+        messages.add(message);
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException(String.format("Exception occurred while parsing: %s", fileName), e);
+    }
+    return messages;
+  }
+
+  /**
+   * Appends {@code messages} to {@code fileName} as length-delimited protos, and only returns once they have been
+   * synced to disk.
+   */
+  public <M extends Message> void appendDelimitedProtos(String fileName, List<M> messages) throws IOException {
+    createParentDirectories(fileName);
+    try (FileOutputStream output = new FileOutputStream(fileName, true)) {
+      BufferedOutputStream buffered = new BufferedOutputStream(output);
+      for (M message : messages) {
+        message.writeDelimitedTo(buffered);
+      }
+      buffered.flush();
+      output.getFD().sync();
+    }
+  }
+
+  /**
+   * Lists the paths of the files directly inside {@code directoryPath} in order of name, or returns an empty list if
+   * that directory doesn't exist.
+   */
+  public List<String> listFiles(String directoryPath) {
+    File[] files = new File(directoryPath).listFiles(File::isFile);
+    if (files == null) {
+      return List.of();
+    }
+    return Stream.of(files).map(File::getPath).sorted().toList();
+  }
+
+  /**
+   * Deletes {@code path} and everything inside it, if it exists.
+   */
+  public void deleteRecursively(String path) throws IOException {
+    Path root = Path.of(path);
+    if (!Files.exists(root)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path toDelete : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(toDelete);
+      }
+    }
+  }
+
+  public void writeBytes(String fileName, byte[] content) throws IOException {
+    createParentDirectories(fileName);
+    Files.write(Path.of(fileName), content);
+  }
+
+  /**
+   * Writes {@code content} to {@code fileName} as gzipped UTF-8.
+   */
+  public void writeCompressedString(String fileName, String content) throws IOException {
+    createParentDirectories(fileName);
+    try (Writer writer = new OutputStreamWriter(
+        new GZIPOutputStream(new FileOutputStream(fileName), ProtoUtils.BUFFER_SIZE), StandardCharsets.UTF_8)) {
+      writer.write(content);
+    }
+  }
+
+  /**
+   * @return how well everything written by {@link #writeProto} so far compressed
+   */
+  public CompressionReport getCompressionReport() {
+    long uncompressed = uncompressedBytesWritten.sum();
+    long compressed = compressedBytesWritten.sum();
+    return CompressionReport.newBuilder()
+        .setCodec("gzip")
+        .setUncompressedBytesWritten(uncompressed)
+        .setCompressedBytesWritten(compressed)
+        .setCompressionRatio(compressed == 0 ? 0 : (double) uncompressed / compressed)
+        .setCompressMillis(TimeUnit.NANOSECONDS.toMillis(compressNanos.sum()))
+        .setCompressedBytesRead(compressedBytesRead.sum())
+        .setUncompressedBytesRead(uncompressedBytesRead.sum())
+        .setDecompressMillis(TimeUnit.NANOSECONDS.toMillis(decompressNanos.sum()))
+        .build();
   }
 
   public void writeString(String fileName, String content) throws IOException {
-    BufferedWriter writer = new BufferedWriter(new FileWriter(fileName));
+    createParentDirectories(fileName);
+    BufferedWriter writer = new BufferedWriter(new FileWriter(fileName, StandardCharsets.UTF_8));
     writer.write(content);
     writer.close();
   }
+
+  private <M extends Message> M parseFile(File file, Parser<M> parser) {
+    try {
+      if (!ProtoUtils.isGzipped(file.toPath())) {
+        return ProtoUtils.parseFile(file.toPath(), parser);
+      }
+      long start = System.nanoTime();
+      M message = ProtoUtils.parseFile(file.toPath(), parser);
+      decompressNanos.add(System.nanoTime() - start);
+      compressedBytesRead.add(file.length());
+      uncompressedBytesRead.add(message.getSerializedSize());
+      return message;
+    } catch (IOException e) {
+      throw new IllegalArgumentException(String.format("Exception occurred while parsing: %s", file), e);
+    }
+  }
+
+  private static void createParentDirectories(String fileName) throws IOException {
+    Path parent = Path.of(fileName).toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+  }
 }
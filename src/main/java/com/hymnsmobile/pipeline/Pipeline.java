@@ -1,5 +1,8 @@
 package com.hymnsmobile.pipeline;
 
+import static com.google.common.base.Throwables.throwIfInstanceOf;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+
 import com.google.common.collect.ImmutableList;
 import com.hymnsmobile.pipeline.dagger.DaggerPipelineComponent;
 import com.hymnsmobile.pipeline.dagger.PipelineScope;
@@ -16,6 +19,7 @@ import com.hymnsmobile.pipeline.merge.dagger.MergeComponent;
 import com.hymnsmobile.pipeline.models.DuplicationResults;
 import com.hymnsmobile.pipeline.models.Hymn;
 import com.hymnsmobile.pipeline.models.PipelineError;
+import com.hymnsmobile.pipeline.models.RunReport;
 import com.hymnsmobile.pipeline.russian.RussianPipeline;
 import com.hymnsmobile.pipeline.russian.dagger.RussianPipelineComponent;
 import com.hymnsmobile.pipeline.songbase.SongbasePipeline;
@@ -28,11 +32,14 @@ import org.apache.commons.lang3.tuple.Pair;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 @PipelineScope
@@ -40,6 +47,25 @@ public class Pipeline {
 
   private static final Logger LOGGER = Logger.getGlobal();
 
+  // Names of the stages that the pipeline is made up of.
+  private static final String HYMNAL_NET = "hymnalnet";
+  private static final String H4A = "h4a";
+  private static final String LIEDERBUCH = "liederbuch";
+  private static final String RUSSIAN = "russian";
+  private static final String SONGBASE = "songbase";
+  private static final String MERGE_HYMNAL_NET = "merge hymnalnet";
+  private static final String MERGE_H4A = "merge h4a";
+  private static final String MERGE_LIEDERBUCH = "merge liederbuch";
+  private static final String MERGE_RUSSIAN = "merge russian";
+  private static final String MERGE_SONGBASE = "merge songbase";
+  private static final String DEDUP = "dedup";
+  private static final String STORAGE = "storage";
+
+  /**
+   * Number of sources, which is the most stages that can ever be running at once.
+   */
+  private static final int SOURCE_COUNT = 5;
+
   private final DedupPipeline dedupPipeline;
   private final HymnalNetPipeline hymnalNetPipeline;
   private final H4aPipeline h4aPipeline;
@@ -48,6 +74,8 @@ public class Pipeline {
   private final RussianPipeline russianPipeline;
   private final SongbasePipeline songbasePipeline;
   private final StoragePipeline storagePipeline;
+  private final FileReadWriter fileReadWriter;
+  private final Profiler profiler;
 
   @Inject
   Pipeline(
@@ -58,7 +86,9 @@ public class Pipeline {
       Provider<MergeComponent.Builder> mergePipelineBuilder,
       Provider<RussianPipelineComponent.Builder> russianPipelineComponent,
       Provider<SongbasePipelineComponent.Builder> songbasePipelineComponentBuilder,
-      Provider<StorageComponent.Builder> storagePipelineBuilder) {
+      Provider<StorageComponent.Builder> storagePipelineBuilder,
+      FileReadWriter fileReadWriter,
+      Profiler profiler) {
     this.dedupPipeline = dedupPipelineBuilder.get().build().pipeline();
     this.hymnalNetPipeline = hymnalNetPipelineBuilder.get().build().pipeline();
     this.h4aPipeline = h4aPipelineBuilder.get().build().pipeline();
@@ -67,45 +97,106 @@ public class Pipeline {
     this.russianPipeline = russianPipelineComponent.get().build().pipeline();
     this.songbasePipeline = songbasePipelineComponentBuilder.get().build().pipeline();
     this.storagePipeline = storagePipelineBuilder.get().build().pipeline();
+    this.fileReadWriter = fileReadWriter;
+    this.profiler = profiler;
   }
 
   public void run()
-      throws IOException, InterruptedException, SQLException, BadHanyuPinyinOutputFormatCombination,
-          NoSuchAlgorithmException {
+      throws IOException, InterruptedException, SQLException, BadHanyuPinyinOutputFormatCombination {
     LocalDateTime startTime = LocalDateTime.now();
     LOGGER.info("Pipeline starting at " + DateTimeFormatter.ISO_LOCAL_TIME.format(startTime));
 
-    hymnalNetPipeline.run();
-    h4aPipeline.run();
-    liederbuchPipeline.run();
-    russianPipeline.run();
-    songbasePipeline.run();
-
-    ImmutableList<Hymn> mergedHymns =
-        mergePipeline.convertHymnalNet(hymnalNetPipeline.getHymnalNetJsons());
-    mergedHymns = mergePipeline.mergeH4a(h4aPipeline.getH4aHymns(), mergedHymns);
-    mergedHymns = mergePipeline.mergeLiederbuch(liederbuchPipeline.getLiederbuchSong(), mergedHymns);
-    mergedHymns = mergePipeline.mergeRussian(russianPipeline.getRussianHymns(), mergedHymns);
-    mergedHymns = mergePipeline.mergeSongbase(songbasePipeline.getSongbaseHymns(), mergedHymns);
-    LOGGER.info("Merging completed at " + DateTimeFormatter.ISO_LOCAL_TIME.format(LocalDateTime.now()));
+    AtomicReference<Pair<ImmutableList<Hymn>, DuplicationResults>> dedupResults = new AtomicReference<>();
+    // None of the sources depend on each other, so they all run at once. Merging has to happen in a fixed order, but
+    // each source is merged in as soon as both it and the sources before it are ready.
+    StageScheduler scheduler = new StageScheduler(profiler)
+        .add(HYMNAL_NET, () -> {
+          hymnalNetPipeline.run();
+          profiler.countItems(hymnalNetPipeline.getHymnalNetJsons().size());
+        })
+        .add(H4A, () -> {
+          h4aPipeline.run();
+          profiler.countItems(h4aPipeline.getH4aHymns().size());
+        })
+        .add(LIEDERBUCH, () -> {
+          liederbuchPipeline.run();
+          profiler.countItems(liederbuchPipeline.getLiederbuchSong().size());
+        })
+        .add(RUSSIAN, () -> {
+          russianPipeline.run();
+          profiler.countItems(russianPipeline.getRussianHymns().size());
+        })
+        .add(SONGBASE, () -> {
+          songbasePipeline.run();
+          profiler.countItems(songbasePipeline.getSongbaseHymns().size());
+        })
+        .add(MERGE_HYMNAL_NET, () -> {
+          mergePipeline.convertHymnalNet(hymnalNetPipeline.getHymnalNetJsons());
+          profiler.countItems(mergePipeline.getHymnCount());
+        }, HYMNAL_NET)
+        .add(MERGE_H4A, () -> {
+          mergePipeline.mergeH4a(h4aPipeline.getH4aHymns());
+          profiler.countItems(mergePipeline.getHymnCount());
+        }, H4A, MERGE_HYMNAL_NET)
+        .add(MERGE_LIEDERBUCH, () -> {
+          mergePipeline.mergeLiederbuch(liederbuchPipeline.getLiederbuchSong());
+          profiler.countItems(mergePipeline.getHymnCount());
+        }, LIEDERBUCH, MERGE_H4A)
+        .add(MERGE_RUSSIAN, () -> {
+          mergePipeline.mergeRussian(russianPipeline.getRussianHymns());
+          profiler.countItems(mergePipeline.getHymnCount());
+        }, RUSSIAN, MERGE_LIEDERBUCH)
+        .add(MERGE_SONGBASE, () -> {
+          mergePipeline.mergeSongbase(songbasePipeline.getSongbaseHymns());
+          profiler.countItems(mergePipeline.getHymnCount());
+        }, SONGBASE, MERGE_RUSSIAN)
+        .add(DEDUP, () -> {
+          dedupResults.set(dedupPipeline.run(mergePipeline.getMergedHymns()));
+          profiler.countItems(dedupResults.get().getLeft().size());
+        }, MERGE_SONGBASE)
+        .add(STORAGE, () -> {
+          ImmutableList<PipelineError> allErrors = mergePipeline.mergeErrors(
+              hymnalNetPipeline.getErrors(), h4aPipeline.getErrors(), liederbuchPipeline.getErrors(),
+              songbasePipeline.getErrors(), mergePipeline.getErrors(), dedupPipeline.getErrors());
+          storagePipeline.run(dedupResults.get().getLeft(), allErrors, dedupResults.get().getRight());
+          profiler.countItems(dedupResults.get().getLeft().size());
+        }, DEDUP);
 
-    Pair<ImmutableList<Hymn>, DuplicationResults> dedupResults = dedupPipeline.run(mergedHymns);
+    ExecutorService executor = Executors.newFixedThreadPool(SOURCE_COUNT);
+    try {
+      scheduler.run(executor);
+    } catch (ExecutionException e) {
+      LOGGER.severe(e.getMessage());
+      Throwable cause = e.getCause();
+      throwIfInstanceOf(cause, IOException.class);
+      throwIfInstanceOf(cause, InterruptedException.class);
+      throwIfInstanceOf(cause, SQLException.class);
+      throwIfInstanceOf(cause, BadHanyuPinyinOutputFormatCombination.class);
+      throwIfUnchecked(cause);
+      throw new IllegalStateException(e.getMessage(), cause);
+    } finally {
+      executor.shutdown();
+    }
 
-    ImmutableList<PipelineError> allErrors = mergePipeline.mergeErrors(
-        hymnalNetPipeline.getErrors(), h4aPipeline.getErrors(), liederbuchPipeline.getErrors(),
-        songbasePipeline.getErrors(), mergePipeline.getErrors(), dedupPipeline.getErrors());
-    storagePipeline.run(dedupResults.getLeft(), allErrors, dedupResults.getRight());
+    // The report is written last, so that it covers storage as well.
+    storagePipeline.writeRunReport(RunReport.newBuilder()
+                                       .setHymnalNetFetch(hymnalNetPipeline.getFetchReport())
+                                       .setHymnalNetFetchMetrics(hymnalNetPipeline.getFetchMetrics())
+                                       .setSnapshotCompression(fileReadWriter.getCompressionReport())
+                                       .addAllStages(profiler.getProfiles())
+                                       .build());
+    // Textprotos are written in the background, and System.exit() below wouldn't wait for them.
+    fileReadWriter.awaitPendingWrites();
 
     LocalDateTime endTime = LocalDateTime.now();
     Duration timeTaken = Duration.between(startTime, endTime);
     LOGGER.info("Pipeline completed successfully at " + DateTimeFormatter.ISO_LOCAL_TIME.format(endTime));
-    LOGGER.info("Pipeline took " + timeTaken.toMinutes() + " minutes and " + timeTaken.toMinutesPart() + " seconds.");
+    LOGGER.info("Pipeline took " + timeTaken.toMinutes() + " minutes and " + timeTaken.toSecondsPart() + " seconds.");
     System.exit(0);
   }
 
   public static void main(String[] args)
-      throws InterruptedException, IOException, SQLException, BadHanyuPinyinOutputFormatCombination,
-          NoSuchAlgorithmException {
+      throws InterruptedException, IOException, SQLException, BadHanyuPinyinOutputFormatCombination {
     DaggerPipelineComponent.create().pipeline().run();
   }
 }
@@ -0,0 +1,204 @@
+package com.hymnsmobile.pipeline;
+
+import com.google.common.collect.ImmutableList;
+import com.hymnsmobile.pipeline.dagger.PipelineScope;
+import com.hymnsmobile.pipeline.models.StageTiming;
+
+import javax.inject.Inject;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+import java.util.logging.Logger;
+
+/**
+ * Measures what each stage of the pipeline, and each step within a stage, costs: wall time, CPU time, allocated bytes,
+ * garbage collections, and how many items it produced. Steps are nested by thread, so a step that is profiled while
+ * another one is running on the same thread is recorded as part of it.
+ */
+@PipelineScope
+public class Profiler {
+
+  private static final Logger LOGGER = Logger.getGlobal();
+
+  /**
+   * A step that produces something.
+   */
+  public interface Step<T, E extends Exception> {
+    T run() throws E;
+  }
+
+  /**
+   * A step that doesn't produce anything.
+   */
+  public interface Action<E extends Exception> {
+    void run() throws E;
+  }
+
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private final List<GarbageCollectorMXBean> garbageCollectors = ManagementFactory.getGarbageCollectorMXBeans();
+  private final long start = System.nanoTime();
+  private final ThreadLocal<Deque<Frame>> running = ThreadLocal.withInitial(ArrayDeque::new);
+  private final List<StageTiming> profiles = new ArrayList<>();
+
+  @Inject
+  public Profiler() {
+  }
+
+  /**
+   * Runs {@code step}, and records what it cost under {@code name}.
+   *
+   * @param itemCount how many items {@code step} produced, given what it returned
+   */
+  public <T, E extends Exception> T profile(String name, Step<T, E> step, ToIntFunction<? super T> itemCount)
+      throws E {
+    Frame frame = begin(name);
+    boolean succeeded = false;
+    try {
+      T result = step.run();
+      frame.profile.setItemCount(itemCount.applyAsInt(result));
+      succeeded = true;
+      return result;
+    } finally {
+      end(succeeded);
+    }
+  }
+
+  /**
+   * Runs {@code action}, and records what it cost under {@code name}. The action can report how many items it produced
+   * with {@link #countItems}.
+   */
+  public <E extends Exception> void profile(String name, Action<E> action) throws E {
+    begin(name);
+    boolean succeeded = false;
+    try {
+      action.run();
+      succeeded = true;
+    } finally {
+      end(succeeded);
+    }
+  }
+
+  /**
+   * Records how many items the innermost step running on this thread produced.
+   */
+  public void countItems(int itemCount) {
+    Frame frame = running.get().peek();
+    if (frame == null) {
+      throw new IllegalStateException("Not inside a profiled step");
+    }
+    frame.profile.setItemCount(itemCount);
+  }
+
+  /**
+   * Records that {@code name} didn't get to run at all.
+   */
+  public void skipped(String name) {
+    record(StageTiming.newBuilder()
+               .setName(name)
+               .setOutcome(StageTiming.Outcome.SKIPPED)
+               .setStartMillis(elapsedMillis())
+               .build());
+  }
+
+  /**
+   * @return everything recorded so far, in the order it finished
+   */
+  public ImmutableList<StageTiming> getProfiles() {
+    synchronized (profiles) {
+      return ImmutableList.copyOf(profiles);
+    }
+  }
+
+  private Frame begin(String name) {
+    Deque<Frame> stack = running.get();
+    StageTiming.Builder profile = StageTiming.newBuilder().setName(name).setStartMillis(elapsedMillis());
+    if (!stack.isEmpty()) {
+      profile.setParent(stack.peek().profile.getName());
+    }
+    Frame frame = new Frame(profile, System.nanoTime(), cpuNanos(), allocatedBytes(), gcCount(), gcMillis());
+    stack.push(frame);
+    return frame;
+  }
+
+  private void end(boolean succeeded) {
+    Frame frame = running.get().pop();
+    StageTiming profile = frame.profile
+        .setOutcome(succeeded ? StageTiming.Outcome.SUCCEEDED : StageTiming.Outcome.FAILED)
+        .setDurationMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - frame.startNanos))
+        .setCpuMillis(TimeUnit.NANOSECONDS.toMillis(cpuNanos() - frame.cpuNanos))
+        .setAllocatedBytes(allocatedBytes() - frame.allocatedBytes)
+        .setGcCount(gcCount() - frame.gcCount)
+        .setGcMillis(gcMillis() - frame.gcMillis)
+        .build();
+    LOGGER.info(String.format("%s %s after %d ms (%d ms CPU, %d MB allocated, %d GCs taking %d ms)",
+        profile.getName(), succeeded ? "finished" : "failed", profile.getDurationMillis(), profile.getCpuMillis(),
+        profile.getAllocatedBytes() / (1024 * 1024), profile.getGcCount(), profile.getGcMillis()));
+    record(profile);
+  }
+
+  private void record(StageTiming profile) {
+    synchronized (profiles) {
+      profiles.add(profile);
+    }
+  }
+
+  private long elapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+  /**
+   * CPU time of the current thread, or 0 if the JVM can't measure it.
+   */
+  private long cpuNanos() {
+    return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+  }
+
+  /**
+   * Bytes allocated by the current thread, or 0 if the JVM can't measure it.
+   */
+  private long allocatedBytes() {
+    if (threads instanceof com.sun.management.ThreadMXBean hotspotThreads
+        && hotspotThreads.isThreadAllocatedMemorySupported()
+        && hotspotThreads.isThreadAllocatedMemoryEnabled()) {
+      return hotspotThreads.getCurrentThreadAllocatedBytes();
+    }
+    return 0;
+  }
+
+  private long gcCount() {
+    // Collectors report -1 if they can't count.
+    return garbageCollectors.stream().mapToLong(collector -> Math.max(0, collector.getCollectionCount())).sum();
+  }
+
+  private long gcMillis() {
+    return garbageCollectors.stream().mapToLong(collector -> Math.max(0, collector.getCollectionTime())).sum();
+  }
+
+  /**
+   * A step that is still running, along with what the counters were when it started.
+   */
+  private static class Frame {
+    private final StageTiming.Builder profile;
+    private final long startNanos;
+    private final long cpuNanos;
+    private final long allocatedBytes;
+    private final long gcCount;
+    private final long gcMillis;
+
+    private Frame(StageTiming.Builder profile, long startNanos, long cpuNanos, long allocatedBytes, long gcCount,
+        long gcMillis) {
+      this.profile = profile;
+      this.startNanos = startNanos;
+      this.cpuNanos = cpuNanos;
+      this.allocatedBytes = allocatedBytes;
+      this.gcCount = gcCount;
+      this.gcMillis = gcMillis;
+    }
+  }
+}
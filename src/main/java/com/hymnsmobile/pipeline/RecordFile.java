@@ -0,0 +1,193 @@
+package com.hymnsmobile.pipeline;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CountingOutputStream;
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import com.hymnsmobile.pipeline.models.RecordIndex;
+import com.hymnsmobile.pipeline.models.RecordIndexEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Container for a large number of protos that doesn't need to be parsed all at once in order to be read. The layout
+ * is:
+ * <pre>
+ *   magic | length-delimited record | ... | {@link RecordIndex} footer | footer offset (8 bytes) | magic
+ * </pre>
+ * The footer maps each record's key to where the record is, so a reader can look up a single record, or decode any
+ * range of records (in parallel, if need be), while only ever holding the records it asked for in memory.
+ */
+public class RecordFile {
+
+  private static final byte[] MAGIC = {'H', 'R', 'F', '1'};
+  private static final int TRAILER_SIZE = Long.BYTES + MAGIC.length;
+
+  private RecordFile() {
+  }
+
+  /**
+   * Writes {@code records} to {@code fileName}, indexed by {@code keyFunction}. Keys must be unique.
+   */
+  public static <M extends Message> void write(String fileName, Collection<M> records, Function<M, String> keyFunction)
+      throws IOException {
+    Path path = Path.of(fileName).toAbsolutePath();
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    Set<String> keys = new HashSet<>();
+    List<RecordIndexEntry> entries = new ArrayList<>();
+    try (CountingOutputStream output =
+             new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+      output.write(MAGIC);
+      for (M record : records) {
+        String key = keyFunction.apply(record);
+        if (!keys.add(key)) {
+          throw new IllegalArgumentException(String.format("Duplicate key %s in %s", key, fileName));
+        }
+        long offset = output.getCount();
+        record.writeDelimitedTo(output);
+        entries.add(RecordIndexEntry.newBuilder()
+                        .setKey(key)
+                        .setOffset(offset)
+                        .setLength((int) (output.getCount() - offset))
+                        .build());
+      }
+      long footerOffset = output.getCount();
+      entries.sort(Comparator.comparing(RecordIndexEntry::getKey));
+      RecordIndex.newBuilder().addAllEntries(entries).build().writeTo(output);
+      DataOutputStream trailer = new DataOutputStream(output);
+      trailer.writeLong(footerOffset);
+      trailer.write(MAGIC);
+      trailer.flush();
+    }
+  }
+
+  public static <M extends Message> Reader<M> open(String fileName, Parser<M> parser) throws IOException {
+    FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ);
+    try {
+      long size = channel.size();
+      if (size < MAGIC.length + TRAILER_SIZE || !hasMagic(channel, 0) || !hasMagic(channel, size - MAGIC.length)) {
+        throw new IllegalArgumentException(String.format("Not a record file: %s", fileName));
+      }
+      long footerOffset = read(channel, size - TRAILER_SIZE, Long.BYTES).getLong();
+      if (footerOffset < MAGIC.length || footerOffset > size - TRAILER_SIZE) {
+        throw new IllegalArgumentException(String.format("Corrupt footer offset in %s", fileName));
+      }
+      RecordIndex index =
+          RecordIndex.parseFrom(read(channel, footerOffset, (int) (size - TRAILER_SIZE - footerOffset)));
+      return new Reader<>(channel, index, parser);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Reads records on demand. Reads are positional, so a single reader can be shared between threads.
+   */
+  public static class Reader<M extends Message> implements Closeable {
+
+    private final FileChannel channel;
+    private final ImmutableList<RecordIndexEntry> entries;
+    private final ImmutableList<String> keys;
+    private final Parser<M> parser;
+
+    private Reader(FileChannel channel, RecordIndex index, Parser<M> parser) {
+      this.channel = channel;
+      this.entries = ImmutableList.copyOf(index.getEntriesList());
+      this.keys = entries.stream().map(RecordIndexEntry::getKey).collect(ImmutableList.toImmutableList());
+      this.parser = parser;
+    }
+
+    public int size() {
+      return entries.size();
+    }
+
+    /**
+     * @return every key in the file, in sorted order
+     */
+    public ImmutableList<String> keys() {
+      return keys;
+    }
+
+    public Optional<M> get(String key) throws IOException {
+      int position = Collections.binarySearch(keys, key);
+      return position < 0 ? Optional.empty() : Optional.of(read(entries.get(position)));
+    }
+
+    /**
+     * Lazily decodes every record, in key order.
+     */
+    public Stream<M> stream() {
+      return stream(0, size());
+    }
+
+    /**
+     * Lazily decodes the records in key order from position {@code from} (inclusive) to {@code to} (exclusive).
+     */
+    public Stream<M> stream(int from, int to) {
+      return IntStream.range(from, to).mapToObj(i -> {
+        try {
+          return read(entries.get(i));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    }
+
+    private M read(RecordIndexEntry entry) throws IOException {
+      ByteBuffer buffer = RecordFile.read(channel, entry.getOffset(), entry.getLength());
+      return parser.parseDelimitedFrom(new ByteArrayInputStream(buffer.array()));
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+
+  private static boolean hasMagic(FileChannel channel, long position) throws IOException {
+    ByteBuffer magic = read(channel, position, MAGIC.length);
+    for (byte b : MAGIC) {
+      if (magic.get() != b) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new EOFException(String.format("Unexpected end of file at %d", position + buffer.position()));
+      }
+    }
+    return buffer.flip();
+  }
+}
@@ -0,0 +1,305 @@
+package com.hymnsmobile.pipeline;
+
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.hymnsmobile.pipeline.models.SnapshotEntry;
+import com.hymnsmobile.pipeline.models.SnapshotIndex;
+import com.hymnsmobile.pipeline.utils.ProtoUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Catalog of the snapshots in a storage directory (each in its own sub-directory, as written by
+ * {@link FileReadWriter#writeProto}), kept in {@link #CATALOG_FILE} next to them. It records each snapshot's kind, size,
+ * hashes and format, oldest first, so that:
+ * <ul>
+ *   <li>the latest snapshot is the last entry, rather than the largest name in a directory listing</li>
+ *   <li>a snapshot that has gone missing, been truncated or been corrupted is caught before it's read</li>
+ *   <li>old snapshots, and snapshots identical to a later one, can be cleaned up (see {@link #applyRetention})</li>
+ * </ul>
+ * Storage directories written before there was a catalog get one the first time they are loaded.
+ */
+public class SnapshotCatalog {
+
+  private static final Logger LOGGER = Logger.getGlobal();
+
+  public static final String CATALOG_FILE = "catalog.binaryproto";
+
+  private static final int FORMAT_VERSION = 1;
+  private static final int PLAIN = 1;
+  static final int GZIPPED = 2;
+
+  private final Path directory;
+  private final List<SnapshotEntry> entries;
+
+  private SnapshotCatalog(Path directory, List<SnapshotEntry> entries) {
+    this.directory = directory;
+    this.entries = entries;
+  }
+
+  /**
+   * Loads the catalog of {@code directoryPath}, building it from the sub-directories that match {@code fileMask} if
+   * there isn't one yet (or it can't be parsed). Snapshots that no longer exist are dropped from the catalog, while
+   * snapshots that are no longer the size they were written with fail the load.
+   */
+  public static SnapshotCatalog load(String directoryPath, Optional<String> fileMask) throws IOException {
+    Path directory = Path.of(directoryPath);
+    if (!Files.isDirectory(directory)) {
+      throw new IllegalArgumentException(String.format("invalid file path: %s", directoryPath));
+    }
+    Optional<SnapshotIndex> index = readIndex(directory.resolve(CATALOG_FILE));
+    if (index.isEmpty()) {
+      SnapshotCatalog catalog = new SnapshotCatalog(directory, scan(directory, fileMask));
+      if (!catalog.entries.isEmpty()) {
+        LOGGER.info(String.format("Cataloged %d existing snapshots in %s", catalog.entries.size(), directoryPath));
+        catalog.save();
+      }
+      return catalog;
+    }
+    if (index.get().getFormatVersion() > FORMAT_VERSION) {
+      throw new IllegalStateException(
+          String.format("%s is version %d, but only up to version %d is supported", directory.resolve(CATALOG_FILE),
+              index.get().getFormatVersion(), FORMAT_VERSION));
+    }
+
+    List<SnapshotEntry> entries = new ArrayList<>();
+    for (SnapshotEntry entry : index.get().getEntriesList()) {
+      File file = fileOf(directory, entry);
+      if (!file.exists()) {
+        LOGGER.warning(String.format("%s is in the catalog but no longer exists, so dropping it", file));
+        continue;
+      }
+      if (file.length() != entry.getFileSize()) {
+        throw new IllegalStateException(
+            String.format("%s is %d bytes, but was written with %d", file, file.length(), entry.getFileSize()));
+      }
+      entries.add(entry);
+    }
+    SnapshotCatalog catalog = new SnapshotCatalog(directory, entries);
+    if (entries.size() != index.get().getEntriesCount()) {
+      catalog.save();
+    }
+    return catalog;
+  }
+
+  /**
+   * @return every snapshot in the catalog, oldest first
+   */
+  public List<SnapshotEntry> getEntries() {
+    return ImmutableList.copyOf(entries);
+  }
+
+  /**
+   * @return the most recent snapshot, if there is one
+   */
+  public Optional<SnapshotEntry> getLatest() {
+    return entries.isEmpty() ? Optional.empty() : Optional.of(entries.get(entries.size() - 1));
+  }
+
+  /**
+   * The files needed to read the latest snapshot: the most recent full snapshot, followed by every delta written
+   * since, in order. The hash of each file is checked against the catalog before it is returned.
+   */
+  public List<File> getLatestChain() throws IOException {
+    int lastFull = entries.size() - 1;
+    while (lastFull >= 0 && entries.get(lastFull).getKind() != SnapshotEntry.Kind.FULL) {
+      lastFull--;
+    }
+    if (lastFull < 0) {
+      if (!entries.isEmpty()) {
+        throw new IllegalArgumentException(String.format("No output to apply the deltas in %s to", directory));
+      }
+      return List.of();
+    }
+    List<File> chain = new ArrayList<>();
+    for (SnapshotEntry entry : entries.subList(lastFull, entries.size())) {
+      File file = fileOf(directory, entry);
+      verify(file, entry);
+      chain.add(file);
+    }
+    return chain;
+  }
+
+  /**
+   * Adds the snapshot that was just written to {@code snapshotDirectory}, which must be inside this catalog's directory,
+   * as the latest one. If that directory is already in the catalog (e.g. because the catalog was only just created
+   * from the directory listing), its entry is updated in place instead.
+   * <p/>
+   * The hashes and size come from {@code written}, as returned by {@link FileReadWriter#writeProto}, so the snapshot
+   * isn't read back to hash it again.
+   *
+   * @param recordCount number of records in the snapshot, or, for a delta, in the snapshot it results in
+   */
+  public void add(String snapshotDirectory, SnapshotEntry written, int recordCount) {
+    Path snapshot = Path.of(snapshotDirectory);
+    if (!directory.toAbsolutePath().normalize().equals(snapshot.toAbsolutePath().normalize().getParent())) {
+      throw new IllegalArgumentException(String.format("%s is not in %s", snapshotDirectory, directory));
+    }
+    String name = snapshot.getFileName().toString();
+    SnapshotEntry entry = written.toBuilder()
+        .setDirectory(name)
+        .setCreatedAtEpochMillis(System.currentTimeMillis())
+        .setRecordCount(recordCount)
+        .build();
+    for (int i = 0; i < entries.size(); i++) {
+      if (entries.get(i).getDirectory().equals(name)) {
+        entries.set(i, entry.toBuilder().setCreatedAtEpochMillis(entries.get(i).getCreatedAtEpochMillis()).build());
+        return;
+      }
+    }
+    entries.add(entry);
+  }
+
+  /**
+   * Drops snapshots that are no longer needed from the catalog:
+   * <ul>
+   *   <li>a full snapshot with the same contents as a later full snapshot, unless there are deltas on top of it</li>
+   *   <li>everything from before the {@code fullSnapshotsToKeep} most recent full snapshots</li>
+   * </ul>
+   * The latest snapshot, and everything needed to read it, is always kept.
+   *
+   * @return the directories of the snapshots that were dropped, which can now be deleted
+   */
+  public List<String> applyRetention(int fullSnapshotsToKeep) {
+    if (fullSnapshotsToKeep < 1) {
+      throw new IllegalArgumentException(
+          String.format("Need to keep at least 1 full snapshot, but was asked to keep %d", fullSnapshotsToKeep));
+    }
+    Set<SnapshotEntry> dropped = new LinkedHashSet<>();
+
+    Set<ByteString> laterContents = new HashSet<>();
+    for (int i = entries.size() - 1; i >= 0; i--) {
+      SnapshotEntry entry = entries.get(i);
+      if (entry.getKind() != SnapshotEntry.Kind.FULL || entry.getContentSha256().isEmpty()) {
+        continue;
+      }
+      boolean hasDeltas = i + 1 < entries.size() && entries.get(i + 1).getKind() == SnapshotEntry.Kind.DELTA;
+      if (!laterContents.add(entry.getContentSha256()) && !hasDeltas) {
+        dropped.add(entry);
+      }
+    }
+
+    List<SnapshotEntry> fullSnapshots = entries.stream()
+        .filter(entry -> !dropped.contains(entry))
+        .filter(entry -> entry.getKind() == SnapshotEntry.Kind.FULL)
+        .toList();
+    if (fullSnapshots.size() > fullSnapshotsToKeep) {
+      SnapshotEntry oldestKept = fullSnapshots.get(fullSnapshots.size() - fullSnapshotsToKeep);
+      dropped.addAll(entries.subList(0, entries.indexOf(oldestKept)));
+    }
+
+    entries.removeAll(dropped);
+    return dropped.stream()
+        .map(entry -> directory.resolve(entry.getDirectory()).toString())
+        .toList();
+  }
+
+  /**
+   * Writes the catalog to disk. The previous catalog is only replaced once the new one has been written in full.
+   */
+  public void save() throws IOException {
+    Path temporary = directory.resolve(CATALOG_FILE + ".tmp");
+    try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+      SnapshotIndex.newBuilder()
+          .setFormatVersion(FORMAT_VERSION)
+          .addAllEntries(entries)
+          .build()
+          .writeTo(output);
+    }
+    Files.move(temporary, directory.resolve(CATALOG_FILE), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static Optional<SnapshotIndex> readIndex(Path catalogFile) throws IOException {
+    if (!Files.exists(catalogFile)) {
+      return Optional.empty();
+    }
+    try (InputStream input = new BufferedInputStream(Files.newInputStream(catalogFile))) {
+      return Optional.of(SnapshotIndex.parseFrom(input));
+    } catch (InvalidProtocolBufferException e) {
+      LOGGER.warning(String.format("Unable to parse %s, so rebuilding it: %s", catalogFile, e.getMessage()));
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Catalogs the existing sub-directories of {@code directory} that match {@code fileMask}, in order of name. Only
+   * what can be told from the files themselves is recorded.
+   */
+  private static List<SnapshotEntry> scan(Path directory, Optional<String> fileMask) throws IOException {
+    List<Path> snapshots;
+    try (Stream<Path> children = Files.list(directory)) {
+      snapshots = children
+          .filter(Files::isDirectory)
+          .filter(child -> fileMask.map(mask -> child.getFileName().toString().matches(mask)).orElse(true))
+          .sorted(Comparator.comparing(child -> child.getFileName().toString()))
+          .toList();
+    }
+    List<SnapshotEntry> entries = new ArrayList<>();
+    for (Path snapshot : snapshots) {
+      entries.add(describe(directory, snapshot.getFileName().toString(),
+          Files.getLastModifiedTime(snapshot).toMillis()).build());
+    }
+    return entries;
+  }
+
+  private static SnapshotEntry.Builder describe(Path directory, String name, long createdAtEpochMillis)
+      throws IOException {
+    Path snapshot = directory.resolve(name);
+    SnapshotEntry.Kind kind;
+    if (Files.exists(snapshot.resolve(FileReadWriter.OUTPUT + ".binaryproto"))) {
+      kind = SnapshotEntry.Kind.FULL;
+    } else if (Files.exists(snapshot.resolve(FileReadWriter.DELTA + ".binaryproto"))) {
+      kind = SnapshotEntry.Kind.DELTA;
+    } else {
+      throw new IllegalArgumentException(String.format("Neither an output nor a delta: %s", snapshot));
+    }
+    SnapshotEntry.Builder entry = SnapshotEntry.newBuilder()
+        .setDirectory(name)
+        .setKind(kind)
+        .setCreatedAtEpochMillis(createdAtEpochMillis);
+    File file = fileOf(directory, entry.build());
+    return entry
+        .setFileSha256(sha256(file))
+        .setFileSize(file.length())
+        .setFormatVersion(ProtoUtils.isGzipped(file.toPath()) ? GZIPPED : PLAIN);
+  }
+
+  private static File fileOf(Path directory, SnapshotEntry entry) {
+    String name = entry.getKind() == SnapshotEntry.Kind.DELTA ? FileReadWriter.DELTA : FileReadWriter.OUTPUT;
+    return directory.resolve(entry.getDirectory()).resolve(name + ".binaryproto").toFile();
+  }
+
+  private static void verify(File file, SnapshotEntry entry) throws IOException {
+    ByteString actual = sha256(file);
+    if (!actual.equals(entry.getFileSha256())) {
+      throw new IllegalStateException(
+          String.format("%s has been corrupted: its hash is %s, but was written with %s", file,
+              HexFormat.of().formatHex(actual.toByteArray()),
+              HexFormat.of().formatHex(entry.getFileSha256().toByteArray())));
+    }
+  }
+
+  private static ByteString sha256(File file) throws IOException {
+    return ByteString.copyFrom(ProtoUtils.hashFile(file.toPath()));
+  }
+}
@@ -0,0 +1,191 @@
+package com.hymnsmobile.pipeline;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import com.hymnsmobile.pipeline.dagger.PipelineScope;
+import com.hymnsmobile.pipeline.models.Fingerprint;
+import com.hymnsmobile.pipeline.models.StageCacheEntry;
+import com.hymnsmobile.pipeline.models.StageCacheKey;
+import com.hymnsmobile.pipeline.utils.ProtoUtils;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Caches the output of stages whose inputs hardly ever change, such as parsing the H4a database or the Liederbuch
+ * EPUB. A stage's output is stored along with a {@link StageCacheKey} of everything it was computed from, and is only
+ * reused for as long as that key still matches. Turn it off with -Dpipeline.skipStageCache=true.
+ */
+@PipelineScope
+public class StageCache {
+
+  private static final Logger LOGGER = Logger.getGlobal();
+
+  private static final String DIRECTORY = "storage/cache";
+  private static final String CLASS_FILE = ".class";
+
+  private final FileReadWriter fileReadWriter;
+  private final boolean enabled;
+
+  @Inject
+  public StageCache(FileReadWriter fileReadWriter) {
+    this(fileReadWriter, !Boolean.getBoolean("pipeline.skipStageCache"));
+  }
+
+  @VisibleForTesting
+  public StageCache(FileReadWriter fileReadWriter, boolean enabled) {
+    this.fileReadWriter = fileReadWriter;
+    this.enabled = enabled;
+  }
+
+  /**
+   * Fingerprints everything that the output of {@code stage} depends on. This needs to happen before the stage runs,
+   * since some stages consume their config as they go.
+   *
+   * @param inputFiles files that the stage reads
+   * @param code classes whose behavior affects the stage's output. Every class file in the package of each one is
+   *     fingerprinted, nested and anonymous classes included, so that a change to any helper in the same package
+   *     invalidates the cache without that helper having to be listed here
+   * @param config anything else that affects the stage's output
+   */
+  public StageCacheKey key(String stage, List<String> inputFiles, List<Class<?>> code, List<String> config)
+      throws IOException {
+    StageCacheKey.Builder key = StageCacheKey.newBuilder().setStage(stage);
+    for (String inputFile : inputFiles) {
+      key.addInputs(Fingerprint.newBuilder()
+                        .setName(inputFile)
+                        .setSha256(ByteString.copyFrom(ProtoUtils.hashFile(Path.of(inputFile)))));
+    }
+    Set<String> packages = new HashSet<>();
+    for (Class<?> clazz : code) {
+      if (packages.add(clazz.getPackageName())) {
+        key.addAllCode(fingerprintPackage(clazz));
+      }
+    }
+    return key.addAllConfig(config).build();
+  }
+
+  /**
+   * Fingerprints every class file in the package of {@code clazz}, in the order of their names, whether the package was
+   * loaded from a directory or from a jar. Subpackages aren't included.
+   */
+  private static List<Fingerprint> fingerprintPackage(Class<?> clazz) throws IOException {
+    String packageName = clazz.getPackageName();
+    String packagePath = packageName.replace('.', '/');
+    Path location = location(clazz);
+
+    List<Fingerprint> fingerprints = new ArrayList<>();
+    if (Files.isDirectory(location)) {
+      List<Path> classFiles;
+      try (Stream<Path> files = Files.list(location.resolve(packagePath))) {
+        classFiles = files.filter(file -> file.getFileName().toString().endsWith(CLASS_FILE)).sorted().toList();
+      }
+      for (Path classFile : classFiles) {
+        fingerprints.add(fingerprint(packageName, classFile.getFileName().toString(), ProtoUtils.hashFile(classFile)));
+      }
+    } else {
+      try (JarFile jar = new JarFile(location.toFile())) {
+        List<JarEntry> classFiles = jar.stream()
+            .filter(entry -> entry.getName().startsWith(packagePath + "/") && entry.getName().endsWith(CLASS_FILE))
+            // Leave out subpackages.
+            .filter(entry -> entry.getName().indexOf('/', packagePath.length() + 1) == -1)
+            .sorted(Comparator.comparing(JarEntry::getName))
+            .toList();
+        for (JarEntry classFile : classFiles) {
+          fingerprints.add(fingerprint(packageName, classFile.getName().substring(packagePath.length() + 1),
+              ProtoUtils.hashStream(jar.getInputStream(classFile))));
+        }
+      }
+    }
+    if (fingerprints.isEmpty()) {
+      throw new IllegalStateException(String.format("Unable to find the class files of %s", packageName));
+    }
+    return fingerprints;
+  }
+
+  /**
+   * @return the directory or jar that {@code clazz} was loaded from
+   */
+  private static Path location(Class<?> clazz) {
+    CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+    if (codeSource == null) {
+      throw new IllegalStateException(String.format("Unable to find where %s was loaded from", clazz.getName()));
+    }
+    try {
+      return Path.of(codeSource.getLocation().toURI());
+    } catch (URISyntaxException e) {
+      throw new IllegalStateException(String.format("Unable to find where %s was loaded from", clazz.getName()), e);
+    }
+  }
+
+  private static Fingerprint fingerprint(String packageName, String classFileName, byte[] sha256) {
+    return Fingerprint.newBuilder()
+        .setName(packageName + "." + classFileName.substring(0, classFileName.length() - CLASS_FILE.length()))
+        .setSha256(ByteString.copyFrom(sha256))
+        .build();
+  }
+
+  /**
+   * @return what the stage output last time, if it was computed from exactly what {@code key} describes
+   */
+  public <M extends Message> Optional<M> read(StageCacheKey key, Parser<M> parser) {
+    if (!enabled) {
+      return Optional.empty();
+    }
+    String fileName = fileName(key);
+    Optional<StageCacheEntry> entry;
+    try {
+      entry = fileReadWriter.readProto(fileName, StageCacheEntry.parser());
+    } catch (IllegalArgumentException e) {
+      LOGGER.warning(String.format("Ignoring %s, since it couldn't be parsed: %s", fileName, e.getMessage()));
+      return Optional.empty();
+    }
+    if (entry.isEmpty()) {
+      LOGGER.info(String.format("Nothing cached for %s yet", key.getStage()));
+      return Optional.empty();
+    }
+    if (!entry.get().getKey().equals(key)) {
+      LOGGER.info(String.format("The inputs of %s have changed since it was cached", key.getStage()));
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(parser.parseFrom(entry.get().getOutput()));
+    } catch (InvalidProtocolBufferException e) {
+      LOGGER.warning(String.format("Ignoring the output cached in %s, since it couldn't be parsed: %s", fileName,
+          e.getMessage()));
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Caches {@code output} as what the stage outputs for {@code key}, replacing whatever was cached for it before.
+   */
+  public void write(StageCacheKey key, Message output) throws IOException {
+    if (!enabled) {
+      return;
+    }
+    fileReadWriter.writeProtoFile(
+        fileName(key), StageCacheEntry.newBuilder().setKey(key).setOutput(output.toByteString()).build());
+  }
+
+  private static String fileName(StageCacheKey key) {
+    return String.format("%s/%s.binaryproto", DIRECTORY, key.getStage());
+  }
+}
@@ -0,0 +1,111 @@
+package com.hymnsmobile.pipeline;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs stages of the pipeline concurrently, each one as soon as the stages it depends on have finished. Stages have to
+ * be added after the stages they depend on, so there can't be any cycles.
+ * <p/>
+ * Once a stage fails, the stages that haven't started yet are skipped, while the ones that are already running are
+ * left to finish.
+ */
+public class StageScheduler {
+
+  /**
+   * A unit of work for the scheduler to run.
+   */
+  public interface Stage {
+    void run() throws Exception;
+  }
+
+  private final Profiler profiler;
+  private final Map<String, Stage> stages = new LinkedHashMap<>();
+  private final Map<String, ImmutableList<String>> dependencies = new LinkedHashMap<>();
+
+  /**
+   * @param profiler where to record what each stage costs
+   */
+  public StageScheduler(Profiler profiler) {
+    this.profiler = profiler;
+  }
+
+  /**
+   * Adds a stage that can only start once every stage in {@code dependsOn} has finished.
+   */
+  public StageScheduler add(String name, Stage stage, String... dependsOn) {
+    if (stages.containsKey(name)) {
+      throw new IllegalArgumentException(String.format("Stage %s was already added", name));
+    }
+    for (String dependency : dependsOn) {
+      if (!stages.containsKey(dependency)) {
+        throw new IllegalArgumentException(
+            String.format("%s depends on %s, which needs to be added first", name, dependency));
+      }
+    }
+    stages.put(name, stage);
+    dependencies.put(name, ImmutableList.copyOf(dependsOn));
+    return this;
+  }
+
+  /**
+   * Runs every stage on {@code executor} and waits for all of them to finish. Each stage is profiled under its name.
+   *
+   * @throws ExecutionException if any stage failed, with the first failure as its cause and any later ones suppressed
+   */
+  public void run(Executor executor) throws InterruptedException, ExecutionException {
+    AtomicBoolean failed = new AtomicBoolean();
+    Set<String> started = ConcurrentHashMap.newKeySet();
+    List<Map.Entry<String, Exception>> failures = Collections.synchronizedList(new ArrayList<>());
+
+    Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+    for (Map.Entry<String, Stage> entry : stages.entrySet()) {
+      String name = entry.getKey();
+      CompletableFuture<?>[] inputs =
+          dependencies.get(name).stream().map(futures::get).toArray(CompletableFuture[]::new);
+      futures.put(name, CompletableFuture.allOf(inputs).thenRunAsync(() -> {
+        started.add(name);
+        if (failed.get()) {
+          profiler.skipped(name);
+          return;
+        }
+        try {
+          profiler.profile(name, entry.getValue()::run);
+        } catch (Exception e) {
+          failed.set(true);
+          failures.add(Map.entry(name, e));
+          throw new CompletionException(e);
+        }
+      }, executor));
+    }
+
+    for (CompletableFuture<Void> future : futures.values()) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        // Already recorded in failures, either by the stage that failed or by one of its dependencies.
+      }
+    }
+    // Stages whose dependencies failed never got to run at all.
+    stages.keySet().stream().filter(name -> !started.contains(name)).forEach(profiler::skipped);
+
+    if (!failures.isEmpty()) {
+      ExecutionException exception = new ExecutionException(
+          String.format("Stage %s failed", failures.get(0).getKey()), failures.get(0).getValue());
+      failures.stream().skip(1).map(Map.Entry::getValue).forEach(exception::addSuppressed);
+      throw exception;
+    }
+  }
+}
@@ -1,15 +1,25 @@
 package com.hymnsmobile.pipeline.h4a;
 
 import com.google.common.collect.ImmutableList;
+import com.hymnsmobile.pipeline.StageCache;
 import com.hymnsmobile.pipeline.dagger.DaggerPipelineComponent;
 import com.hymnsmobile.pipeline.h4a.dagger.H4a;
 import com.hymnsmobile.pipeline.h4a.dagger.H4aPipelineScope;
+import com.hymnsmobile.pipeline.h4a.dagger.MiscBlockList;
+import com.hymnsmobile.pipeline.h4a.dagger.NonExistentRelatedSongs;
+import com.hymnsmobile.pipeline.h4a.dagger.OneOff;
+import com.hymnsmobile.pipeline.h4a.models.H4A;
 import com.hymnsmobile.pipeline.h4a.models.H4aHymn;
 import com.hymnsmobile.pipeline.models.PipelineError;
+import com.hymnsmobile.pipeline.models.StageCacheKey;
+import com.hymnsmobile.pipeline.utils.TextUtil;
 import net.sourceforge.pinyin4j.format.exception.BadHanyuPinyinOutputFormatCombination;
 
 import javax.inject.Inject;
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -18,18 +28,32 @@ public class H4aPipeline {
 
   private static final Logger LOGGER = Logger.getGlobal();
 
+  private static final String STAGE = "h4a";
+
+  private final List<String> miscBlockList;
+  private final List<String> nonExistentRelatedSongs;
+  private final List<String> oneOffCases;
   private final Reader reader;
   private final Set<PipelineError> errors;
   private final Set<H4aHymn> h4aHymns;
+  private final StageCache stageCache;
 
   @Inject
   public H4aPipeline(
       @H4a Set<PipelineError> errors,
       Set<H4aHymn> h4aHymns,
-      Reader reader) {
+      @MiscBlockList List<String> miscBlockList,
+      @NonExistentRelatedSongs List<String> nonExistentRelatedSongs,
+      @OneOff List<String> oneOffCases,
+      Reader reader,
+      StageCache stageCache) {
     this.errors = errors;
     this.h4aHymns = h4aHymns;
+    this.miscBlockList = miscBlockList;
+    this.nonExistentRelatedSongs = nonExistentRelatedSongs;
+    this.oneOffCases = oneOffCases;
     this.reader = reader;
+    this.stageCache = stageCache;
   }
 
   public ImmutableList<H4aHymn> getH4aHymns() {
@@ -40,13 +64,30 @@ public class H4aPipeline {
     return ImmutableList.copyOf(errors);
   }
 
-  public void run() throws BadHanyuPinyinOutputFormatCombination, SQLException {
+  public void run() throws BadHanyuPinyinOutputFormatCombination, SQLException, IOException {
     LOGGER.info("H4a pipeline starting");
+    // The block lists are consumed while reading the database, so they have to be fingerprinted beforehand.
+    StageCacheKey key = stageCache.key(
+        STAGE,
+        List.of(Reader.SQL_SCRIPT_PATH),
+        // The h4a package, its models, the common models and the text utilities it uses.
+        List.of(H4aPipeline.class, H4aHymn.class, PipelineError.class, TextUtil.class),
+        List.of("miscBlockList=" + miscBlockList,
+                "nonExistentRelatedSongs=" + nonExistentRelatedSongs,
+                "oneOffCases=" + oneOffCases));
+    Optional<H4A> cached = stageCache.read(key, H4A.parser());
+    if (cached.isPresent()) {
+      h4aHymns.addAll(cached.get().getHymnsList());
+      errors.addAll(cached.get().getErrorsList());
+      LOGGER.info("H4a pipeline finished with cached results, since nothing has changed since the last run");
+      return;
+    }
     reader.readDb();
+    stageCache.write(key, H4A.newBuilder().addAllHymns(h4aHymns).addAllErrors(errors).build());
     LOGGER.info("H4a pipeline finished");
   }
 
-  public static void main(String[] args) throws BadHanyuPinyinOutputFormatCombination, SQLException {
+  public static void main(String[] args) throws BadHanyuPinyinOutputFormatCombination, SQLException, IOException {
     DaggerPipelineComponent.create().h4aComponent().build().pipeline().run();
   }
 }
@@ -42,7 +42,7 @@ public class Reader {
 
   private static final Logger LOGGER = Logger.getGlobal();
 
-  private static final String SQL_SCRIPT_PATH = String.format("storage/h4a/hymns-%s.sql", H4A_VERSION);
+  static final String SQL_SCRIPT_PATH = String.format("storage/h4a/hymns-%s.sql", H4A_VERSION);
   private static final String SQLITE_PATH = String.format("storage/h4a/h4a-%s.sqlite", H4A_VERSION);
 
   private final BlockList blockList;
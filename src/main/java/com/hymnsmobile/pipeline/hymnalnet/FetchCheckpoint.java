@@ -0,0 +1,162 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.google.common.collect.ImmutableList;
+import com.hymnsmobile.pipeline.FileReadWriter;
+import com.hymnsmobile.pipeline.hymnalnet.dagger.HymnalNetPipelineScope;
+import com.hymnsmobile.pipeline.hymnalnet.models.CheckpointRecord;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetJson;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetKey;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Append-only record of the songs that have been settled during a fetch from Hymnal.net, so that a fetch that was
+ * interrupted (e.g. by a crash or a network outage) can be resumed without repeating the requests that had already
+ * completed.
+ * <p/>
+ * Each run appends to a segment of its own every {@link #FLUSH_EVERY} songs, so a crash loses at most that many
+ * requests, and a record that was only partially written can't corrupt the records of a later run. Failed fetches
+ * aren't recorded, so that they are retried when the fetch is resumed. The whole checkpoint is deleted once the
+ * fetched songs have been written to storage.
+ * <p/>
+ * Each batch is written and synced to disk outside of the lock that records are added under, so that the other workers
+ * can keep recording songs while it waits for the disk.
+ */
+@HymnalNetPipelineScope
+public class FetchCheckpoint {
+
+  private static final Logger LOGGER = Logger.getGlobal();
+
+  private static final String DIRECTORY = "storage/hymnalnet/checkpoint";
+  static final int FLUSH_EVERY = 50;
+
+  private final FileReadWriter fileReadWriter;
+  private final String segment;
+  private final ConcurrentMap<HymnalNetKey, HymnalNetJson> fetched;
+  private final Set<HymnalNetKey> notFound;
+
+  /**
+   * Records that haven't been appended to the segment yet. Guarded by {@code this}.
+   */
+  private List<CheckpointRecord> pending;
+
+  /**
+   * Held while appending to the segment, so that batches don't interleave.
+   */
+  private final Object writeLock = new Object();
+
+  @Inject
+  public FetchCheckpoint(FileReadWriter fileReadWriter, ZonedDateTime currentTime) {
+    this.fileReadWriter = fileReadWriter;
+    this.segment = String.format("%s/%s.binaryproto", DIRECTORY,
+        currentTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss_z")));
+    this.fetched = new ConcurrentHashMap<>();
+    this.notFound = ConcurrentHashMap.newKeySet();
+    this.pending = new ArrayList<>();
+  }
+
+  /**
+   * Reads every segment left behind by interrupted runs. Later records take precedence over earlier ones.
+   */
+  public void load() {
+    for (String file : fileReadWriter.listFiles(DIRECTORY)) {
+      for (CheckpointRecord record : fileReadWriter.readDelimitedProtos(file, CheckpointRecord.parser())) {
+        switch (record.getRecordCase()) {
+          case FETCHED -> {
+            fetched.put(record.getFetched().getKey(), record.getFetched());
+            notFound.remove(record.getFetched().getKey());
+          }
+          case NOT_FOUND -> {
+            notFound.add(record.getNotFound());
+            fetched.remove(record.getNotFound());
+          }
+          default -> LOGGER.warning(String.format("Ignoring empty checkpoint record in %s", file));
+        }
+      }
+    }
+    if (!fetched.isEmpty() || !notFound.isEmpty()) {
+      LOGGER.info(String.format("Resuming from checkpoint with %d fetched songs and %d songs not found",
+          fetched.size(), notFound.size()));
+    }
+  }
+
+  /**
+   * @return every song that was fetched before the previous run was interrupted
+   */
+  public ImmutableList<HymnalNetJson> getFetchedSongs() {
+    return ImmutableList.copyOf(fetched.values());
+  }
+
+  public Optional<HymnalNetJson> getFetched(HymnalNetKey key) {
+    return Optional.ofNullable(fetched.get(key));
+  }
+
+  public boolean wasNotFound(HymnalNetKey key) {
+    return notFound.contains(key);
+  }
+
+  public void recordFetched(HymnalNetJson hymnalNetJson) {
+    append(CheckpointRecord.newBuilder().setFetched(hymnalNetJson).build());
+  }
+
+  public void recordNotFound(HymnalNetKey key) {
+    append(CheckpointRecord.newBuilder().setNotFound(key).build());
+  }
+
+  /**
+   * Appends any records that are still pending to this run's segment.
+   */
+  public void flush() {
+    write(takePending());
+  }
+
+  /**
+   * Deletes the checkpoint, once everything it contains has been written to storage.
+   */
+  public void clear() throws IOException {
+    fileReadWriter.deleteRecursively(DIRECTORY);
+  }
+
+  private void append(CheckpointRecord record) {
+    List<CheckpointRecord> batch;
+    synchronized (this) {
+      pending.add(record);
+      if (pending.size() < FLUSH_EVERY) {
+        return;
+      }
+      batch = takePending();
+    }
+    write(batch);
+  }
+
+  private synchronized List<CheckpointRecord> takePending() {
+    List<CheckpointRecord> batch = pending;
+    pending = new ArrayList<>();
+    return batch;
+  }
+
+  private void write(List<CheckpointRecord> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    // Every song is only settled once per run, so batches may land in the segment in any order.
+    synchronized (writeLock) {
+      try {
+        fileReadWriter.appendDelimitedProtos(segment, batch);
+      } catch (IOException e) {
+        // Losing a checkpoint only costs repeated requests if this run is interrupted, so don't fail the fetch over it.
+        LOGGER.warning(String.format("Unable to write checkpoint to %s: %s", segment, e.getMessage()));
+      }
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.hymnsmobile.pipeline.hymnalnet.dagger.HymnalNetPipelineScope;
+import com.hymnsmobile.pipeline.hymnalnet.models.FetchMetrics;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetKey;
+import com.hymnsmobile.pipeline.hymnalnet.models.ThroughputSample;
+
+import javax.inject.Inject;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects {@link FetchMetrics} from every fetch thread, so that a slow crawl can be attributed to latency, throttling
+ * (see {@link FetchPolicy#getReport()}), parsing or the number of related songs being discovered.
+ */
+@HymnalNetPipelineScope
+public class FetchMetricsCollector {
+
+  private final ConcurrentMap<String, LongAdder> results = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LatencyHistogram> latencyByHymnType = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Long, LongAdder> requestsBySecond = new ConcurrentHashMap<>();
+  private final LongAdder bytesDownloaded = new LongAdder();
+  private final LongAdder responsesParsed = new LongAdder();
+  private final LongAdder parseNanos = new LongAdder();
+  private final LongAdder relatedSongs = new LongAdder();
+
+  private volatile long startNanos = System.nanoTime();
+
+  @Inject
+  public FetchMetricsCollector() {
+  }
+
+  /**
+   * Marks the start of the fetch, which the requests-per-second timeline is relative to.
+   */
+  public void start() {
+    startNanos = System.nanoTime();
+  }
+
+  public void recordResult(FetchResult fetchResult) {
+    results.computeIfAbsent(fetchResult.getClass().getSimpleName(), unused -> new LongAdder()).increment();
+  }
+
+  public void recordRequest(HymnalNetKey key, Duration latency) {
+    latencyByHymnType.computeIfAbsent(key.getHymnType(), unused -> new LatencyHistogram()).record(latency);
+    long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos);
+    requestsBySecond.computeIfAbsent(second, unused -> new LongAdder()).increment();
+  }
+
+  public void recordBytesDownloaded(long bytes) {
+    bytesDownloaded.add(bytes);
+  }
+
+  public void recordParse(Duration duration) {
+    responsesParsed.increment();
+    parseNanos.add(duration.toNanos());
+  }
+
+  public void recordRelatedSongs(int count) {
+    relatedSongs.add(count);
+  }
+
+  public FetchMetrics toProto() {
+    FetchMetrics.Builder builder = FetchMetrics.newBuilder()
+        .setBytesDownloaded(bytesDownloaded.sum())
+        .setResponsesParsed(responsesParsed.sum())
+        .setParseMicros(TimeUnit.NANOSECONDS.toMicros(parseNanos.sum()))
+        .setRelatedSongs(relatedSongs.sum());
+    results.forEach((result, count) -> builder.putResults(result, count.sum()));
+    latencyByHymnType.forEach((hymnType, histogram) -> builder.putLatencyByHymnType(hymnType, histogram.toProto()));
+    for (Map.Entry<Long, LongAdder> sample : new TreeMap<>(requestsBySecond).entrySet()) {
+      builder.addRequestsPerSecond(
+          ThroughputSample.newBuilder().setSecond(sample.getKey()).setRequests(sample.getValue().sum()));
+    }
+    return builder.build();
+  }
+}
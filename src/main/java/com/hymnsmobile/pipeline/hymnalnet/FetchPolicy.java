@@ -0,0 +1,257 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.hymnsmobile.pipeline.hymnalnet.dagger.HymnalNetPipelineScope;
+import com.hymnsmobile.pipeline.hymnalnet.models.FetchReport;
+
+import javax.inject.Inject;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Sits between {@link Fetcher} and {@link HttpClient} so that a struggling Hymnal.net backend slows the crawl down
+ * instead of turning into hundreds of lost songs. It:
+ * <ul>
+ *   <li>rate-limits requests with a token bucket, whose rate is halved whenever Hymnal.net responds with a 429/503 or
+ *   responds slowly, and slowly recovers otherwise (i.e. additive increase, multiplicative decrease)</li>
+ *   <li>retries transient failures with jittered exponential backoff, honoring Retry-After when it is present</li>
+ *   <li>pauses every request after too many consecutive failures, rather than spraying errors while the backend is
+ *   down</li>
+ * </ul>
+ */
+@HymnalNetPipelineScope
+public class FetchPolicy {
+
+  private static final Logger LOGGER = Logger.getGlobal();
+
+  private static final double RATE_DECREASE_FACTOR = 0.5;
+  private static final double RATE_INCREASE_STEP = 0.1;
+
+  private final HttpClient client;
+  private final FetchPolicyConfig config;
+
+  // Token bucket state, guarded by this.
+  private double requestsPerSecond;
+  private double tokens;
+  private long lastRefillNanos;
+
+  /**
+   * Incremented every time the rate is lowered. Requests remember the generation they were sent in, so that requests
+   * that were already in flight when the rate was lowered can't lower it again.
+   */
+  private long rateGeneration;
+
+  // Circuit breaker state, guarded by this.
+  private int consecutiveFailures;
+  private long pausedUntilNanos;
+
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicLong throttledResponses = new AtomicLong();
+  private final AtomicLong rateLimitWaitNanos = new AtomicLong();
+  private final AtomicLong backoffWaitNanos = new AtomicLong();
+  private final AtomicInteger circuitBreakerTrips = new AtomicInteger();
+  private final AtomicLong circuitBreakerWaitNanos = new AtomicLong();
+
+  @Inject
+  public FetchPolicy(HttpClient client, FetchPolicyConfig config) {
+    this.client = client;
+    this.config = config;
+    this.requestsPerSecond = config.initialRequestsPerSecond;
+    this.tokens = 1;
+    this.lastRefillNanos = System.nanoTime();
+  }
+
+  /**
+   * Sends the request, retrying transient failures. The last response (or exception) is returned once the request
+   * either succeeds, fails permanently, or runs out of attempts.
+   */
+  public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+      throws IOException, InterruptedException {
+    for (int attempt = 1; ; attempt++) {
+      waitForCircuitBreaker();
+      waitForRateLimit();
+
+      requests.incrementAndGet();
+      long generation = getRateGeneration();
+      long start = System.nanoTime();
+      HttpResponse<T> response;
+      try {
+        response = client.send(request, bodyHandler);
+      } catch (IOException e) {
+        recordFailure();
+        if (attempt >= config.maxAttempts) {
+          throw e;
+        }
+        LOGGER.fine(String.format("Retrying %s after exception: %s", request.uri(), e.getMessage()));
+        backOff(attempt, Optional.empty());
+        continue;
+      }
+      Duration latency = Duration.ofNanos(System.nanoTime() - start);
+
+      int statusCode = response.statusCode();
+      if (statusCode == 429 || statusCode == 503) {
+        throttledResponses.incrementAndGet();
+        decreaseRate(generation);
+      } else if (latency.compareTo(config.slowResponseThreshold) > 0) {
+        decreaseRate(generation);
+      } else {
+        increaseRate();
+      }
+
+      if (!isRetryable(statusCode)) {
+        recordSuccess();
+        return response;
+      }
+      recordFailure();
+      if (attempt >= config.maxAttempts) {
+        return response;
+      }
+      LOGGER.fine(String.format("Retrying %s after %d response", request.uri(), statusCode));
+      Optional<Duration> retryAfter = retryAfter(response);
+      discard(response);
+      backOff(attempt, retryAfter);
+    }
+  }
+
+  public FetchReport getReport() {
+    synchronized (this) {
+      return FetchReport.newBuilder()
+          .setRequests(requests.get())
+          .setRetries(retries.get())
+          .setThrottledResponses(throttledResponses.get())
+          .setRateLimitWaitMillis(TimeUnit.NANOSECONDS.toMillis(rateLimitWaitNanos.get()))
+          .setBackoffWaitMillis(TimeUnit.NANOSECONDS.toMillis(backoffWaitNanos.get()))
+          .setCircuitBreakerTrips(circuitBreakerTrips.get())
+          .setCircuitBreakerWaitMillis(TimeUnit.NANOSECONDS.toMillis(circuitBreakerWaitNanos.get()))
+          .setFinalRequestsPerSecond(requestsPerSecond)
+          .build();
+    }
+  }
+
+  @VisibleForTesting
+  static boolean isRetryable(int statusCode) {
+    return statusCode == 429 || statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+  }
+
+  private void waitForRateLimit() throws InterruptedException {
+    long waitNanos;
+    synchronized (this) {
+      if (requestsPerSecond <= 0) {
+        return;
+      }
+      long now = System.nanoTime();
+      // Allow a burst of at most one second's worth of requests.
+      tokens = Math.min(Math.max(1, requestsPerSecond),
+                        tokens + (now - lastRefillNanos) / 1e9 * requestsPerSecond);
+      lastRefillNanos = now;
+      tokens -= 1;
+      waitNanos = tokens >= 0 ? 0 : (long) (-tokens / requestsPerSecond * 1e9);
+    }
+    if (waitNanos > 0) {
+      rateLimitWaitNanos.addAndGet(waitNanos);
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  private void waitForCircuitBreaker() throws InterruptedException {
+    long waitNanos;
+    synchronized (this) {
+      waitNanos = pausedUntilNanos - System.nanoTime();
+    }
+    if (waitNanos > 0) {
+      circuitBreakerWaitNanos.addAndGet(waitNanos);
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  private synchronized long getRateGeneration() {
+    return rateGeneration;
+  }
+
+  /**
+   * Lowers the rate, unless it was already lowered since the request was sent. With many workers, a struggling backend
+   * slows down every request that is in flight at the time. Those all stand for the same problem, so they should only
+   * halve the rate once instead of once per worker.
+   */
+  private synchronized void decreaseRate(long sentInGeneration) {
+    if (requestsPerSecond <= 0 || sentInGeneration != rateGeneration) {
+      return;
+    }
+    rateGeneration++;
+    requestsPerSecond = Math.max(config.minRequestsPerSecond, requestsPerSecond * RATE_DECREASE_FACTOR);
+  }
+
+  private synchronized void increaseRate() {
+    if (requestsPerSecond <= 0) {
+      return;
+    }
+    requestsPerSecond = Math.min(config.maxRequestsPerSecond, requestsPerSecond + RATE_INCREASE_STEP);
+  }
+
+  private synchronized void recordSuccess() {
+    consecutiveFailures = 0;
+  }
+
+  private synchronized void recordFailure() {
+    consecutiveFailures++;
+    long now = System.nanoTime();
+    if (consecutiveFailures >= config.circuitBreakerThreshold && pausedUntilNanos <= now) {
+      LOGGER.warning(String.format("%d consecutive failed requests. Pausing the crawl for %s",
+                                   consecutiveFailures, config.circuitBreakerCooldown));
+      circuitBreakerTrips.incrementAndGet();
+      pausedUntilNanos = now + config.circuitBreakerCooldown.toNanos();
+    }
+  }
+
+  private void backOff(int attempt, Optional<Duration> retryAfter) throws InterruptedException {
+    retries.incrementAndGet();
+    // "Full jitter": wait a random amount of time up to the exponential backoff, so that concurrent requests that
+    // failed together don't all retry together.
+    long ceilingNanos = Math.min(config.maxBackoff.toNanos(),
+                                 config.baseBackoff.toNanos() << Math.min(attempt - 1, 30));
+    long waitNanos = ceilingNanos > 0 ? ThreadLocalRandom.current().nextLong(ceilingNanos + 1) : 0;
+    if (retryAfter.isPresent()) {
+      waitNanos = Math.max(waitNanos, Math.min(config.maxBackoff.toNanos(), retryAfter.get().toNanos()));
+    }
+    if (waitNanos > 0) {
+      backoffWaitNanos.addAndGet(waitNanos);
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  /**
+   * Streamed bodies need to be closed in order to release the connection, even if they're never read.
+   */
+  private static void discard(HttpResponse<?> response) throws IOException {
+    if (response.body() instanceof Closeable body) {
+      body.close();
+    }
+  }
+
+  /**
+   * Only the delay-seconds form of Retry-After is supported. HTTP-date values are ignored.
+   */
+  private static Optional<Duration> retryAfter(HttpResponse<?> response) {
+    if (response.headers() == null) {
+      return Optional.empty();
+    }
+    return response.headers().firstValue("Retry-After").flatMap(value -> {
+      try {
+        return Optional.of(Duration.ofSeconds(Long.parseLong(value.trim())));
+      } catch (NumberFormatException e) {
+        return Optional.empty();
+      }
+    });
+  }
+}
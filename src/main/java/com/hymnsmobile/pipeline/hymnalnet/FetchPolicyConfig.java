@@ -0,0 +1,51 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import java.time.Duration;
+
+/**
+ * Knobs for {@link FetchPolicy}.
+ */
+public class FetchPolicyConfig {
+
+  /**
+   * Requests per second to start out with. The actual rate adapts between {@link #minRequestsPerSecond} and
+   * {@link #maxRequestsPerSecond} based on how Hymnal.net is responding. A non-positive rate disables rate limiting.
+   */
+  public final double initialRequestsPerSecond;
+  public final double minRequestsPerSecond;
+  public final double maxRequestsPerSecond;
+
+  /**
+   * Responses slower than this are treated as a sign that Hymnal.net is struggling, and the rate is lowered.
+   */
+  public final Duration slowResponseThreshold;
+
+  /**
+   * Total number of attempts for a single request, including the first one.
+   */
+  public final int maxAttempts;
+  public final Duration baseBackoff;
+  public final Duration maxBackoff;
+
+  /**
+   * Number of consecutive failed attempts, across all requests, after which the crawl is paused for
+   * {@link #circuitBreakerCooldown}.
+   */
+  public final int circuitBreakerThreshold;
+  public final Duration circuitBreakerCooldown;
+
+  public FetchPolicyConfig(
+      double initialRequestsPerSecond, double minRequestsPerSecond, double maxRequestsPerSecond,
+      Duration slowResponseThreshold, int maxAttempts, Duration baseBackoff, Duration maxBackoff,
+      int circuitBreakerThreshold, Duration circuitBreakerCooldown) {
+    this.initialRequestsPerSecond = initialRequestsPerSecond;
+    this.minRequestsPerSecond = minRequestsPerSecond;
+    this.maxRequestsPerSecond = maxRequestsPerSecond;
+    this.slowResponseThreshold = slowResponseThreshold;
+    this.maxAttempts = maxAttempts;
+    this.baseBackoff = baseBackoff;
+    this.maxBackoff = maxBackoff;
+    this.circuitBreakerThreshold = circuitBreakerThreshold;
+    this.circuitBreakerCooldown = circuitBreakerCooldown;
+  }
+}
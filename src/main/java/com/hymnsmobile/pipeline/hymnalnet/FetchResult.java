@@ -5,20 +5,23 @@ import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetJson;
 public abstract class FetchResult {
 
   /**
-   * Already seen during current execution of the pipeline.
+   * Result has been stored from a previous execution of the pipeline.
    */
-  public static class AlreadySeen extends FetchResult {
+  public static class AlreadyStored extends FetchResult {
 
-    AlreadySeen() {
+    AlreadyStored() {
     }
   }
 
   /**
-   * Result has been stored from a previous execution of the pipeline.
+   * Hymnal.net confirmed that the result stored from a previous execution of the pipeline is still up-to-date.
    */
-  public static class AlreadyStored extends FetchResult {
+  public static class NotModified extends FetchResult {
 
-    AlreadyStored() {
+    public final HymnalNetJson response;
+
+    NotModified(HymnalNetJson response) {
+      this.response = response;
     }
   }
 
@@ -1,10 +1,15 @@
 package com.hymnsmobile.pipeline.hymnalnet;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.io.CountingInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.util.JsonFormat;
+import com.hymnsmobile.pipeline.hymnalnet.dagger.FetchConcurrency;
 import com.hymnsmobile.pipeline.hymnalnet.dagger.HymnalNet;
+import com.hymnsmobile.pipeline.hymnalnet.dagger.HymnalNetEndpoint;
 import com.hymnsmobile.pipeline.hymnalnet.dagger.HymnalNetPipelineScope;
+import com.hymnsmobile.pipeline.hymnalnet.dagger.RefreshStoredSongs;
+import com.hymnsmobile.pipeline.hymnalnet.models.CachedResponse;
 import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetJson;
 import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetKey;
 import com.hymnsmobile.pipeline.hymnalnet.models.MetaDatum;
@@ -14,18 +19,36 @@ import com.hymnsmobile.pipeline.models.PipelineError.Severity;
 import com.hymnsmobile.pipeline.utils.TextUtil;
 
 import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.hymnsmobile.pipeline.hymnalnet.Converter.extractFromPath;
@@ -35,167 +58,445 @@ public class Fetcher {
 
   private static final Logger LOGGER = Logger.getGlobal();
 
-  private static final String SCHEME = "https";
-  private static final String AUTHORITY = "hymnalnetapi.herokuapp.com";
   private static final String PATH = "/v2/hymn/%s/%s";
   private static final String CHECK_EXISTS = "check_exists=true";
 
-  private final HttpClient client;
+  /**
+   * Put on the frontier once for every worker when the crawl is over, so that workers waiting for more keys stop.
+   * Compared by identity, so it can't be mistaken for a real key.
+   */
+  private static final HymnalNetKey END_OF_CRAWL = HymnalNetKey.getDefaultInstance();
+
+  private final URI endpoint;
+  private final FetchPolicy fetchPolicy;
+  private final ResponseCache responseCache;
+  private final NotFoundCache notFoundCache;
+  private final FetchCheckpoint checkpoint;
+  private final FetchMetricsCollector metrics;
+  private final ProbePlanner probePlanner;
+  private final int concurrency;
+  private final boolean refreshStored;
   private final ImmutableList<HymnalNetKey> songsToFetch;
 
-  private final Set<HymnalNetJson> hymnalNetJsons;
+  private final ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons;
   private final Set<PipelineError> errors;
-  private final Set<HymnalNetKey> processed;
+
+  /**
+   * Settled result for every key that has been visited during this execution of the pipeline.
+   */
+  private final ConcurrentMap<HymnalNetKey, FetchResult> results;
+
+  /**
+   * Every key that has ever been added to the frontier, so that each song is only visited once even if it is linked to
+   * from many other songs.
+   */
+  private final Set<HymnalNetKey> discovered;
+
+  /**
+   * Keys that were requested directly, rather than discovered as related songs. These get errors of their own if they
+   * can't be fetched.
+   */
+  private final Set<HymnalNetKey> topLevel;
 
   @Inject
-  public Fetcher(HttpClient client,
+  public Fetcher(@HymnalNetEndpoint URI endpoint,
+      FetchPolicy fetchPolicy,
+      ResponseCache responseCache,
+      NotFoundCache notFoundCache,
+      FetchCheckpoint checkpoint,
+      FetchMetricsCollector metrics,
+      ProbePlanner probePlanner,
+      @FetchConcurrency int concurrency,
+      @RefreshStoredSongs boolean refreshStored,
       ImmutableList<HymnalNetKey> songsToFetch,
-      Set<HymnalNetJson> hymnalNetJsons,
+      ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons,
       @HymnalNet Set<PipelineError> errors) {
-    this.client = client;
+    this.endpoint = endpoint;
+    this.fetchPolicy = fetchPolicy;
+    this.responseCache = responseCache;
+    this.notFoundCache = notFoundCache;
+    this.checkpoint = checkpoint;
+    this.metrics = metrics;
+    this.probePlanner = probePlanner;
+    this.concurrency = concurrency;
+    this.refreshStored = refreshStored;
     this.hymnalNetJsons = hymnalNetJsons;
     this.songsToFetch = songsToFetch;
     this.errors = errors;
-    this.processed = new HashSet<>();
+    this.results = new ConcurrentHashMap<>();
+    this.discovered = ConcurrentHashMap.newKeySet();
+    this.topLevel = ConcurrentHashMap.newKeySet();
   }
 
   /**
    * Fetch hymns afresh from Hymnal.net.
+   * <p/>
+   * This is a breadth-first crawl: starting from {@link #songsToFetch}, each visited song adds its related songs (i.e.
+   * languages and relevants) to the frontier. Once the frontier has been exhausted, links to related songs that
+   * couldn't be fetched are pruned in a separate pass. If the concurrency is greater than 1, then up to that many songs
+   * will be fetched in parallel. Either way, the resulting songs and errors are the same.
+   * <p/>
+   * Hymn types whose numbers aren't contiguous are requested according to the {@link ProbePlanner} instead.
+   * <p/>
+   * Songs that were settled before a previous fetch was interrupted are taken from the {@link FetchCheckpoint} rather
+   * than requested again.
    */
   public void fetchHymns() {
-    LOGGER.info("Starting fetch...");
-    for (HymnalNetKey key : songsToFetch) {
-      String keyString = key.hasQueryParams() ?
-          String.format("%s/%s%s", key.getHymnType(), key.getHymnNumber(), key.getQueryParams()) :
-          String.format("%s/%s", key.getHymnType(), key.getHymnNumber());
+    LOGGER.info(String.format("Starting fetch with a concurrency of %d...", concurrency));
+    BlockingQueue<HymnalNetKey> frontier = new LinkedBlockingQueue<>();
+    AtomicInteger outstanding = new AtomicInteger();
+    metrics.start();
+    checkpoint.getFetchedSongs().forEach(hymnalNetJson -> hymnalNetJsons.put(hymnalNetJson.getKey(), hymnalNetJson));
+    topLevel.addAll(songsToFetch);
+    topLevel.addAll(probePlanner.plan(hymnalNetJsons.keySet(), notFoundCache::isKnownMissing));
+    topLevel.forEach(key -> enqueue(key, frontier, outstanding));
+    crawl(frontier, outstanding);
+    checkpoint.flush();
+    LOGGER.info(String.format("Crawl complete. Visited %d songs", results.size()));
 
-      HymnType hymnType = HymnType.fromString(key.getHymnType()).orElseThrow();
-      FetchResult fetchResult = fetchHymn(key);
+    pruneLinks();
+    topLevel.forEach(this::addTopLevelErrors);
+    LOGGER.info("Fetch Complete");
+  }
 
-      if (fetchResult instanceof FetchResult.FetchException) {
-        PipelineError.Builder error =
-            PipelineError.newBuilder()
-                .setSource(PipelineError.Source.HYMNAL_NET)
-                 .setSeverity(Severity.ERROR)
-                 .setErrorType(ErrorType.FETCH_EXCEPTION)
-                 .addMessages(keyString);
-        if (!TextUtil.isEmpty(((FetchResult.FetchException) fetchResult).exception.getMessage())) {
-          error.addMessages(((FetchResult.FetchException) fetchResult).exception.getMessage());
-        }
-        this.errors.add(error.build());
-        return;
+  private void crawl(BlockingQueue<HymnalNetKey> frontier, AtomicInteger outstanding) {
+    if (concurrency <= 1 || outstanding.get() == 0) {
+      HymnalNetKey key;
+      while ((key = frontier.poll()) != null && key != END_OF_CRAWL) {
+        visit(key, frontier, outstanding);
       }
+      return;
+    }
 
-      if (fetchResult instanceof FetchResult.FetchFailure) {
-        PipelineError.Builder error =
-            PipelineError.newBuilder()
-                .setSource(PipelineError.Source.HYMNAL_NET)
-                .setSeverity(Severity.ERROR)
-                .setErrorType(ErrorType.FETCH_ERROR)
-                .addMessages(keyString)
-                .addMessages(String.valueOf(((FetchResult.FetchFailure) fetchResult).responseCode));
-        if (!TextUtil.isEmpty(((FetchResult.FetchFailure) fetchResult).responseBody)) {
-          error.addMessages(((FetchResult.FetchFailure) fetchResult).responseBody);
-        }
-        this.errors.add(error.build());
-        return;
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+    try {
+      List<Future<?>> workers = new ArrayList<>();
+      for (int i = 0; i < concurrency; i++) {
+        workers.add(executor.submit(() -> {
+          // A worker can't stop as soon as the frontier is empty, since songs that are currently being visited by
+          // other workers may still add to it. Instead, it waits until the last song has been visited.
+          HymnalNetKey key;
+          while ((key = frontier.take()) != END_OF_CRAWL) {
+            visit(key, frontier, outstanding);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> worker : workers) {
+        worker.get();
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while fetching hymns", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Unexpected exception while fetching hymns", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void enqueue(HymnalNetKey key, BlockingQueue<HymnalNetKey> frontier, AtomicInteger outstanding) {
+    if (discovered.add(key)) {
+      outstanding.incrementAndGet();
+      frontier.add(key);
+    }
+  }
 
-      if (fetchResult instanceof FetchResult.FetchNotFound && hymnType.maxNumber.isPresent()) {
-        // If there is a max number, that means the song *should* be continuous meaning a missing
-        // song should theoretically be an error.
-        //
-        // The error is probably on Hymnal.net's end though, so not much we can do here other than
-        // log it and monitor it.
-        PipelineError.Builder error =
-            PipelineError.newBuilder()
-                .setSource(PipelineError.Source.HYMNAL_NET)
-                .setSeverity(Severity.ERROR)
-                .setErrorType(ErrorType.FETCH_ERROR)
-                .addMessages(keyString)
-                .addMessages("404");
-        this.errors.add(error.build());
+  /**
+   * Fetch a single song and add its related songs to the frontier.
+   */
+  private void visit(HymnalNetKey key, BlockingQueue<HymnalNetKey> frontier, AtomicInteger outstanding) {
+    try {
+      LOGGER.fine(String.format("Fetching %s", key));
+      FetchResult fetchResult = fetchHymn(key);
+      results.put(key, fetchResult);
+      metrics.recordResult(fetchResult);
+      getFetched(key, fetchResult).ifPresent(hymnalNetJson -> {
+        ImmutableList<HymnalNetKey> relatedSongs = relatedSongs(hymnalNetJson, errors);
+        metrics.recordRelatedSongs(relatedSongs.size());
+        relatedSongs.forEach(relatedSong -> enqueue(relatedSong, frontier, outstanding));
+        probePlanner.onFound(key).forEach(probe -> {
+          topLevel.add(probe);
+          enqueue(probe, frontier, outstanding);
+        });
+      });
+    } finally {
+      // Related songs are enqueued before this one is marked as done, so that the count never drops to 0 while there
+      // is still work to do. Once it does, nothing else can be added to the frontier, so every worker is told to stop.
+      if (outstanding.decrementAndGet() == 0) {
+        for (int i = 0; i < concurrency; i++) {
+          frontier.add(END_OF_CRAWL);
+        }
       }
     }
-    LOGGER.info("Fetch Complete");
   }
 
   private FetchResult fetchHymn(HymnalNetKey key) {
-    LOGGER.fine(String.format("Fetching %s", key));
+    Optional<HymnalNetJson> checkpointed = checkpoint.getFetched(key);
+    if (checkpointed.isPresent()) {
+      LOGGER.fine(String.format("%s was fetched before the previous run was interrupted. Not re-fetching", key));
+      return new FetchResult.FetchSuccess(checkpointed.get());
+    }
+    if (checkpoint.wasNotFound(key)) {
+      LOGGER.fine(String.format("%s was not found before the previous run was interrupted. Not re-fetching", key));
+      return new FetchResult.FetchNotFound();
+    }
 
-    List<HymnalNetJson> existing = hymnalNetJsons.stream().filter(hymn -> hymn.getKey().equals(key)).toList();
-    if (existing.size() > 1) {
-      throw new IllegalStateException("List too big. This shouldn't happen, as it indicates a code error.");
+    Optional<HymnalNetJson> existing = Optional.ofNullable(hymnalNetJsons.get(key));
+    if (existing.isPresent() && !refreshStored) {
+      LOGGER.fine(String.format("%s already exists in database. Not re-fetching, but re-fetching related songs", key));
+      return new FetchResult.AlreadyStored();
     }
 
-    if (processed.contains(key) && !existing.isEmpty()) {
-      return new FetchResult.AlreadySeen();
+    if (existing.isEmpty() && !probePlanner.isProbe(key) && notFoundCache.isKnownMissing(key)) {
+      LOGGER.fine(String.format("%s was recently not found. Not re-fetching", key));
+      return new FetchResult.FetchNotFound();
     }
-    processed.add(key);
 
-    if (!existing.isEmpty()) {
-      LOGGER.fine(String.format("%s already exists in database. Not re-fetching, but re-fetching related songs", key));
-      fetchRelated(key, existing.get(0));
+    FetchResult fetchResult = fetchFromNetwork(key, existing);
+    if (fetchResult instanceof FetchResult.FetchNotFound) {
+      notFoundCache.recordNotFound(key);
+    } else if (fetchResult instanceof FetchResult.FetchSuccess) {
+      notFoundCache.recordFound(key);
+    }
+    if (existing.isPresent() && !(fetchResult instanceof FetchResult.FetchSuccess)
+        && !(fetchResult instanceof FetchResult.NotModified)) {
+      // A song that was already stored shouldn't be dropped just because refreshing it failed.
+      LOGGER.warning(String.format("Unable to refresh %s, so keeping the stored version", key));
       return new FetchResult.AlreadyStored();
     }
 
-    HttpResponse<String> response;
+    if (fetchResult instanceof FetchResult.FetchSuccess) {
+      checkpoint.recordFetched(((FetchResult.FetchSuccess) fetchResult).response);
+    } else if (fetchResult instanceof FetchResult.NotModified) {
+      checkpoint.recordFetched(((FetchResult.NotModified) fetchResult).response);
+    } else if (fetchResult instanceof FetchResult.FetchNotFound) {
+      checkpoint.recordNotFound(key);
+    }
+    return fetchResult;
+  }
+
+  /**
+   * @return the song that resulted from the fetch, if there is one
+   */
+  private Optional<HymnalNetJson> getFetched(HymnalNetKey key, FetchResult fetchResult) {
+    if (fetchResult instanceof FetchResult.FetchSuccess
+        || fetchResult instanceof FetchResult.NotModified
+        || fetchResult instanceof FetchResult.AlreadyStored) {
+      return Optional.ofNullable(hymnalNetJsons.get(key));
+    }
+    return Optional.empty();
+  }
+
+  private ImmutableList<HymnalNetKey> relatedSongs(HymnalNetJson hymnalNetJson, Set<PipelineError> errors) {
+    return hymnalNetJson.getMetaDataList().stream()
+        .filter(Fetcher::isRelatedSongs)
+        .flatMap(metaDatum -> metaDatum.getDataList().stream())
+        .map(datum -> extractFromPath(datum.getPath(), hymnalNetJson.getKey(), errors))
+        .flatMap(Optional::stream)
+        .collect(toImmutableList());
+  }
+
+  private static boolean isRelatedSongs(MetaDatum metaDatum) {
+    return MetaDatumType.LANGUAGES.jsonKeys.contains(metaDatum.getName()) ||
+        MetaDatumType.RELEVANT.jsonKeys.contains(metaDatum.getName());
+  }
+
+  private void addTopLevelErrors(HymnalNetKey key) {
+    String keyString = key.hasQueryParams() ?
+        String.format("%s/%s%s", key.getHymnType(), key.getHymnNumber(), key.getQueryParams()) :
+        String.format("%s/%s", key.getHymnType(), key.getHymnNumber());
+
+    HymnType hymnType = HymnType.fromString(key.getHymnType()).orElseThrow();
+    FetchResult fetchResult = results.get(key);
+
+    if (fetchResult instanceof FetchResult.FetchException) {
+      PipelineError.Builder error =
+          PipelineError.newBuilder()
+              .setSource(PipelineError.Source.HYMNAL_NET)
+               .setSeverity(Severity.ERROR)
+               .setErrorType(ErrorType.FETCH_EXCEPTION)
+               .addMessages(keyString);
+      if (!TextUtil.isEmpty(((FetchResult.FetchException) fetchResult).exception.getMessage())) {
+        error.addMessages(((FetchResult.FetchException) fetchResult).exception.getMessage());
+      }
+      this.errors.add(error.build());
+      return;
+    }
+
+    if (fetchResult instanceof FetchResult.FetchFailure) {
+      PipelineError.Builder error =
+          PipelineError.newBuilder()
+              .setSource(PipelineError.Source.HYMNAL_NET)
+              .setSeverity(Severity.ERROR)
+              .setErrorType(ErrorType.FETCH_ERROR)
+              .addMessages(keyString)
+              .addMessages(String.valueOf(((FetchResult.FetchFailure) fetchResult).responseCode));
+      if (!TextUtil.isEmpty(((FetchResult.FetchFailure) fetchResult).responseBody)) {
+        error.addMessages(((FetchResult.FetchFailure) fetchResult).responseBody);
+      }
+      this.errors.add(error.build());
+      return;
+    }
+
+    if (fetchResult instanceof FetchResult.FetchNotFound && hymnType.maxNumber.isPresent()) {
+      // If there is a max number, that means the song *should* be continuous meaning a missing
+      // song should theoretically be an error.
+      //
+      // The error is probably on Hymnal.net's end though, so not much we can do here other than
+      // log it and monitor it.
+      PipelineError.Builder error =
+          PipelineError.newBuilder()
+              .setSource(PipelineError.Source.HYMNAL_NET)
+              .setSeverity(Severity.ERROR)
+              .setErrorType(ErrorType.FETCH_ERROR)
+              .addMessages(keyString)
+              .addMessages("404");
+      this.errors.add(error.build());
+    }
+  }
+
+  /**
+   * Fetch the song from Hymnal.net. If a response for this song was cached during a previous execution of the
+   * pipeline, then the request is made conditional, so that an unchanged song can be reused without being downloaded
+   * and parsed again.
+   */
+  private FetchResult fetchFromNetwork(HymnalNetKey key, Optional<HymnalNetJson> stored) {
+    Optional<CachedResponse> cached = responseCache.get(key);
+    Optional<String> cachedBody = Optional.empty();
+    if (cached.isPresent() && stored.isEmpty()) {
+      // There is no stored song to reuse if the song hasn't changed, so the cached body needs to be reused instead. If
+      // that is missing as well, then the request can't be conditional.
+      cachedBody = readCachedBody(cached.get());
+      if (cachedBody.isEmpty()) {
+        cached = Optional.empty();
+      }
+    }
+
+    HttpResponse<InputStream> response;
     try {
-      response = client.send(HttpRequest.newBuilder().uri(buildUri(key)).build(), BodyHandlers.ofString());
+      HttpRequest.Builder request =
+          HttpRequest.newBuilder().uri(buildUri(key)).header("Accept-Encoding", "gzip");
+      cached.ifPresent(cachedResponse -> {
+        if (!cachedResponse.getEtag().isEmpty()) {
+          request.header("If-None-Match", cachedResponse.getEtag());
+        }
+        if (!cachedResponse.getLastModified().isEmpty()) {
+          request.header("If-Modified-Since", cachedResponse.getLastModified());
+        }
+      });
+      long start = System.nanoTime();
+      response = fetchPolicy.send(request.build(), BodyHandlers.ofInputStream());
+      metrics.recordRequest(key, Duration.ofNanos(System.nanoTime() - start));
     } catch (IOException | InterruptedException | URISyntaxException e) {
       return new FetchResult.FetchException(e);
     }
 
+    CountingInputStream rawBody = new CountingInputStream(response.body());
+    try (rawBody) {
+      return readResponse(key, response, rawBody, cached, cachedBody, stored);
+    } catch (IOException e) {
+      return new FetchResult.FetchException(e);
+    } finally {
+      metrics.recordBytesDownloaded(rawBody.getCount());
+    }
+  }
+
+  private FetchResult readResponse(HymnalNetKey key, HttpResponse<InputStream> response, InputStream rawBody,
+      Optional<CachedResponse> cached, Optional<String> cachedBody, Optional<HymnalNetJson> stored)
+      throws IOException {
+    if (response.statusCode() == 304 && cached.isPresent()) {
+      if (stored.isPresent()) {
+        LOGGER.fine(String.format("%s not modified since it was stored", key));
+        return new FetchResult.NotModified(stored.get());
+      }
+      return parse(key, new StringReader(cachedBody.orElseThrow()));
+    }
+
     if (response.statusCode() == 400) {
       return new FetchResult.FetchNotFound();
     }
 
+    InputStream body = decode(response.headers(), rawBody);
     if (response.statusCode() != 200) {
-      return new FetchResult.FetchFailure(response.statusCode(), response.body());
+      return new FetchResult.FetchFailure(
+          response.statusCode(), new String(body.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    if (!ResponseCache.isCacheable(response.headers())) {
+      return parse(key, new InputStreamReader(body, StandardCharsets.UTF_8));
+    }
+    // The raw body needs to be kept around anyway in order to be cached.
+    byte[] bytes = body.readAllBytes();
+    try {
+      responseCache.put(key, bytes, response.headers());
+    } catch (IOException e) {
+      LOGGER.warning(String.format("Unable to cache the response for %s: %s", key, e.getMessage()));
+    }
+    return parse(key, new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+  }
+
+  private static InputStream decode(HttpHeaders headers, InputStream body) throws IOException {
+    boolean gzipped = headers.firstValue("Content-Encoding").map("gzip"::equalsIgnoreCase).orElse(false);
+    return gzipped ? new GZIPInputStream(body) : body;
+  }
+
+  private Optional<String> readCachedBody(CachedResponse cachedResponse) {
+    try {
+      return responseCache.readBody(cachedResponse);
+    } catch (IOException e) {
+      LOGGER.warning(
+          String.format("Unable to read the cached response for %s: %s", cachedResponse.getKey(), e.getMessage()));
+      return Optional.empty();
     }
+  }
 
+  /**
+   * Parses straight from the reader into the builder, without materializing the body as a string first.
+   */
+  private FetchResult parse(HymnalNetKey key, Reader body) throws IOException {
     HymnalNetJson.Builder builder = HymnalNetJson.newBuilder().setKey(key);
+    long start = System.nanoTime();
     try {
-      JsonFormat.parser().merge(response.body(), builder);
+      JsonFormat.parser().merge(body, builder);
     } catch (InvalidProtocolBufferException e) {
       return new FetchResult.FetchException(e);
+    } finally {
+      metrics.recordParse(Duration.ofNanos(System.nanoTime() - start));
     }
     LOGGER.fine(String.format("%s successfully fetched", key));
     HymnalNetJson hymnalNetJson = builder.build();
+    this.hymnalNetJsons.put(key, hymnalNetJson);
 
-    // Need to add the hymn here first as a terminal case
-    this.hymnalNetJsons.add(hymnalNetJson);
-
-    fetchRelated(key, hymnalNetJson);
-
-    return new FetchResult.FetchSuccess(builder.build());
+    return new FetchResult.FetchSuccess(hymnalNetJson);
   }
 
-  private void fetchRelated(HymnalNetKey key, HymnalNetJson hymnalNetJson) {
-    HymnalNetJson.Builder builder = hymnalNetJson.toBuilder();
-
-    // Go through ahd try to fetch the related songs, removing them from the list if the fetch
-    // for some reason doesn't succeed.
-    for (int i = 0; i < builder.getMetaDataCount(); i++) {
-      MetaDatum metaDatum = builder.getMetaDataList().get(i);
-      String name = metaDatum.getName();
-      if (MetaDatumType.LANGUAGES.jsonKeys.contains(name) ||
-              MetaDatumType.RELEVANT.jsonKeys.contains(name)) {
-        MetaDatum successfulFetches = fetchAndReturnSuccesses(metaDatum, key);
-        if (successfulFetches.getDataList().isEmpty()) {
-          builder.removeMetaData(i);
-        } else {
-          builder.setMetaData(i, successfulFetches);
+  /**
+   * Now that every related song has been visited, go through and remove the related songs that for some reason
+   * couldn't be fetched.
+   */
+  private void pruneLinks() {
+    results.forEach((key, fetchResult) -> getFetched(key, fetchResult).ifPresent(hymnalNetJson -> {
+      HymnalNetJson.Builder builder = hymnalNetJson.toBuilder();
+      for (int i = builder.getMetaDataCount() - 1; i >= 0; i--) {
+        MetaDatum metaDatum = builder.getMetaData(i);
+        if (isRelatedSongs(metaDatum)) {
+          MetaDatum successfulFetches = removeUnsuccessful(metaDatum, key);
+          if (successfulFetches.getDataList().isEmpty()) {
+            builder.removeMetaData(i);
+          } else {
+            builder.setMetaData(i, successfulFetches);
+          }
         }
       }
-    }
 
-    // Basically this happens when there were songs that weren't able to be fetched, so those songs
-    // were removed from the related songs list. Thus, we need to update the song to the new version
-    if (!hymnalNetJson.equals(builder.build())) {
-      this.hymnalNetJsons.remove(hymnalNetJson);
-      this.hymnalNetJsons.add(builder.build());
-    }
+      // Basically this happens when there were songs that weren't able to be fetched, so those songs
+      // were removed from the related songs list. Thus, we need to update the song to the new version
+      HymnalNetJson updated = builder.build();
+      if (!hymnalNetJson.equals(updated)) {
+        this.hymnalNetJsons.put(key, updated);
+      }
+    }));
   }
 
   /**
@@ -204,18 +505,21 @@ public class Fetcher {
    * "...v2/hymn/ts/330??check_exists=true".
    */
   private URI buildUri(HymnalNetKey key) throws URISyntaxException {
-    return new URI(SCHEME, AUTHORITY, String.format(PATH, key.getHymnType(), key.getHymnNumber()),
+    return new URI(endpoint.getScheme(), endpoint.getAuthority(),
+        endpoint.getPath() + String.format(PATH, key.getHymnType(), key.getHymnNumber()),
         key.hasQueryParams() ? key.getQueryParams().substring(1) + "&" + CHECK_EXISTS
             : CHECK_EXISTS, null);
   }
 
-  private MetaDatum fetchAndReturnSuccesses(MetaDatum metaDatum, HymnalNetKey parent) {
+  private MetaDatum removeUnsuccessful(MetaDatum metaDatum, HymnalNetKey parent) {
     return metaDatum.toBuilder().clearData()
         .addAllData(
             metaDatum.getDataList().stream().filter(datum -> {
-                    Optional<HymnalNetKey> key = extractFromPath(datum.getPath(), parent, errors)
+                    // Any errors from extracting the path were already recorded when the related songs were
+                    // added to the frontier.
+                    Optional<HymnalNetKey> key = extractFromPath(datum.getPath(), parent, new HashSet<>())
                         .filter(relatedSong -> {
-                          FetchResult fetchResult = fetchHymn(relatedSong);
+                          FetchResult fetchResult = results.get(relatedSong);
                           if (fetchResult instanceof FetchResult.FetchException) {
                             PipelineError.Builder error =
                                 PipelineError.newBuilder()
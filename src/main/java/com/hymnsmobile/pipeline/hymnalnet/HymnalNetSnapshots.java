@@ -0,0 +1,182 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.ByteString;
+import com.hymnsmobile.pipeline.FileReadWriter;
+import com.hymnsmobile.pipeline.SnapshotCatalog;
+import com.hymnsmobile.pipeline.hymnalnet.dagger.HymnalNetPipelineScope;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNet;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetDelta;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetJson;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetKey;
+import com.hymnsmobile.pipeline.models.PipelineError;
+import com.hymnsmobile.pipeline.models.SnapshotEntry;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Reads and writes the snapshots of Hymnal.net songs in {@link #DIRECTORY}. Rather than rewriting every song each run,
+ * a run that only changed a few songs writes a {@link HymnalNetDelta} on top of the previous snapshot instead. A full
+ * snapshot is written again (i.e. the deltas are compacted) after {@link #MAX_DELTAS} deltas in a row, or whenever so
+ * much has changed that a delta wouldn't be much smaller than a full snapshot anyway.
+ * <p/>
+ * Every snapshot is recorded in the directory's {@link SnapshotCatalog}. Old snapshots are only deleted if
+ * {@link #FULL_SNAPSHOTS_TO_KEEP} is set, in which case only that many full snapshots (and the deltas on top of them)
+ * are kept.
+ */
+@HymnalNetPipelineScope
+public class HymnalNetSnapshots {
+
+  private static final Logger LOGGER = Logger.getGlobal();
+
+  private static final String DIRECTORY = "storage/hymnalnet";
+  private static final String FILE_MASK = "\\d\\d\\d\\d-\\d\\d-\\d\\d_\\d\\d-\\d\\d-\\d\\d_[A-Z]{3}";
+
+  @VisibleForTesting
+  static final int MAX_DELTAS = 10;
+
+  /**
+   * Fraction of the songs that can change before a full snapshot is written instead of a delta.
+   */
+  private static final double MAX_CHANGED_FRACTION = 0.5;
+
+  /**
+   * How many full snapshots to keep, along with the deltas on top of them. Nothing is ever deleted unless this is set
+   * with -Dpipeline.snapshotsToKeep=N.
+   */
+  @VisibleForTesting
+  static final int FULL_SNAPSHOTS_TO_KEEP = Integer.getInteger("pipeline.snapshotsToKeep", 0);
+
+  /**
+   * Order that songs are stored in: first by hymn type, then by hymn number, and then by query params.
+   */
+  public static final Comparator<HymnalNetKey> BY_KEY =
+      Comparator.comparing(HymnalNetKey::getHymnType)
+          .thenComparing(HymnalNetKey::getHymnNumber)
+          .thenComparing(HymnalNetKey::getQueryParams);
+
+  /**
+   * Order that errors are stored in. Errors are collected in a hash set whose order changes from run to run, so they are
+   * sorted by their serialized bytes to keep the snapshot (and the textproto) the same when nothing changed.
+   */
+  public static final Comparator<PipelineError> BY_ERROR =
+      Comparator.comparing(PipelineError::toByteString, ByteString.unsignedLexicographicalComparator());
+
+  private final FileReadWriter fileReadWriter;
+
+  @Inject
+  public HymnalNetSnapshots(FileReadWriter fileReadWriter) {
+    this.fileReadWriter = fileReadWriter;
+  }
+
+  /**
+   * @return a snapshot of {@code songs} and {@code errors}, in a stable order, ready to {@link #write}
+   */
+  public static HymnalNet snapshotOf(Collection<HymnalNetJson> songs, Collection<PipelineError> errors) {
+    return HymnalNet.newBuilder()
+        .addAllHymnanlNetJson(songs.stream().sorted(Comparator.comparing(HymnalNetJson::getKey, BY_KEY)).toList())
+        .addAllErrors(errors.stream().sorted(BY_ERROR).toList())
+        .build();
+  }
+
+  /**
+   * @return the songs as of the most recent run, reconstructed from the last full snapshot and the deltas since
+   */
+  public Optional<HymnalNet> readLatest() {
+    return fileReadWriter.readLatestOutput(
+        DIRECTORY, Optional.of(FILE_MASK), HymnalNet.parser(), HymnalNetDelta.parser(), HymnalNetSnapshots::applyDelta);
+  }
+
+  /**
+   * Writes {@code current} (which should come from {@link #snapshotOf}) as either a delta on top of {@code previous} or
+   * a full snapshot, whichever is appropriate. Nothing is written if {@code current} has the same songs and errors as
+   * {@code previous}.
+   *
+   * @return whether a new snapshot was written
+   */
+  public boolean write(String directoryPath, Optional<HymnalNet> previous, HymnalNet current) throws IOException {
+    if (previous.isPresent() && isUnchanged(previous.get(), current)) {
+      LOGGER.info("Nothing changed since the previous snapshot, so not writing a new one");
+      return false;
+    }
+    Optional<HymnalNetDelta> delta =
+        previous.map(previousSnapshot -> diff(previousSnapshot, current)).filter(diff -> isWorthwhile(diff, current));
+    SnapshotEntry written;
+    if (delta.isEmpty()) {
+      LOGGER.info(String.format("Writing full snapshot with %d songs", current.getHymnanlNetJsonCount()));
+      written = fileReadWriter.writeProto(directoryPath, current);
+    } else {
+      LOGGER.info(String.format("Writing delta with %d added, %d replaced and %d removed songs",
+          delta.get().getAddedCount(), delta.get().getReplacedCount(), delta.get().getRemovedCount()));
+      written = fileReadWriter.writeProto(directoryPath, FileReadWriter.DELTA, delta.get());
+    }
+    fileReadWriter.addToCatalog(directoryPath, Optional.of(FILE_MASK), written, current.getHymnanlNetJsonCount(),
+        FULL_SNAPSHOTS_TO_KEEP);
+    return true;
+  }
+
+  @VisibleForTesting
+  static HymnalNetDelta diff(HymnalNet previous, HymnalNet current) {
+    Map<HymnalNetKey, HymnalNetJson> previousSongs = new HashMap<>();
+    previous.getHymnanlNetJsonList().forEach(song -> previousSongs.put(song.getKey(), song));
+
+    HymnalNetDelta.Builder delta = HymnalNetDelta.newBuilder();
+    for (HymnalNetJson song : current.getHymnanlNetJsonList()) {
+      HymnalNetJson previousSong = previousSongs.remove(song.getKey());
+      if (previousSong == null) {
+        delta.addAdded(song);
+      } else if (!previousSong.equals(song)) {
+        delta.addReplaced(song);
+      }
+    }
+    // Whatever is left over is no longer there.
+    previousSongs.keySet().stream().sorted(BY_KEY).forEach(delta::addRemoved);
+    return delta
+        .addAllErrors(current.getErrorsList())
+        .setDepth(previous.getDeltasSinceFullSnapshot() + 1)
+        .build();
+  }
+
+  /**
+   * Replays {@code delta} on top of {@code base}. Which delta goes on top of which snapshot comes from the
+   * {@link SnapshotCatalog}, which also checks each file's hash before it is read.
+   */
+  @VisibleForTesting
+  static HymnalNet applyDelta(HymnalNet base, HymnalNetDelta delta) {
+    Map<HymnalNetKey, HymnalNetJson> songs = new HashMap<>();
+    base.getHymnanlNetJsonList().forEach(song -> songs.put(song.getKey(), song));
+    delta.getRemovedList().forEach(songs::remove);
+    delta.getAddedList().forEach(song -> songs.put(song.getKey(), song));
+    delta.getReplacedList().forEach(song -> songs.put(song.getKey(), song));
+    return HymnalNet.newBuilder()
+        .addAllHymnanlNetJson(
+            songs.values().stream().sorted(Comparator.comparing(HymnalNetJson::getKey, BY_KEY)).toList())
+        .addAllErrors(delta.getErrorsList())
+        .setDeltasSinceFullSnapshot(delta.getDepth())
+        .build();
+  }
+
+  /**
+   * Both snapshots have their songs and errors in the same order (see {@link #snapshotOf}), so comparing the lists is
+   * enough. Any other fields, like {@code deltas_since_full_snapshot}, only describe how a snapshot was read.
+   */
+  private static boolean isUnchanged(HymnalNet previous, HymnalNet current) {
+    return previous.getHymnanlNetJsonList().equals(current.getHymnanlNetJsonList())
+        && previous.getErrorsList().equals(current.getErrorsList());
+  }
+
+  private static boolean isWorthwhile(HymnalNetDelta delta, HymnalNet current) {
+    if (delta.getDepth() > MAX_DELTAS) {
+      return false;
+    }
+    int changed = delta.getAddedCount() + delta.getReplacedCount() + delta.getRemovedCount();
+    return changed <= current.getHymnanlNetJsonCount() * MAX_CHANGED_FRACTION;
+  }
+}
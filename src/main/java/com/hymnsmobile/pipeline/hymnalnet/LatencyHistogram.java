@@ -0,0 +1,88 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.hymnsmobile.pipeline.hymnalnet.models.LatencyBucket;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram in the style of HdrHistogram: each power of two is split into {@link #SUB_BUCKETS}
+ * linear buckets, so every recorded value is accurate to within 1/16th regardless of its magnitude, while the whole
+ * range of a long only needs a fixed, small number of buckets.
+ */
+class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(Duration latency) {
+    long micros = Math.max(0, latency.toNanos() / 1000);
+    counts.incrementAndGet(bucketIndex(micros));
+    count.incrementAndGet();
+    max.accumulateAndGet(micros, Math::max);
+  }
+
+  public com.hymnsmobile.pipeline.hymnalnet.models.LatencyHistogram toProto() {
+    com.hymnsmobile.pipeline.hymnalnet.models.LatencyHistogram.Builder builder =
+        com.hymnsmobile.pipeline.hymnalnet.models.LatencyHistogram.newBuilder()
+            .setCount(count.get())
+            .setP50Micros(percentile(50))
+            .setP90Micros(percentile(90))
+            .setP99Micros(percentile(99))
+            .setMaxMicros(max.get());
+    for (int i = 0; i < BUCKETS; i++) {
+      long bucketCount = counts.get(i);
+      if (bucketCount > 0) {
+        builder.addBuckets(LatencyBucket.newBuilder().setUpperBoundMicros(upperBound(i)).setCount(bucketCount));
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * @return the upper bound of the bucket that contains the given percentile, capped at the largest recorded value
+   */
+  @VisibleForTesting
+  long percentile(double percentile) {
+    long total = count.get();
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(upperBound(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  @VisibleForTesting
+  static int bucketIndex(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+    int shift = magnitude - SUB_BUCKET_BITS;
+    return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((micros >>> shift) - SUB_BUCKETS);
+  }
+
+  @VisibleForTesting
+  static long upperBound(int bucketIndex) {
+    if (bucketIndex < SUB_BUCKETS) {
+      return bucketIndex;
+    }
+    int shift = (bucketIndex - SUB_BUCKETS) / SUB_BUCKETS;
+    int subBucket = (bucketIndex - SUB_BUCKETS) % SUB_BUCKETS;
+    return ((SUB_BUCKETS + subBucket + 1L) << shift) - 1;
+  }
+}
@@ -0,0 +1,91 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.hymnsmobile.pipeline.FileReadWriter;
+import com.hymnsmobile.pipeline.hymnalnet.dagger.HymnalNetPipelineScope;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetKey;
+import com.hymnsmobile.pipeline.hymnalnet.models.NotFoundCacheIndex;
+import com.hymnsmobile.pipeline.hymnalnet.models.NotFoundEntry;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * On-disk cache of songs that Hymnal.net reported as not found, so that they aren't requested again on every run. Each
+ * entry expires after {@link #TTL}, after which the song is checked again in case it has since been added.
+ */
+@HymnalNetPipelineScope
+public class NotFoundCache {
+
+  private static final Logger LOGGER = Logger.getGlobal();
+
+  private static final String INDEX_FILE = "storage/hymnalnet/cache/not_found.binaryproto";
+  private static final Duration TTL = Duration.ofDays(30);
+
+  private static final Comparator<NotFoundEntry> BY_KEY =
+      Comparator.<NotFoundEntry, String>comparing(entry -> entry.getKey().getHymnType())
+          .thenComparing(entry -> entry.getKey().getHymnNumber())
+          .thenComparing(entry -> entry.getKey().getQueryParams());
+
+  private final FileReadWriter fileReadWriter;
+  private final long nowEpochSeconds;
+  private final ConcurrentMap<HymnalNetKey, NotFoundEntry> entries;
+  private final AtomicBoolean modified;
+
+  @Inject
+  public NotFoundCache(FileReadWriter fileReadWriter, ZonedDateTime currentTime) {
+    this.fileReadWriter = fileReadWriter;
+    this.nowEpochSeconds = currentTime.toEpochSecond();
+    this.entries = new ConcurrentHashMap<>();
+    this.modified = new AtomicBoolean(false);
+  }
+
+  public void load() {
+    fileReadWriter.readProto(INDEX_FILE, NotFoundCacheIndex.parser()).ifPresent(index -> {
+      index.getEntriesList().stream().filter(this::isFresh).forEach(entry -> entries.put(entry.getKey(), entry));
+      LOGGER.info(String.format("Reading not-found cache with %d unexpired songs", entries.size()));
+    });
+  }
+
+  /**
+   * @return whether the song was reported as not found recently enough that it doesn't need to be requested again
+   */
+  public boolean isKnownMissing(HymnalNetKey key) {
+    NotFoundEntry entry = entries.get(key);
+    return entry != null && isFresh(entry);
+  }
+
+  public void recordNotFound(HymnalNetKey key) {
+    entries.put(key, NotFoundEntry.newBuilder().setKey(key).setCheckedAtEpochSeconds(nowEpochSeconds).build());
+    modified.set(true);
+  }
+
+  public void recordFound(HymnalNetKey key) {
+    if (entries.remove(key) != null) {
+      modified.set(true);
+    }
+  }
+
+  /**
+   * Writes the cache to disk if anything has changed since it was loaded.
+   */
+  public void flush() throws IOException {
+    if (!modified.getAndSet(false)) {
+      return;
+    }
+    LOGGER.info(String.format("Writing not-found cache with %d songs", entries.size()));
+    fileReadWriter.writeProtoFile(
+        INDEX_FILE,
+        NotFoundCacheIndex.newBuilder().addAllEntries(entries.values().stream().sorted(BY_KEY).toList()).build());
+  }
+
+  private boolean isFresh(NotFoundEntry entry) {
+    return nowEpochSeconds - entry.getCheckedAtEpochSeconds() < TTL.toSeconds();
+  }
+}
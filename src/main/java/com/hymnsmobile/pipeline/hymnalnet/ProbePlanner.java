@@ -0,0 +1,139 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.google.common.collect.ImmutableList;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetKey;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * Decides which numbers to request for hymn types whose numbers aren't contiguous (i.e. don't have a
+ * {@link HymnType#maxNumber}), instead of blindly requesting a fixed range for each of them.
+ * <p/>
+ * Every number up to the highest known number of a type is requested, since there may be gaps that get filled in. Gaps
+ * that the {@link NotFoundCache} knows to be missing aren't planned at all until their entries expire. Beyond that,
+ * numbers are probed until {@link #missesBeforeStopping} consecutive numbers have been requested without a hit. Every
+ * hit extends the probing window. Probes are requested even if they were recently not found, since probing past the
+ * end is how songs that were just added get found.
+ */
+public class ProbePlanner {
+
+  private final ImmutableList<HymnType> probedTypes;
+
+  /**
+   * Number of consecutive numbers past the last hit that are requested before giving up on a type. This is also the
+   * largest run of missing numbers that can be crossed, so it needs to be larger than any real gap in the numbering.
+   */
+  private final int missesBeforeStopping;
+
+  /**
+   * Highest known number of each probed type when the plan was made. Anything above this is a probe.
+   */
+  private final Map<HymnType, Integer> highestKnown;
+
+  /**
+   * Highest number of each probed type that has been planned so far.
+   */
+  private final Map<HymnType, Integer> windowEnd;
+
+  public ProbePlanner(ImmutableList<HymnType> probedTypes, int missesBeforeStopping) {
+    this.probedTypes = probedTypes;
+    this.missesBeforeStopping = missesBeforeStopping;
+    this.highestKnown = new EnumMap<>(HymnType.class);
+    this.windowEnd = new EnumMap<>(HymnType.class);
+  }
+
+  /**
+   * @param known keys of songs that are already known to exist
+   * @param knownMissing whether a key is already known to be missing, so it doesn't need to be requested to fill a gap
+   * @return the keys to request for the probed types
+   */
+  public synchronized ImmutableList<HymnalNetKey> plan(Collection<HymnalNetKey> known,
+      Predicate<HymnalNetKey> knownMissing) {
+    for (HymnType hymnType : probedTypes) {
+      highestKnown.put(hymnType, 0);
+    }
+    for (HymnalNetKey key : known) {
+      getProbedNumber(key).ifPresent(number -> highestKnown.merge(getHymnType(key), number, Math::max));
+    }
+
+    ImmutableList.Builder<HymnalNetKey> keys = ImmutableList.builder();
+    for (HymnType hymnType : probedTypes) {
+      int highest = highestKnown.get(hymnType);
+      int end = highest + missesBeforeStopping;
+      windowEnd.put(hymnType, end);
+      for (int hymnNumber = 1; hymnNumber <= end; hymnNumber++) {
+        HymnalNetKey key = toKey(hymnType, hymnNumber);
+        if (hymnNumber > highest || !knownMissing.test(key)) {
+          keys.add(key);
+        }
+      }
+    }
+    return keys.build();
+  }
+
+  /**
+   * @return whether the key lies beyond the highest known number of its type, and so needs to actually be requested to
+   * find out whether it exists
+   */
+  public synchronized boolean isProbe(HymnalNetKey key) {
+    return getProbedNumber(key)
+        .map(number -> number > highestKnown.getOrDefault(getHymnType(key), Integer.MAX_VALUE))
+        .orElse(false);
+  }
+
+  /**
+   * Called when a song is found, so that the probing window can be extended past it.
+   *
+   * @return the newly planned keys, if any
+   */
+  public synchronized ImmutableList<HymnalNetKey> onFound(HymnalNetKey key) {
+    Optional<Integer> number = getProbedNumber(key);
+    if (number.isEmpty()) {
+      return ImmutableList.of();
+    }
+    HymnType hymnType = getHymnType(key);
+    int currentEnd = windowEnd.getOrDefault(hymnType, 0);
+    int newEnd = number.get() + missesBeforeStopping;
+    if (newEnd <= currentEnd) {
+      return ImmutableList.of();
+    }
+    windowEnd.put(hymnType, newEnd);
+
+    ImmutableList.Builder<HymnalNetKey> keys = ImmutableList.builder();
+    for (int hymnNumber = currentEnd + 1; hymnNumber <= newEnd; hymnNumber++) {
+      keys.add(toKey(hymnType, hymnNumber));
+    }
+    return keys.build();
+  }
+
+  /**
+   * @return the number of the key if it is a plain numbered song (i.e. no query params) of a probed type
+   */
+  private Optional<Integer> getProbedNumber(HymnalNetKey key) {
+    if (key.hasQueryParams()) {
+      return Optional.empty();
+    }
+    Optional<HymnType> hymnType = HymnType.fromString(key.getHymnType());
+    if (hymnType.isEmpty() || !probedTypes.contains(hymnType.get())) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(Integer.parseInt(key.getHymnNumber()));
+    } catch (NumberFormatException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static HymnType getHymnType(HymnalNetKey key) {
+    return HymnType.fromString(key.getHymnType()).orElseThrow();
+  }
+
+  private static HymnalNetKey toKey(HymnType hymnType, int hymnNumber) {
+    return HymnalNetKey.newBuilder().setHymnType(hymnType.abbreviation).setHymnNumber(String.valueOf(hymnNumber))
+        .build();
+  }
+}
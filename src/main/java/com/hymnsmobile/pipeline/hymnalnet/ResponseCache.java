@@ -0,0 +1,123 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.hymnsmobile.pipeline.FileReadWriter;
+import com.hymnsmobile.pipeline.hymnalnet.dagger.HymnalNetPipelineScope;
+import com.hymnsmobile.pipeline.hymnalnet.models.CachedResponse;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetKey;
+import com.hymnsmobile.pipeline.hymnalnet.models.ResponseCacheIndex;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * On-disk cache of raw Hymnal.net responses along with their validators (i.e. ETag and Last-Modified), so that a song
+ * can be revalidated with a conditional request instead of being downloaded again in full.
+ * <p/>
+ * Bodies are content-addressed by their SHA-256, so identical bodies are only ever stored once.
+ */
+@HymnalNetPipelineScope
+public class ResponseCache {
+
+  private static final Logger LOGGER = Logger.getGlobal();
+
+  private static final String CACHE_DIRECTORY = "storage/hymnalnet/cache";
+  private static final String INDEX_FILE = CACHE_DIRECTORY + "/index.binaryproto";
+  private static final String BODY_FILE = CACHE_DIRECTORY + "/bodies/%s.json";
+
+  private static final Comparator<CachedResponse> BY_KEY =
+      Comparator.<CachedResponse, String>comparing(response -> response.getKey().getHymnType())
+          .thenComparing(response -> response.getKey().getHymnNumber())
+          .thenComparing(response -> response.getKey().getQueryParams());
+
+  private final FileReadWriter fileReadWriter;
+  private final ConcurrentMap<HymnalNetKey, CachedResponse> responses;
+  private final AtomicBoolean modified;
+
+  @Inject
+  public ResponseCache(FileReadWriter fileReadWriter) {
+    this.fileReadWriter = fileReadWriter;
+    this.responses = new ConcurrentHashMap<>();
+    this.modified = new AtomicBoolean(false);
+  }
+
+  public void load() {
+    fileReadWriter.readProto(INDEX_FILE, ResponseCacheIndex.parser()).ifPresent(index -> {
+      index.getResponsesList().forEach(response -> responses.put(response.getKey(), response));
+      LOGGER.info(String.format("Reading response cache with %d responses", index.getResponsesCount()));
+    });
+  }
+
+  public Optional<CachedResponse> get(HymnalNetKey key) {
+    return Optional.ofNullable(responses.get(key));
+  }
+
+  public Optional<String> readBody(CachedResponse cachedResponse) throws IOException {
+    return fileReadWriter.readString(String.format(BODY_FILE, cachedResponse.getBodySha256()));
+  }
+
+  /**
+   * Without any validators, a response can never be revalidated, so there's no point in caching it.
+   */
+  public static boolean isCacheable(HttpHeaders headers) {
+    return headers.firstValue("ETag").isPresent() || headers.firstValue("Last-Modified").isPresent();
+  }
+
+  /**
+   * @param body raw (i.e. already decompressed) response body
+   */
+  public void put(HymnalNetKey key, byte[] body, HttpHeaders headers) throws IOException {
+    if (!isCacheable(headers)) {
+      return;
+    }
+    Optional<String> etag = headers.firstValue("ETag");
+    Optional<String> lastModified = headers.firstValue("Last-Modified");
+
+    String bodySha256 = sha256(body);
+    CachedResponse.Builder builder = CachedResponse.newBuilder().setKey(key).setBodySha256(bodySha256);
+    etag.ifPresent(builder::setEtag);
+    lastModified.ifPresent(builder::setLastModified);
+    CachedResponse cachedResponse = builder.build();
+
+    CachedResponse previous = responses.put(key, cachedResponse);
+    // The body file can be missing even if the index already has this body, e.g. if writing it failed last time or
+    // the cache directory was cleared by hand, so check for the file itself.
+    String bodyFile = String.format(BODY_FILE, bodySha256);
+    if (!fileReadWriter.exists(bodyFile)) {
+      fileReadWriter.writeBytes(bodyFile, body);
+    }
+    if (!cachedResponse.equals(previous)) {
+      modified.set(true);
+    }
+  }
+
+  /**
+   * Writes the index to disk if anything has changed since it was loaded.
+   */
+  public void flush() throws IOException {
+    if (!modified.getAndSet(false)) {
+      return;
+    }
+    LOGGER.info(String.format("Writing response cache with %d responses", responses.size()));
+    fileReadWriter.writeProtoFile(
+        INDEX_FILE,
+        ResponseCacheIndex.newBuilder().addAllResponses(responses.values().stream().sorted(BY_KEY).toList()).build());
+  }
+
+  private static String sha256(byte[] body) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 should be supported on every platform", e);
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package com.hymnsmobile.pipeline.hymnalnet.dagger;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import javax.inject.Qualifier;
+
+/**
+ * Maximum number of requests to Hymnal.net that are allowed to be in flight at once.
+ */
+@Qualifier
+@Documented
+@Retention(RUNTIME)
+public @interface FetchConcurrency {}
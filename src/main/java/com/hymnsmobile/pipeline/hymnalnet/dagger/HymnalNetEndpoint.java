@@ -0,0 +1,15 @@
+package com.hymnsmobile.pipeline.hymnalnet.dagger;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import javax.inject.Qualifier;
+
+/**
+ * Base URI of the Hymnal.net API, which every song's path is resolved against.
+ */
+@Qualifier
+@Documented
+@Retention(RUNTIME)
+public @interface HymnalNetEndpoint {}
@@ -1,30 +1,91 @@
 package com.hymnsmobile.pipeline.hymnalnet.dagger;
 
 import com.google.common.collect.ImmutableList;
+import com.hymnsmobile.pipeline.hymnalnet.FetchPolicyConfig;
 import com.hymnsmobile.pipeline.hymnalnet.HymnType;
+import com.hymnsmobile.pipeline.hymnalnet.ProbePlanner;
 import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetJson;
 import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetKey;
 import com.hymnsmobile.pipeline.models.PipelineError;
 import dagger.Module;
 import dagger.Provides;
 
-import java.util.HashSet;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
 
 @Module
 interface HymnalNetPipelineModule {
 
   @Provides
   @HymnalNetPipelineScope
-  static Set<HymnalNetJson> hymnalNetJsons() {
-    return new HashSet<>();
+  static ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons() {
+    return new ConcurrentHashMap<>();
   }
 
   @HymnalNet
   @Provides
   @HymnalNetPipelineScope
   static Set<PipelineError> errors() {
-    return new HashSet<>();
+    return ConcurrentHashMap.newKeySet();
+  }
+
+  /**
+   * Every request goes to the same host, so keep the number of concurrent requests modest.
+   */
+  @FetchConcurrency
+  @Provides
+  static int fetchConcurrency() {
+    return 8;
+  }
+
+  /**
+   * Starts out at 20 requests per second across all fetch threads, and backs off from there if the Heroku backend
+   * starts throttling or slowing down.
+   */
+  @Provides
+  static FetchPolicyConfig fetchPolicyConfig() {
+    return new FetchPolicyConfig(
+        20, 1, 50, Duration.ofSeconds(5), 5, Duration.ofMillis(500), Duration.ofSeconds(30), 20,
+        Duration.ofMinutes(1));
+  }
+
+  /**
+   * Base URI that the fetcher sends its requests to. The load test overrides it to point at a local stand-in server.
+   */
+  @HymnalNetEndpoint
+  @Provides
+  static URI hymnalNetEndpoint() {
+    return URI.create("https://hymnalnetapi.herokuapp.com");
+  }
+
+  /**
+   * Off by default. Pass -Dhymnalnet.refreshStoredSongs=true to revalidate the whole catalogue (e.g. for a nightly
+   * refresh), which is cheap for songs whose responses are still in the response cache.
+   */
+  @RefreshStoredSongs
+  @Provides
+  static boolean refreshStoredSongs() {
+    return Boolean.getBoolean("hymnalnet.refreshStoredSongs");
+  }
+
+  /**
+   * Hymn types without a max number are sparse, so they are probed instead of being enumerated. Probing stops 50
+   * numbers past the highest song found, so a run of more than 50 missing numbers hides every song after it. Raise this
+   * if a type ever has a longer gap; each extra number costs one more request per type on every run.
+   */
+  @Provides
+  @HymnalNetPipelineScope
+  static ProbePlanner probePlanner() {
+    return new ProbePlanner(
+        Arrays.stream(HymnType.values()).filter(hymnType -> hymnType.maxNumber.isEmpty())
+            .collect(toImmutableList()),
+        50);
   }
 
   @Provides
@@ -32,7 +93,10 @@ interface HymnalNetPipelineModule {
   static ImmutableList<HymnalNetKey> songsToFetch() {
     ImmutableList.Builder<HymnalNetKey> builder = ImmutableList.builder();
     for (HymnType hymnType : HymnType.values()) {
-      for (int hymnNumber = 1; hymnNumber <= hymnType.maxNumber.orElse(1360); hymnNumber++) {
+      if (hymnType.maxNumber.isEmpty()) {
+        continue;
+      }
+      for (int hymnNumber = 1; hymnNumber <= hymnType.maxNumber.get(); hymnNumber++) {
         builder.add(HymnalNetKey.newBuilder().setHymnType(hymnType.abbreviation)
             .setHymnNumber(String.valueOf(hymnNumber)).build());
       }
@@ -0,0 +1,16 @@
+package com.hymnsmobile.pipeline.hymnalnet.dagger;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import javax.inject.Qualifier;
+
+/**
+ * Whether songs stored from a previous execution of the pipeline should be revalidated against Hymnal.net instead of
+ * being reused as-is.
+ */
+@Qualifier
+@Documented
+@Retention(RUNTIME)
+public @interface RefreshStoredSongs {}
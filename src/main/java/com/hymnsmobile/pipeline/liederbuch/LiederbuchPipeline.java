@@ -5,16 +5,20 @@ import static com.hymnsmobile.pipeline.liederbuch.BlockList.BLOCK_LIST;
 import static com.hymnsmobile.pipeline.liederbuch.LiederbuchLauncher.EPUB_PATH;
 
 import com.google.common.collect.ImmutableList;
+import com.hymnsmobile.pipeline.StageCache;
 import com.hymnsmobile.pipeline.dagger.DaggerPipelineComponent;
 import com.hymnsmobile.pipeline.liederbuch.dagger.Liederbuch;
 import com.hymnsmobile.pipeline.liederbuch.models.LiederbuchHymn;
 import com.hymnsmobile.pipeline.liederbuch.models.LiederbuchKey;
 import com.hymnsmobile.pipeline.liederbuch.models.Verse;
 import com.hymnsmobile.pipeline.models.PipelineError;
+import com.hymnsmobile.pipeline.models.StageCacheKey;
 import com.hymnsmobile.pipeline.utils.TextUtil;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.logging.Logger;
 import javax.inject.Inject;
@@ -30,21 +34,26 @@ import org.jsoup.nodes.TextNode;
 public class LiederbuchPipeline {
 
   private static final Logger LOGGER = Logger.getGlobal();
+  private static final String STAGE = "liederbuch";
+
   private final Converter converter;
   private final Set<LiederbuchHymn> songs;
   private final Set<PipelineError> errors;
   private final EpubReader reader;
+  private final StageCache stageCache;
 
   @Inject
   public LiederbuchPipeline(
       Converter converter,
       EpubReader reader,
       Set<LiederbuchHymn> songs,
-      @Liederbuch Set<PipelineError> errors) {
+      @Liederbuch Set<PipelineError> errors,
+      StageCache stageCache) {
     this.converter = converter;
     this.errors = errors;
     this.songs = songs;
     this.reader = reader;
+    this.stageCache = stageCache;
   }
 
   public ImmutableList<LiederbuchHymn> getLiederbuchSong() {
@@ -57,6 +66,31 @@ public class LiederbuchPipeline {
 
   public void run() throws IOException {
     LOGGER.info("Liederbuch pipeline starting");
+    StageCacheKey key = stageCache.key(
+        STAGE,
+        List.of(EPUB_PATH),
+        // The liederbuch package, its models, the common models, the text utilities it uses and the libraries that parse
+        // the EPUB.
+        List.of(LiederbuchPipeline.class, LiederbuchHymn.class, PipelineError.class, TextUtil.class, EpubReader.class,
+                Jsoup.class),
+        List.of());
+    Optional<com.hymnsmobile.pipeline.liederbuch.models.Liederbuch> cached =
+        stageCache.read(key, com.hymnsmobile.pipeline.liederbuch.models.Liederbuch.parser());
+    if (cached.isPresent()) {
+      songs.addAll(cached.get().getLiederbuchXmlList());
+      errors.addAll(cached.get().getErrorsList());
+      LOGGER.info("Liederbuch pipeline finished with cached results, since nothing has changed since the last run");
+      return;
+    }
+    readEpub();
+    stageCache.write(key, com.hymnsmobile.pipeline.liederbuch.models.Liederbuch.newBuilder()
+        .addAllLiederbuchXml(songs)
+        .addAllErrors(errors)
+        .build());
+    LOGGER.info("Liederbuch pipeline finished");
+  }
+
+  private void readEpub() throws IOException {
     Book book = reader.readEpub(new FileInputStream(EPUB_PATH));
     ImmutableList<Resource> allResources = book.getResources().getAll().stream()
         .sorted(Comparator.comparing(Resource::getHref))
@@ -134,7 +168,6 @@ public class LiederbuchPipeline {
         songs.add(liederbuchSong.build());
       }
     }
-    LOGGER.info("Liederbuch pipeline finished");
   }
 
   public static void main(String[] args) throws IOException {
@@ -1,20 +1,36 @@
 package com.hymnsmobile.pipeline.merge;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.hymnsmobile.pipeline.models.PipelineError;
 import com.hymnsmobile.pipeline.models.PipelineError.ErrorType;
 import com.hymnsmobile.pipeline.models.PipelineError.Severity;
 import com.hymnsmobile.pipeline.models.SongReference;
 
-import javax.annotation.Nullable;
 import java.util.AbstractCollection;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.regex.Pattern;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
 
 public abstract class Auditor {
 
-  protected final Set<PipelineError> errors;
+  /**
+   * Hymn numbers like 810, 698b or nt575c, which are valid alternates of a hymn of the same type.
+   */
+  protected static final Pattern ALTERNATE_NUMBER = Pattern.compile("(\\D+\\d+\\D*)|(\\D*\\d+\\D+)");
+
+  /**
+   * Classic hymn numbers like 8688, which are retranslations of certain Chinese hymns.
+   */
+  protected static final Pattern RETRANSLATION_NUMBER = Pattern.compile("8\\d{3}");
+
+  private final Set<PipelineError> errors;
 
   /**
    * All exceptions we've seen so far. We need to keep track of this because the auditing step is
@@ -26,57 +42,125 @@ public abstract class Auditor {
   private final Set<ImmutableSet<SongReference>> allExceptionsSoFar;
 
   /**
-   * The set of exceptions used for the current audit.
+   * Exceptions that weren't used the last time the sets they could apply to were audited.
    */
-  @Nullable
-  private Set<ImmutableSet<SongReference>> currentAuditExceptions;
+  private final Set<ImmutableSet<SongReference>> unusedExceptions;
 
   public Auditor(Set<PipelineError> errors) {
     this.errors = errors;
-    this.allExceptionsSoFar = new HashSet<>();
+    this.allExceptionsSoFar = new LinkedHashSet<>();
+    this.unusedExceptions = new LinkedHashSet<>();
   }
 
+  /**
+   * Audits every set of songs there is.
+   */
   public void audit(Set<Set<SongReference>> songReferenceSets,
       Optional<ImmutableSet<ImmutableSet<SongReference>>> exceptions) {
+    audit(songReferenceSets, exceptions, Optional.empty());
+  }
+
+  /**
+   * Audits the sets of songs that could have changed since the last audit.
+   * <p/>
+   * The sets are audited in parallel, but the results are the same as auditing them one at a time: errors are added in
+   * the order of {@code songReferenceSets}, and each exception is only used by the first set that needs it.
+   *
+   * @param scope every reference that could be in a set that changed. Only the exceptions that involve one of them are
+   *     applied again, while the rest stay used or unused from when they were last applied, since the sets they could
+   *     apply to haven't changed. If absent, {@code songReferenceSets} are all the sets there are.
+   */
+  public void audit(Set<Set<SongReference>> songReferenceSets,
+      Optional<ImmutableSet<ImmutableSet<SongReference>>> exceptions, Optional<Set<SongReference>> scope) {
     exceptions.ifPresent(this.allExceptionsSoFar::addAll);
 
-    currentAuditExceptions = new HashSet<>(allExceptionsSoFar);
-    this.performAudit(songReferenceSets);
-    if (!currentAuditExceptions.isEmpty()) {
+    ImmutableList<ImmutableSet<SongReference>> exceptionsToApply =
+        allExceptionsSoFar.stream()
+            .filter(exception -> scope.map(references -> exception.stream().anyMatch(references::contains))
+                .orElse(true))
+            .collect(toImmutableList());
+
+    // Each set is audited as if it were the first, with every exception still available to it. Sets rarely share an
+    // exception, so that is almost always what auditing them in order would have done as well.
+    ImmutableList<Set<SongReference>> sets = ImmutableList.copyOf(songReferenceSets);
+    ImmutableList<SetAudit> audits =
+        sets.parallelStream().map(set -> audit(set, exceptionsToApply)).collect(toImmutableList());
+
+    // Reconcile the audits in order. An audit that used an exception an earlier set had already used is done again with
+    // only the exceptions that were left, exactly like it would have been if the sets had been audited in order.
+    Set<ImmutableSet<SongReference>> remainingExceptions = new LinkedHashSet<>(exceptionsToApply);
+    for (int i = 0; i < sets.size(); i++) {
+      SetAudit setAudit = audits.get(i);
+      if (!remainingExceptions.containsAll(setAudit.usedExceptions)) {
+        setAudit = audit(sets.get(i), ImmutableList.copyOf(remainingExceptions));
+      }
+      remainingExceptions.removeAll(setAudit.usedExceptions);
+      errors.addAll(setAudit.errors);
+    }
+
+    unusedExceptions.removeAll(exceptionsToApply);
+    unusedExceptions.addAll(remainingExceptions);
+    if (!unusedExceptions.isEmpty()) {
       PipelineError.Builder error =
           PipelineError.newBuilder()
               .setSource(PipelineError.Source.MERGE)
               .setSeverity(Severity.WARNING)
               .setErrorType(ErrorType.AUDITOR_OBSOLETE_EXCEPTION);
-      currentAuditExceptions.stream()
+      unusedExceptions.stream()
           .map(AbstractCollection::toString)
           .forEach(error::addMessages);
       this.errors.add(error.build());
     }
-    currentAuditExceptions = null;
   }
 
-  protected abstract void performAudit(Set<Set<SongReference>> songReferenceSets);
+  private SetAudit audit(Set<SongReference> songReferences, ImmutableList<ImmutableSet<SongReference>> exceptions) {
+    SetAudit setAudit = new SetAudit(exceptions);
+    performAudit(new LinkedHashSet<>(songReferences), setAudit);
+    return setAudit;
+  }
+
+  /**
+   * Audits a single set of songs, which it is free to modify. Sets are audited concurrently, so this shouldn't touch
+   * any state other than {@code setToAudit} and {@code setAudit}.
+   */
+  protected abstract void performAudit(Set<SongReference> setToAudit, SetAudit setAudit);
 
   /**
-   * If the set includes a pre-defined set of exceptions, then remove it from the set. Returns true
-   * if items were removed from the set.
+   * The errors found and the exceptions used while auditing a single set. It is only ever used by the thread auditing
+   * that set.
    */
-  protected boolean removeExceptions(Set<SongReference> setToAudit) {
-    if (currentAuditExceptions == null) {
-      return false;
+  protected static final class SetAudit {
+
+    private final ImmutableList<ImmutableSet<SongReference>> exceptions;
+    private final Set<ImmutableSet<SongReference>> usedExceptions = new HashSet<>();
+    private final List<PipelineError> errors = new ArrayList<>();
+
+    private SetAudit(ImmutableList<ImmutableSet<SongReference>> exceptions) {
+      this.exceptions = exceptions;
+    }
+
+    protected void addError(PipelineError error) {
+      errors.add(error);
     }
-    for (ImmutableSet<SongReference> exception : currentAuditExceptions) {
-      if (setToAudit.containsAll(exception)) {
+
+    /**
+     * If the set includes a pre-defined set of exceptions, then remove it from the set. Returns true
+     * if items were removed from the set.
+     */
+    protected boolean removeExceptions(Set<SongReference> setToAudit) {
+      for (ImmutableSet<SongReference> exception : exceptions) {
+        if (usedExceptions.contains(exception) || !setToAudit.containsAll(exception)) {
+          continue;
+        }
         if (!setToAudit.removeAll(exception)) {
           throw new IllegalArgumentException(
               exception + " was unable to be removed from " + setToAudit);
         }
-        // Remove exception from exceptions set because we have "used" the exception.
-        currentAuditExceptions.remove(exception);
+        // Each exception can only be "used" once.
+        usedExceptions.add(exception);
         return true;
       }
+      return false;
     }
-    return false;
   }
 }
@@ -16,7 +16,6 @@ import java.util.stream.Collectors;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.hymnsmobile.pipeline.merge.HardcodedDuplicates.H4A_DUPLICATES;
-import static com.hymnsmobile.pipeline.merge.Utilities.getHymnFrom;
 
 /**
  * Class that merges H4a songs into the pipeline results.
@@ -33,31 +32,29 @@ public class H4aMerger {
     this.errors = errors;
   }
 
-  ImmutableList<Hymn> merge(ImmutableList<H4aHymn> h4aHymns, ImmutableList<Hymn> mergedHymns) {
-    List<Hymn.Builder> builders =
-        mergedHymns.stream().map(Hymn::toBuilder).collect(Collectors.toList());
-
+  /**
+   * Merges {@code h4aHymns} into the hymns in {@code workspace}.
+   */
+  void merge(ImmutableList<H4aHymn> h4aHymns, MergeWorkspace workspace) {
     h4aHymns.stream()
         // Sort by hymn type
         .sorted(Comparator.comparingInt(
             o -> com.hymnsmobile.pipeline.h4a.HymnType.fromString(o.getId().getType()).orElseThrow()
                 .ordinal()))
         // Merge in H4a hymns
-        .forEach(h4aHymn -> mergeHymn(h4aHymn, h4aHymns, builders));
-    return builders.stream().map(Hymn.Builder::build).collect(toImmutableList());
+        .forEach(h4aHymn -> mergeHymn(h4aHymn, h4aHymns, workspace));
   }
 
   private void mergeHymn(
       H4aHymn h4aHymn,
       ImmutableList<H4aHymn> h4aHymns,
-      List<Hymn.Builder> builders) {
+      MergeWorkspace workspace) {
     SongReference h4aReference = converter.toSongReference(h4aHymn.getId());
     if (H4A_DUPLICATES.containsKey(h4aReference)) {
       Hymn.Builder duplicate =
-          getHymnFrom(H4A_DUPLICATES.get(h4aReference), builders).orElseThrow()
-                                                                 .addProvenance("h4a");
+          workspace.get(H4A_DUPLICATES.get(h4aReference)).orElseThrow().addProvenance("h4a");
       if (duplicate.getLanguage() == converter.getLanguage(h4aReference)) {
-        duplicate.addReferences(h4aReference);
+        workspace.addReference(duplicate, h4aReference);
       } else {
         errors.add(PipelineError.newBuilder()
                 .setSeverity(Severity.ERROR)
@@ -72,14 +69,14 @@ public class H4aMerger {
 
     HymnType hymnType = HymnType.fromString(h4aReference.getHymnType());
     if (hymnType == HymnType.LIEDERBUCH) {
-      mergeGermanHymn(h4aHymn, builders);
+      mergeGermanHymn(h4aHymn, workspace);
       return;
     }
 
     // We're only interested in adding new songs, so if the song itself already exists, then we
     // can skip it. Note: At this point, we don't actually need to port over the languages of
     // existing hymns, since they will be added when we encounter them.
-    if (getHymnFrom(h4aReference, builders).isPresent()) {
+    if (workspace.get(h4aReference).isPresent()) {
       return;
     }
 
@@ -125,10 +122,9 @@ public class H4aMerger {
         guessParent(h4aHymn, h4aHymns)
             .map(parent -> converter.toSongReference(parent.getId()))
             .ifPresent(parent ->
-                getHymnFrom(parent, builders).orElseThrow()
-                    .addLanguages(h4aReference)
+                workspace.addLanguage(workspace.get(parent).orElseThrow(), h4aReference)
                     .addProvenance("h4a"));
-        builders.add(converter.toHymn(h4aHymn).toBuilder());
+        workspace.add(converter.toHymn(h4aHymn).toBuilder());
         break;
       case BE_FILLED:
         if (h4aHymn.hasParentHymn()) {
@@ -146,9 +142,10 @@ public class H4aMerger {
                     .build());
             break;
           }
-          getHymnFrom(parentReference, builders).orElseThrow().addReferences(h4aReference).addProvenance("h4a");
+          workspace.addReference(workspace.get(parentReference).orElseThrow(), h4aReference)
+              .addProvenance("h4a");
         } else {
-          builders.add(converter.toHymn(h4aHymn).toBuilder());
+          workspace.add(converter.toHymn(h4aHymn).toBuilder());
         }
     }
   }
@@ -162,7 +159,7 @@ public class H4aMerger {
    * So here, we are going to both fix the lyrics and add the Liederbuch numbering of the German
    * song provided by H4a.
    */
-  private void mergeGermanHymn(H4aHymn h4aGermanHymn, List<Hymn.Builder> builders) {
+  private void mergeGermanHymn(H4aHymn h4aGermanHymn, MergeWorkspace workspace) {
     SongReference germanSongReference = converter.toSongReference(h4aGermanHymn.getId());
 
     // Try to find the associated German song that has already been processed
@@ -178,28 +175,28 @@ public class H4aMerger {
             .collect(toImmutableList());
     List<Hymn.Builder> germanSongs =
         relatedReferences.stream()
-            .map(relatedReference -> getHymnFrom(relatedReference, builders).orElseThrow())
+            .map(relatedReference -> workspace.get(relatedReference).orElseThrow())
             .flatMap(relatedBuilder -> relatedBuilder.getLanguagesList().stream())
             .filter(relatedReference -> HymnType.fromString(relatedReference.getHymnType()) == HymnType.GERMAN)
-            .map(germanReference -> getHymnFrom(germanReference, builders).orElseThrow())
+            .map(germanReference -> workspace.get(germanReference).orElseThrow())
             .distinct()
             .collect(Collectors.toList());
     // Apply a manual mapping if it is appropriate
     manualMapping(germanSongReference)
-        .flatMap(manualMapping -> getHymnFrom(manualMapping, builders))
+        .flatMap(workspace::get)
         .ifPresent(germanSongs::add);
 
     if (germanSongs.size() == 1) {
       // If the German song is already in the db, we added it as an alternate key to the
       // already existing song.
-      germanSongs.get(0).addReferences(germanSongReference);
+      workspace.addReference(germanSongs.get(0), germanSongReference);
 
       // We also fix the lyrics by nuking the existing lyrics and just using the new German lyrics.
       // TODO add some validation here (verse lengths, verse types, etc.)
       germanSongs.get(0).clearVerses().addAllVerses(h4aGermanHymn.getVersesList());
     } else if (germanSongs.isEmpty()) {
       // This is a new song, so add it into the list
-      builders.add(converter.toHymn(h4aGermanHymn).toBuilder());
+      workspace.add(converter.toHymn(h4aGermanHymn).toBuilder());
     } else {
       throw new IllegalStateException("Shouldn't have more than 1 matching German song");
     }
@@ -207,8 +204,7 @@ public class H4aMerger {
     // Go through all the related and add Liederbuch as a related song
     relatedReferences.forEach(
         relatedReference ->
-            getHymnFrom(relatedReference, builders).orElseThrow()
-                .addLanguages(germanSongReference));
+            workspace.addLanguage(workspace.get(relatedReference).orElseThrow(), germanSongReference));
   }
 
   /**
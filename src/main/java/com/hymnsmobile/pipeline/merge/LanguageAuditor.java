@@ -1,6 +1,5 @@
 package com.hymnsmobile.pipeline.merge;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.protobuf.AbstractMessage;
 import com.hymnsmobile.pipeline.merge.dagger.Merge;
@@ -12,11 +11,11 @@ import com.hymnsmobile.pipeline.models.SongReference;
 
 import javax.inject.Inject;
 import java.util.Collections;
-import java.util.LinkedHashSet;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
-import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.hymnsmobile.pipeline.merge.HymnType.*;
 
 /**
@@ -31,13 +30,13 @@ public class LanguageAuditor extends Auditor {
   }
 
   @Override
-  protected void performAudit(Set<Set<SongReference>> songReferenceSets) {
-    songReferenceSets.forEach(songReferences -> auditLanguageSet(new LinkedHashSet<>(songReferences), false));
+  protected void performAudit(Set<SongReference> setToAudit, SetAudit setAudit) {
+    auditLanguageSet(setToAudit, setAudit, false);
   }
 
-  private void auditLanguageSet(Set<SongReference> setToAudit, boolean ignoreDanglingReference) {
+  private void auditLanguageSet(Set<SongReference> setToAudit, SetAudit setAudit, boolean ignoreDanglingReference) {
     if (setToAudit.size() == 1 && !ignoreDanglingReference) {
-      errors.add(PipelineError.newBuilder()
+      setAudit.addError(PipelineError.newBuilder()
           .setSource(PipelineError.Source.MERGE)
           .setSeverity(Severity.ERROR)
           .setErrorType(ErrorType.AUDITOR_DANGLING_LANGUAGE_SET)
@@ -46,23 +45,27 @@ public class LanguageAuditor extends Auditor {
       return;
     }
 
-    // Extract the hymn types for audit.
-    ImmutableList<HymnType> hymnTypes =
-        setToAudit.stream()
-            .map(SongReference::getHymnType)
-            .map(HymnType::fromString)
-            .collect(toImmutableList());
+    // Count the hymn types for audit.
+    Map<HymnType, Integer> hymnTypeCounts = new EnumMap<>(HymnType.class);
+    setToAudit.forEach(
+        songReference -> hymnTypeCounts.merge(HymnType.fromString(songReference.getHymnType()), 1, Integer::sum));
+    Set<HymnType> hymnTypes = hymnTypeCounts.keySet();
 
     // Verify that the same hymn type doesn't appear more than the allowed number of times the languages list.
-    for (HymnType hymnType : HymnType.values()) {
+    for (Map.Entry<HymnType, Integer> hymnTypeCount : hymnTypeCounts.entrySet()) {
+      HymnType hymnType = hymnTypeCount.getKey();
+      if (hymnTypeCount.getValue() <= 1) {
+        // Every type is allowed at least once.
+        continue;
+      }
       int timesAllowed = 1;
 
       // For each song like ns/151de, lb/12s,  or , increment the allowance of that type of hymn, since those are valid
       // alternates.
       if (ImmutableSet.of(NEW_SONG, HOWARD_HIGASHI).contains(hymnType)) {
         for (SongReference songReference : setToAudit) {
-          if (HymnType.fromString(songReference.getHymnType()) == hymnType && songReference.getHymnNumber()
-              .matches("(\\D+\\d+\\D*)|(\\D*\\d+\\D+)")) {
+          if (HymnType.fromString(songReference.getHymnType()) == hymnType
+              && ALTERNATE_NUMBER.matcher(songReference.getHymnNumber()).matches()) {
             timesAllowed++;
           }
         }
@@ -74,7 +77,7 @@ public class LanguageAuditor extends Auditor {
           if (HymnType.fromString(songReference.getHymnType()) != CLASSIC_HYMN) {
             continue;
           }
-          if (!songReference.getHymnNumber().matches("8\\d{3}")) {
+          if (!RETRANSLATION_NUMBER.matcher(songReference.getHymnNumber()).matches()) {
             continue;
           }
 
@@ -91,16 +94,16 @@ public class LanguageAuditor extends Auditor {
         }
       }
 
-      if (Collections.frequency(hymnTypes, hymnType) > timesAllowed) {
+      if (hymnTypeCount.getValue() > timesAllowed) {
         // If exceptions were removed, then we audit the new set and return early (i.e. don't keep
         // looking at the rest of the hymn types because that list is no longer accurate)
-        if (removeExceptions(setToAudit)) {
+        if (setAudit.removeExceptions(setToAudit)) {
           // May cause a dangling reference set if we remove everything except for one song, so we need to special case
           // to ignore that error, if it happens.
-          auditLanguageSet(setToAudit, true);
+          auditLanguageSet(setToAudit, setAudit, true);
           return;
         }
-        errors.add(PipelineError.newBuilder()
+        setAudit.addError(PipelineError.newBuilder()
             .setSource(PipelineError.Source.MERGE)
             .setSeverity(Severity.ERROR)
             .setErrorType(ErrorType.AUDITOR_TOO_MANY_INSTANCES)
@@ -120,14 +123,14 @@ public class LanguageAuditor extends Auditor {
         || (hymnTypes.contains(HOWARD_HIGASHI) && hymnTypes.contains(BE_FILLED))
         || hymnTypes.contains(CHINESE) && hymnTypes.contains(CHINESE_SUPPLEMENTAL)
         || hymnTypes.contains(CHINESE_SIMPLIFIED) && hymnTypes.contains(CHINESE_SUPPLEMENTAL_SIMPLIFIED))
-        && !removeExceptions(setToAudit)) {
+        && !setAudit.removeExceptions(setToAudit)) {
       PipelineError.Builder error =
           PipelineError.newBuilder()
               .setSource(PipelineError.Source.MERGE)
               .setSeverity(Severity.ERROR)
               .setErrorType(ErrorType.AUDITOR_INCOMPATIBLE_LANGUAGES);
       setToAudit.forEach(songReference -> error.addMessages(songReference.toString()));
-      errors.add(error.build());
+      setAudit.addError(error.build());
     }
   }
 }
@@ -1,11 +1,6 @@
 package com.hymnsmobile.pipeline.merge;
 
-import static com.google.common.collect.ImmutableList.toImmutableList;
-import static com.google.common.collect.ImmutableSet.toImmutableSet;
-import static com.hymnsmobile.pipeline.merge.Utilities.getHymnFrom;
-
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
 import com.hymnsmobile.pipeline.h4a.models.H4aHymn;
 import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetJson;
 import com.hymnsmobile.pipeline.liederbuch.models.LiederbuchHymn;
@@ -22,10 +17,8 @@ import com.hymnsmobile.pipeline.models.PipelineError.Severity;
 import com.hymnsmobile.pipeline.models.SongReference;
 import com.hymnsmobile.pipeline.russian.RussianHymn;
 import com.hymnsmobile.pipeline.songbase.models.SongbaseHymn;
-import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import javax.inject.Inject;
 
 /**
@@ -46,6 +39,7 @@ public class MergePipeline {
   private final SanitizationPipeline sanitizationPipeline;
   private final Set<PipelineError> errors;
   private final SongbaseMerger songbaseMerger;
+  private final MergeWorkspace workspace = new MergeWorkspace();
 
   @Inject
   public MergePipeline(
@@ -72,56 +66,45 @@ public class MergePipeline {
   /**
    * Initially, just convert all Hymnal.net songs into the common format
    */
-  public ImmutableList<Hymn> convertHymnalNet(ImmutableList<HymnalNetJson> hymnalNetHymns) {
+  public void convertHymnalNet(ImmutableList<HymnalNetJson> hymnalNetHymns) {
     LOGGER.info("Converting Hymnal.net");
-    ImmutableList<Hymn> hymns = hymnalNetHymns.stream().map(converter::toHymn).collect(toImmutableList());
+    hymnalNetHymns.forEach(hymnalNetHymn -> workspace.add(converter.toHymn(hymnalNetHymn).toBuilder()));
     LOGGER.info("Sanitizing Hymnal.net");
-    return sanitizationPipeline.sanitize(hymns, hymnalNetPatcher, hymnalNetExceptions);
+    sanitizationPipeline.sanitize(workspace, hymnalNetPatcher, hymnalNetExceptions);
   }
 
-  public ImmutableList<Hymn> mergeH4a(
-      ImmutableList<H4aHymn> h4aHymns, ImmutableList<Hymn> mergedHymns) {
+  public void mergeH4a(ImmutableList<H4aHymn> h4aHymns) {
     LOGGER.info("Merging Hymns for Android");
-    ImmutableList<Hymn> merged = h4aMerger.merge(h4aHymns, mergedHymns);
+    h4aMerger.merge(h4aHymns, workspace);
     LOGGER.info("Sanitizing Hymns for Android");
-    return sanitizationPipeline.sanitize(merged, h4aPatcher, h4aExceptions);
+    sanitizationPipeline.sanitize(workspace, h4aPatcher, h4aExceptions);
   }
 
-  public ImmutableList<Hymn> mergeRussian(ImmutableList<RussianHymn> russianHymns, ImmutableList<Hymn> mergedHymns) {
+  public void mergeRussian(ImmutableList<RussianHymn> russianHymns) {
     LOGGER.info("Merging Russian");
-    List<Hymn.Builder> builders =
-        mergedHymns.stream().map(Hymn::toBuilder).collect(Collectors.toList());
-
     russianHymns.forEach(russianHymn -> {
-      builders.add(converter.toHymn(russianHymn).toBuilder());
+      workspace.add(converter.toHymn(russianHymn).toBuilder());
 
       // Set the parent to also reference the Russian hymn.
       SongReference parentReference = russianHymn.getParent();
-      Hymn.Builder parent = getHymnFrom(parentReference, builders).orElseThrow();
-      parent.addLanguages(
+      Hymn.Builder parent = workspace.get(parentReference).orElseThrow();
+      workspace.addLanguage(parent,
           SongReference.newBuilder()
               .setHymnType(HymnType.RUSSIAN.abbreviatedValue)
               .setHymnNumber(String.valueOf(russianHymn.getNumber())).build());
     });
     LOGGER.info("Sanitizing Russian");
-    return sanitizationPipeline.sanitize(
-        builders.stream().map(Hymn.Builder::build).collect(toImmutableList()));
+    sanitizationPipeline.sanitize(workspace);
   }
 
-  public ImmutableList<Hymn> mergeLiederbuch(
-      ImmutableList<LiederbuchHymn> liederbuchHymns, ImmutableList<Hymn> mergedHymns) {
+  public void mergeLiederbuch(ImmutableList<LiederbuchHymn> liederbuchHymns) {
     LOGGER.info("Merging Liederbuch");
 
-    ImmutableSet<SongReference> existingReferences =
-        mergedHymns.stream()
-            .flatMap(mergedHymn -> mergedHymn.getReferencesList().stream())
-            .collect(toImmutableSet());
-
     // We ingest the songs from Liederbuch, but they should already be covered by other sources. If,
     // for some reason they aren't covered, we should log it and investigate further.
     liederbuchHymns.forEach(liederbuchHymn -> {
       SongReference liederbuchReference = converter.toSongReference(liederbuchHymn.getKey());
-      if (!existingReferences.contains(liederbuchReference)) {
+      if (workspace.get(liederbuchReference).isEmpty()) {
         errors.add(PipelineError.newBuilder()
             .setSource(PipelineError.Source.MERGE)
             .setSeverity(Severity.WARNING)
@@ -130,16 +113,30 @@ public class MergePipeline {
             .build());
       }
     });
+    // Nothing from Liederbuch is merged in, so only what earlier patches changed needs to be sanitized again.
     LOGGER.info("Sanitizing Liederbuch");
-    return sanitizationPipeline.sanitize(mergedHymns);
+    sanitizationPipeline.sanitize(workspace);
   }
 
-  public ImmutableList<Hymn> mergeSongbase(
-      ImmutableList<SongbaseHymn> songbaseHymns, ImmutableList<Hymn> mergedHymns) {
+  public void mergeSongbase(ImmutableList<SongbaseHymn> songbaseHymns) {
     LOGGER.info("Merging Songbase");
-    ImmutableList<Hymn> merged = songbaseMerger.merge(songbaseHymns, mergedHymns);
+    songbaseMerger.merge(songbaseHymns, workspace);
     LOGGER.info("Sanitizing Songbase");
-    return sanitizationPipeline.sanitize(merged);
+    sanitizationPipeline.sanitize(workspace);
+  }
+
+  /**
+   * @return how many hymns have been merged so far
+   */
+  public int getHymnCount() {
+    return workspace.size();
+  }
+
+  /**
+   * @return the hymns merged so far. Each call builds every hymn, so this should only be called once merging is done.
+   */
+  public ImmutableList<Hymn> getMergedHymns() {
+    return workspace.build();
   }
 
   @SafeVarargs
@@ -0,0 +1,129 @@
+package com.hymnsmobile.pipeline.merge;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.hymnsmobile.pipeline.models.Hymn;
+import com.hymnsmobile.pipeline.models.SongReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The hymns being merged. They stay builders for the whole of the merge, so that each merge step can change them in
+ * place instead of copying the entire corpus, and are only built once the merge is done.
+ * <p/>
+ * Hymns are indexed by their {@link SongReference}s so that finding the hymn a reference belongs to doesn't mean
+ * scanning every hymn. Hymns and links have to be added through the workspace to keep the index up to date, which also
+ * lets it keep track of which hymns changed since they were last sanitized.
+ */
+class MergeWorkspace {
+
+  private final List<Hymn.Builder> builders = new ArrayList<>();
+  private final Map<SongReference, Hymn.Builder> owners = new HashMap<>();
+  private final Set<Hymn.Builder> changedHymns = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final Set<SongReference> changedReferences = new HashSet<>();
+
+  /**
+   * Gets the hymn that matches the passed-in song reference.
+   */
+  Optional<Hymn.Builder> get(SongReference songReference) {
+    return Optional.ofNullable(owners.get(songReference));
+  }
+
+  /**
+   * Adds {@code builder} as a new hymn.
+   *
+   * @throws IllegalStateException if one of its references already belongs to another hymn
+   */
+  Hymn.Builder add(Hymn.Builder builder) {
+    builder.getReferencesList().forEach(reference -> index(reference, builder));
+    builders.add(builder);
+    changedHymns.add(builder);
+    return builder;
+  }
+
+  /**
+   * Adds {@code reference} to the references of {@code builder}, which has to already be in the workspace.
+   *
+   * @throws IllegalStateException if {@code reference} already belongs to another hymn
+   */
+  Hymn.Builder addReference(Hymn.Builder builder, SongReference reference) {
+    index(reference, builder);
+    changedHymns.add(builder);
+    return builder.addReferences(reference);
+  }
+
+  /**
+   * Adds {@code language} to the languages of {@code builder}.
+   */
+  Hymn.Builder addLanguage(Hymn.Builder builder, SongReference language) {
+    changedHymns.add(builder);
+    return builder.addLanguages(language);
+  }
+
+  /**
+   * Records that the hymns with {@code references} were changed some other way, such as by a patch.
+   */
+  void markChanged(Collection<SongReference> references) {
+    changedReferences.addAll(references);
+  }
+
+  /**
+   * Indexes every hymn again, for when their references were changed some other way, such as by a patch.
+   *
+   * @throws IllegalStateException if a reference belongs to more than one hymn
+   */
+  void reindex() {
+    owners.clear();
+    builders.forEach(builder -> builder.getReferencesList().forEach(reference -> index(reference, builder)));
+  }
+
+  /**
+   * @return the hymns, in the order they were added. They are the workspace's own builders, not copies.
+   */
+  ImmutableList<Hymn.Builder> getBuilders() {
+    return ImmutableList.copyOf(builders);
+  }
+
+  int size() {
+    return builders.size();
+  }
+
+  /**
+   * @return the references of every hymn that changed since the last time this was called, after which they no longer
+   *     count as changed
+   */
+  ImmutableSet<SongReference> takeChangedReferences() {
+    ImmutableSet.Builder<SongReference> references = ImmutableSet.builder();
+    changedHymns.forEach(builder -> references.addAll(builder.getReferencesList()));
+    references.addAll(changedReferences);
+    changedHymns.clear();
+    changedReferences.clear();
+    return references.build();
+  }
+
+  /**
+   * @return every hymn in the order it was added
+   */
+  ImmutableList<Hymn> build() {
+    return builders.stream().map(Hymn.Builder::build).collect(toImmutableList());
+  }
+
+  private void index(SongReference reference, Hymn.Builder builder) {
+    Hymn.Builder owner = owners.putIfAbsent(reference, builder);
+    if (owner != null && owner != builder) {
+      throw new IllegalStateException(
+          String.format("%s already belongs to %s, so it can't be added to %s", reference,
+              owner.getReferencesList(), builder.getReferencesList()));
+    }
+  }
+}
@@ -1,6 +1,5 @@
 package com.hymnsmobile.pipeline.merge;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.protobuf.AbstractMessage;
 import com.hymnsmobile.pipeline.merge.dagger.Merge;
@@ -11,12 +10,11 @@ import com.hymnsmobile.pipeline.models.PipelineError.Severity;
 import com.hymnsmobile.pipeline.models.SongReference;
 
 import javax.inject.Inject;
-import java.util.Collections;
-import java.util.LinkedHashSet;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
-import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.hymnsmobile.pipeline.merge.HymnType.*;
 
 /**
@@ -31,13 +29,13 @@ public class RelevantsAuditor extends Auditor {
   }
 
   @Override
-  protected void performAudit(Set<Set<SongReference>> songReferenceSets) {
-    songReferenceSets.forEach(songReferences -> auditRelevantsSet(new LinkedHashSet<>(songReferences), false));
+  protected void performAudit(Set<SongReference> setToAudit, SetAudit setAudit) {
+    auditRelevantsSet(setToAudit, setAudit, false);
   }
 
-  private void auditRelevantsSet(Set<SongReference> setToAudit, boolean ignoreDanglingReference) {
+  private void auditRelevantsSet(Set<SongReference> setToAudit, SetAudit setAudit, boolean ignoreDanglingReference) {
     if (setToAudit.size() == 1 && !ignoreDanglingReference) {
-      errors.add(PipelineError.newBuilder()
+      setAudit.addError(PipelineError.newBuilder()
           .setSource(PipelineError.Source.MERGE)
           .setSeverity(Severity.ERROR)
           .setErrorType(ErrorType.AUDITOR_DANGLING_RELEVANT_SET)
@@ -45,27 +43,31 @@ public class RelevantsAuditor extends Auditor {
           .build());
     }
 
-    // Extract the hymn types for audit.
-    ImmutableList<HymnType> hymnTypes =
-        setToAudit.stream()
-            .map(SongReference::getHymnType)
-            .map(HymnType::fromString)
-            .collect(toImmutableList());
+    // Count the hymn types for audit.
+    Map<HymnType, Integer> hymnTypeCounts = new EnumMap<>(HymnType.class);
+    setToAudit.forEach(
+        songReference -> hymnTypeCounts.merge(HymnType.fromString(songReference.getHymnType()), 1, Integer::sum));
+    Set<HymnType> hymnTypes = hymnTypeCounts.keySet();
 
     // Verify that the same hymn type doesn't appear more than the allowed number of times the relevant list.
-    for (HymnType hymnType : HymnType.values()) {
+    for (Map.Entry<HymnType, Integer> hymnTypeCount : hymnTypeCounts.entrySet()) {
+      HymnType hymnType = hymnTypeCount.getKey();
+      if (hymnTypeCount.getValue() <= 1) {
+        // Every type is allowed at least once.
+        continue;
+      }
       int timesAllowed = 1;
 
       if (ImmutableSet.of(CLASSIC_HYMN, NEW_TUNE, NEW_SONG, GERMAN, CHINESE, CHINESE_SIMPLIFIED)
           .contains(hymnType)) {
         for (SongReference songReference : setToAudit) {
-          if (HymnType.fromString(songReference.getHymnType()) == hymnType && songReference.getHymnNumber()
-              .matches("(\\D+\\d+\\D*)|(\\D*\\d+\\D+)")) {
+          if (HymnType.fromString(songReference.getHymnType()) == hymnType
+              && ALTERNATE_NUMBER.matcher(songReference.getHymnNumber()).matches()) {
             // For each song like h/810, ns/698b, nt/394b, de/786b, ch/nt575c, chx/nt575c increment the allowance of
             // that type of hymn, since those are valid alternates.
             timesAllowed++;
           } else if (HymnType.fromString(songReference.getHymnType()) == CLASSIC_HYMN &&
-              songReference.getHymnNumber().matches("8\\d{3}")) {
+              RETRANSLATION_NUMBER.matcher(songReference.getHymnNumber()).matches()) {
             // For each song like h/8688 which are retranslations of certain Chinese hymns, increment the allowance of
             // that type of hymn, since those are valid alternates.
             timesAllowed++;
@@ -73,16 +75,16 @@ public class RelevantsAuditor extends Auditor {
         }
       }
 
-      if (Collections.frequency(hymnTypes, hymnType) > timesAllowed) {
+      if (hymnTypeCount.getValue() > timesAllowed) {
         // If exceptions were removed, then we audit the new set and return early (i.e. don't keep
         // looking at hte rest of the hymn types because that list is no longer accurate)
-        if (removeExceptions(setToAudit)) {
+        if (setAudit.removeExceptions(setToAudit)) {
           // May cause a dangling reference set if we remove everything except for one song, so we need to special case
           // to ignore that error, if it happens.
-          auditRelevantsSet(setToAudit, true);
+          auditRelevantsSet(setToAudit, setAudit, true);
           return;
         }
-        errors.add(PipelineError.newBuilder()
+        setAudit.addError(PipelineError.newBuilder()
             .setSource(PipelineError.Source.MERGE)
             .setSeverity(Severity.ERROR)
             .setErrorType(ErrorType.AUDITOR_TOO_MANY_INSTANCES)
@@ -97,8 +99,8 @@ public class RelevantsAuditor extends Auditor {
         || (hymnTypes.contains(CLASSIC_HYMN) && hymnTypes.contains(HymnType.CHILDREN_SONG))
         || hymnTypes.contains(HymnType.CHILDREN_SONG) && hymnTypes.contains(NEW_SONG)
         || hymnTypes.contains(CHINESE) && hymnTypes.contains(HymnType.CHINESE_SUPPLEMENTAL))
-        && !removeExceptions(setToAudit)) {
-      errors.add(PipelineError.newBuilder()
+        && !setAudit.removeExceptions(setToAudit)) {
+      setAudit.addError(PipelineError.newBuilder()
           .setSource(PipelineError.Source.MERGE)
           .setSeverity(Severity.ERROR)
           .setErrorType(ErrorType.AUDITOR_INCOMPATIBLE_RELEVANTS)
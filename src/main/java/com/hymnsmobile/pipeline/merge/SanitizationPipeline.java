@@ -1,7 +1,12 @@
 package com.hymnsmobile.pipeline.merge;
 
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
 import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.hymnsmobile.pipeline.Profiler;
 import com.hymnsmobile.pipeline.merge.dagger.Merge;
 import com.hymnsmobile.pipeline.merge.dagger.MergeScope;
 import com.hymnsmobile.pipeline.merge.exceptions.Exceptions;
@@ -14,8 +19,11 @@ import com.hymnsmobile.pipeline.models.SongReference;
 
 import javax.inject.Inject;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
 /**
  * Pipeline that looks for duplicate hymns and merges them into a single hymn with multiple
@@ -26,129 +34,255 @@ public class SanitizationPipeline {
 
   private final LanguageAuditor languageAuditor;
   private final RelevantsAuditor relevantsAuditor;
+  private final Profiler profiler;
   private final Set<PipelineError> errors;
 
   @Inject
   public SanitizationPipeline(
       LanguageAuditor languageAuditor,
       RelevantsAuditor relevantsAuditor,
+      Profiler profiler,
       @Merge Set<PipelineError> errors) {
     this.errors = errors;
     this.languageAuditor = languageAuditor;
     this.relevantsAuditor = relevantsAuditor;
+    this.profiler = profiler;
   }
 
-  public ImmutableList<Hymn> sanitize(ImmutableList<Hymn> allHymns) {
-    return sanitize(allHymns, Optional.empty(), Optional.empty());
+  /**
+   * Sanitizes the links of the hymns in {@code workspace} that could have been affected by the hymns that changed since
+   * it was last sanitized, assuming that everything else was already sanitized by an earlier call.
+   */
+  public void sanitize(MergeWorkspace workspace) {
+    sanitize(workspace, Optional.empty(), Optional.empty());
   }
 
-  public ImmutableList<Hymn> sanitize(ImmutableList<Hymn> allHymns, Patcher patcher,
-      Exceptions exceptions) {
-    return sanitize(allHymns, Optional.of(patcher), Optional.of(exceptions));
+  /**
+   * Same as {@link #sanitize(MergeWorkspace)}, but with patches and exceptions. Hymns that {@code patcher} changes are
+   * sanitized as well, either now or, for post-sanitize patches, the next time around.
+   */
+  public void sanitize(MergeWorkspace workspace, Patcher patcher, Exceptions exceptions) {
+    sanitize(workspace, Optional.of(patcher), Optional.of(exceptions));
   }
 
-  private ImmutableList<Hymn> sanitize(ImmutableList<Hymn> allHymns, Optional<Patcher> patcher,
-      Optional<Exceptions> exceptions) {
-    ImmutableList<Hymn.Builder> builders =
-        allHymns.stream().map(Hymn::toBuilder).collect(toImmutableList());
-
-    patcher.ifPresent(value -> value.preSanitizePatches(builders));
+  private void sanitize(MergeWorkspace workspace, Optional<Patcher> patcher, Optional<Exceptions> exceptions) {
+    profiler.profile("sanitize", () -> {
+      ImmutableList<Hymn.Builder> builders = workspace.getBuilders();
+      Set<SongReference> dirtyReferences = new HashSet<>(workspace.takeChangedReferences());
 
-    fixLanguages(builders, exceptions);
-    fixRelevants(builders, exceptions);
+      patcher.ifPresent(value -> {
+        if (patch(builders, value::preSanitizePatches, dirtyReferences)) {
+          workspace.reindex();
+        }
+      });
 
-    patcher.ifPresent(value -> value.postSanitizePatches(builders));
+      profiler.profile("fix languages", () -> fixLanguages(builders, dirtyReferences, exceptions));
+      profiler.profile("fix relevants", () -> fixRelevants(builders, dirtyReferences, exceptions));
 
-    return builders.stream().map(Hymn.Builder::build).collect(toImmutableList());
+      patcher.ifPresent(value -> {
+        Set<SongReference> patched = new HashSet<>();
+        if (patch(builders, value::postSanitizePatches, patched)) {
+          workspace.reindex();
+        }
+        workspace.markChanged(patched);
+      });
+      profiler.countItems(workspace.size());
+    });
   }
 
   public ImmutableList<PipelineError> getErrors() {
     return ImmutableList.copyOf(errors);
   }
 
-  private void fixLanguages(ImmutableList<Hymn.Builder> builders, Optional<Exceptions> exceptions) {
+  /**
+   * Applies {@code patches} to {@code builders}, and adds the references of every hymn whose links it changed to
+   * {@code patched}.
+   *
+   * @return whether any hymn's references changed, in which case the workspace needs to be indexed again
+   */
+  private static boolean patch(ImmutableList<Hymn.Builder> builders, Consumer<ImmutableList<Hymn.Builder>> patches,
+      Set<SongReference> patched) {
+    ImmutableList<ImmutableList<ImmutableList<SongReference>>> before =
+        builders.stream().map(SanitizationPipeline::linksOf).collect(toImmutableList());
+    patches.accept(builders);
+    boolean referencesChanged = false;
+    for (int i = 0; i < builders.size(); i++) {
+      ImmutableList<ImmutableList<SongReference>> after = linksOf(builders.get(i));
+      if (!after.equals(before.get(i))) {
+        patched.addAll(before.get(i).get(0));
+        patched.addAll(after.get(0));
+        referencesChanged |= !after.get(0).equals(before.get(i).get(0));
+      }
+    }
+    return referencesChanged;
+  }
+
+  /**
+   * @return copies of the references, languages and relevants of {@code builder}
+   */
+  private static ImmutableList<ImmutableList<SongReference>> linksOf(Hymn.Builder builder) {
+    return ImmutableList.of(ImmutableList.copyOf(builder.getReferencesList()),
+        ImmutableList.copyOf(builder.getLanguagesList()), ImmutableList.copyOf(builder.getRelevantsList()));
+  }
+
+  private void fixLanguages(ImmutableList<Hymn.Builder> builders, Set<SongReference> dirtyReferences,
+      Optional<Exceptions> exceptions) {
     FieldDescriptor languageFieldDescriptor = Hymn.getDescriptor().findFieldByName("languages");
-    Set<Set<SongReference>> languageSets =
-        generateSongLinkSets(builders, languageFieldDescriptor);
-    languageAuditor.audit(languageSets, exceptions.map(Exceptions::languageExceptions));
-    writeSongLinks(builders, languageFieldDescriptor, languageSets);
+    fixSongLinks(builders, languageFieldDescriptor, languageAuditor, dirtyReferences,
+        exceptions.map(Exceptions::languageExceptions));
   }
 
-  private void fixRelevants(ImmutableList<Hymn.Builder> builders, Optional<Exceptions> exceptions) {
+  private void fixRelevants(ImmutableList<Hymn.Builder> builders, Set<SongReference> dirtyReferences,
+      Optional<Exceptions> exceptions) {
     FieldDescriptor relevantFieldDescriptor = Hymn.getDescriptor().findFieldByName("relevants");
-    Set<Set<SongReference>> relevantsSets =
-        generateSongLinkSets(builders, relevantFieldDescriptor);
-    relevantsAuditor.audit(relevantsSets, exceptions.map(Exceptions::relevantExceptions));
-    writeSongLinks(builders, relevantFieldDescriptor, relevantsSets);
+    fixSongLinks(builders, relevantFieldDescriptor, relevantsAuditor, dirtyReferences,
+        exceptions.map(Exceptions::relevantExceptions));
+  }
+
+  /**
+   * Regenerates, audits and writes back the song link sets that {@code dirtyReferences} could be in.
+   */
+  private void fixSongLinks(ImmutableList<Hymn.Builder> builders, FieldDescriptor descriptor, Auditor auditor,
+      Set<SongReference> dirtyReferences, Optional<ImmutableSet<ImmutableSet<SongReference>>> exceptions) {
+    Set<SongReference> scope = new HashSet<>(dirtyReferences);
+    // New exceptions could apply to sets that haven't changed, so those need to be audited again as well.
+    exceptions.ifPresent(exceptionSets -> exceptionSets.forEach(scope::addAll));
+    ImmutableList<Hymn.Builder> toSanitize = linkedBuilders(builders, descriptor, scope);
+
+    SongLinkSets songLinkSets = generateSongLinkSets(toSanitize, descriptor);
+    Set<Set<SongReference>> sets = songLinkSets.asSets();
+    sets.forEach(scope::addAll);
+    auditor.audit(sets, exceptions, Optional.of(scope));
+    writeSongLinks(toSanitize, descriptor, songLinkSets);
+  }
+
+  /**
+   * Finds every hymn that is linked to one of {@code references}, either directly or through other hymns, in either
+   * direction. These are all the hymns whose song link sets could contain one of {@code references}.
+   *
+   * @return the linked hymns, in the order they are in {@code builders}
+   */
+  private static ImmutableList<Hymn.Builder> linkedBuilders(ImmutableList<Hymn.Builder> builders,
+      FieldDescriptor descriptor, Set<SongReference> references) {
+    // Hymns are identified by their position in builders.
+    ListMultimap<SongReference, Integer> owners = ArrayListMultimap.create();
+    ListMultimap<SongReference, Integer> linkers = ArrayListMultimap.create();
+    for (int i = 0; i < builders.size(); i++) {
+      for (SongReference reference : builders.get(i).getReferencesList()) {
+        owners.put(reference, i);
+      }
+      for (SongReference link : songLinks(builders.get(i), descriptor)) {
+        linkers.put(link, i);
+      }
+    }
+
+    boolean[] linked = new boolean[builders.size()];
+    Set<SongReference> visited = new HashSet<>(references);
+    Deque<SongReference> toVisit = new ArrayDeque<>(references);
+    while (!toVisit.isEmpty()) {
+      SongReference reference = toVisit.pop();
+      for (int i : Iterables.concat(owners.get(reference), linkers.get(reference))) {
+        if (linked[i]) {
+          continue;
+        }
+        linked[i] = true;
+        Iterables.concat(builders.get(i).getReferencesList(), songLinks(builders.get(i), descriptor)).forEach(next -> {
+          if (visited.add(next)) {
+            toVisit.push(next);
+          }
+        });
+      }
+    }
+    return IntStream.range(0, builders.size())
+        .filter(i -> linked[i])
+        .mapToObj(builders::get)
+        .collect(toImmutableList());
+  }
+
+  private static List<SongReference> songLinks(Hymn.Builder builder, FieldDescriptor descriptor) {
+    // noinspection unchecked
+    return (List<SongReference>) builder.getField(descriptor);
   }
 
   /**
    * Generates aggregated sets of {@link SongReference}s that represent all links of a single song,
    * described by the {@link FieldDescriptor}.
+   * <p/>
+   * Each set is the union of everything reachable from the hymns in it, and is built up in the order that the hymns
+   * come in, so the links that end up on each hymn are always in the same order. Every reference is only ever visited
+   * once, since everything reachable from a reference that was already visited is in its set already.
    */
-  private Set<Set<SongReference>> generateSongLinkSets(
+  private SongLinkSets generateSongLinkSets(
       ImmutableList<Hymn.Builder> builders, FieldDescriptor descriptor) {
-    Set<Set<SongReference>> songLinkSets = new HashSet<>();
+    ListMultimap<SongReference, Hymn.Builder> owners = ArrayListMultimap.create();
+    builders.forEach(builder -> builder.getReferencesList().forEach(reference -> owners.put(reference, builder)));
+
+    SongLinkSets songLinkSets = new SongLinkSets();
     builders.forEach(builder -> {
-      Hymn hymn = builder.build();
       // noinspection unchecked
-      List<SongReference> links = (List<SongReference>) hymn.getField(descriptor);
+      List<SongReference> links = (List<SongReference>) builder.getField(descriptor);
 
       if (links.isEmpty()) {
         return;
       }
 
-      if (links.stream().anyMatch(link -> hymn.getReferencesList().contains(link))) {
+      if (links.stream().anyMatch(link -> builder.getReferencesList().contains(link))) {
         errors.add(PipelineError.newBuilder()
             .setSource(PipelineError.Source.MERGE)
             .setSeverity(Severity.ERROR)
             .setErrorType(ErrorType.SANITIZER_SELF_REFERENCE)
-            .addMessages(hymn.getReferencesList().toString())
+            .addMessages(builder.getReferencesList().toString())
             .build());
       }
 
       final Set<SongReference> songLinkSet = new LinkedHashSet<>();
-      if (hymn.getReferencesCount() == 0) {
+      final Set<Integer> setsToMergeWith = new HashSet<>();
+      if (builder.getReferencesCount() == 0) {
         throw new IllegalStateException("hymn references were empty");
       }
-      populateSongLinkSet(builders, descriptor, hymn.getReferences(0), songLinkSet);
-
-      // Once we have the song link set for this hymn populated correctly, we attempt to merge it
-      // with an existing set, if it exists, that already contains the current songs.
-      List<Set<SongReference>> setToMergeWith = songLinkSets.stream().filter(
-              songLinks -> songLinkSet.stream().anyMatch(songLinks::contains))
-          .toList();
-      if (setToMergeWith.size() > 1) {
+      populateSongLinkSet(owners, descriptor, builder.getReferences(0), songLinkSets, songLinkSet, setsToMergeWith);
+
+      // Once we have the new links of this hymn, we merge them into the existing set that the
+      // links we have already seen are in, if there is one.
+      if (setsToMergeWith.size() > 1) {
         throw new IllegalStateException(
             "Set too big. This shouldn't happen, as it indicates a code error.");
       }
-      if (setToMergeWith.isEmpty()) {
+      if (setsToMergeWith.isEmpty()) {
         songLinkSets.add(songLinkSet);
       } else {
-        setToMergeWith.get(0).addAll(songLinkSet);
+        songLinkSets.addAll(setsToMergeWith.iterator().next(), songLinkSet);
       }
     });
     return songLinkSets;
   }
 
-  private void populateSongLinkSet(ImmutableList<Hymn.Builder> builders,
-      FieldDescriptor descriptor, SongReference songLink, Set<SongReference> songLinks) {
+  /**
+   * Adds {@code songLink}, and everything reachable from it that isn't in {@code songLinkSets} yet, to {@code songLinks}.
+   * The sets that the rest of the reachable links are in are added to {@code setsReached}.
+   */
+  private void populateSongLinkSet(ListMultimap<SongReference, Hymn.Builder> owners,
+      FieldDescriptor descriptor, SongReference songLink, SongLinkSets songLinkSets,
+      Set<SongReference> songLinks, Set<Integer> setsReached) {
+    Optional<Integer> existingSet = songLinkSets.setOf(songLink);
+    if (existingSet.isPresent()) {
+      setsReached.add(existingSet.get());
+      return;
+    }
     if (songLinks.contains(songLink)) {
       return;
     }
     songLinks.add(songLink);
     // noinspection unchecked
-    ((List<SongReference>) getReferencedHymnBuilder(builders, songLink).getField(descriptor))
+    ((List<SongReference>) getReferencedHymnBuilder(owners, songLink).getField(descriptor))
         .forEach(linkedSong ->
-            populateSongLinkSet(builders, descriptor, linkedSong, songLinks));
+            populateSongLinkSet(owners, descriptor, linkedSong, songLinkSets, songLinks, setsReached));
   }
 
   private Hymn.Builder getReferencedHymnBuilder(
-      ImmutableList<Hymn.Builder> builders,
+      ListMultimap<SongReference, Hymn.Builder> owners,
       SongReference songReference) {
-    ImmutableList<Hymn.Builder> results = builders.stream()
-        .filter(builder -> builder.getReferencesList().contains(songReference))
-        .collect(toImmutableList());
+    List<Hymn.Builder> results = owners.get(songReference);
     if (results.size() != 1) {
       throw new IllegalStateException("results was not of size 1");
     }
@@ -160,13 +294,14 @@ public class SanitizationPipeline {
    */
   private void writeSongLinks(
       ImmutableList<Hymn.Builder> builders,
-      FieldDescriptor descriptor, Set<Set<SongReference>> songLinkSets) {
+      FieldDescriptor descriptor, SongLinkSets songLinkSets) {
     builders.forEach(builder -> {
       ImmutableList<SongReference> references = ImmutableList.copyOf(builder.getReferencesList());
-      ImmutableList<Set<SongReference>> setContainingHymn =
-          songLinkSets.stream()
-              .filter(songLinks -> songLinks.stream().anyMatch(references::contains))
-              .collect(toImmutableList());
+      ImmutableSet<Integer> setContainingHymn =
+          references.stream()
+              .map(songLinkSets::setOf)
+              .flatMap(Optional::stream)
+              .collect(toImmutableSet());
 
       if (setContainingHymn.isEmpty()) {
         return;
@@ -177,7 +312,7 @@ public class SanitizationPipeline {
       }
 
       // Make a copy of the list, so we aren't destructively altering it within a loop
-      List<SongReference> newLinks = new ArrayList<>(setContainingHymn.get(0));
+      List<SongReference> newLinks = new ArrayList<>(songLinkSets.get(setContainingHymn.iterator().next()));
       // Remove self from set
       if (!newLinks.removeIf(references::contains)) {
         throw new IllegalStateException(references + " not found");
@@ -185,4 +320,39 @@ public class SanitizationPipeline {
       builder.clearField(descriptor).setField(descriptor, newLinks);
     });
   }
+
+  /**
+   * Disjoint sets of {@link SongReference}s, numbered in the order they were created, along with which set each
+   * reference is in.
+   */
+  private static class SongLinkSets {
+
+    private final List<Set<SongReference>> sets = new ArrayList<>();
+    private final Map<SongReference, Integer> setIds = new HashMap<>();
+
+    void add(Set<SongReference> songLinks) {
+      sets.add(songLinks);
+      songLinks.forEach(songLink -> setIds.put(songLink, sets.size() - 1));
+    }
+
+    void addAll(int setId, Set<SongReference> songLinks) {
+      sets.get(setId).addAll(songLinks);
+      songLinks.forEach(songLink -> setIds.put(songLink, setId));
+    }
+
+    Optional<Integer> setOf(SongReference songLink) {
+      return Optional.ofNullable(setIds.get(songLink));
+    }
+
+    Set<SongReference> get(int setId) {
+      return sets.get(setId);
+    }
+
+    /**
+     * @return every set, in the order they were created
+     */
+    Set<Set<SongReference>> asSets() {
+      return new LinkedHashSet<>(sets);
+    }
+  }
 }
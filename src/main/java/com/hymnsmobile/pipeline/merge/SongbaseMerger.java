@@ -10,7 +10,6 @@ import com.hymnsmobile.pipeline.models.PipelineError;
 import com.hymnsmobile.pipeline.songbase.models.SongbaseHymn;
 
 import javax.inject.Inject;
-import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -18,7 +17,6 @@ import java.util.stream.Collectors;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.hymnsmobile.pipeline.merge.Converter.CHORDS_PATTERN;
-import static com.hymnsmobile.pipeline.merge.Utilities.getHymnFrom;
 
 /**
  * Class that merges Songbase songs into the pipeline results.
@@ -35,11 +33,10 @@ public class SongbaseMerger {
     this.errors = errors;
   }
 
-  public ImmutableList<Hymn> merge(
-      ImmutableList<SongbaseHymn> songbaseHymns, ImmutableList<Hymn> mergedHymns) {
-    List<Hymn.Builder> builders =
-        mergedHymns.stream().map(Hymn::toBuilder).collect(Collectors.toList());
-
+  /**
+   * Merges {@code songbaseHymns} into the hymns in {@code workspace}.
+   */
+  void merge(ImmutableList<SongbaseHymn> songbaseHymns, MergeWorkspace workspace) {
     songbaseHymns.forEach(songbaseHymn -> {
       Hymn.Builder songbaseBuilder =
           converter.toHymn(songbaseHymn).toBuilder()
@@ -48,13 +45,13 @@ public class SongbaseMerger {
       // Find a hymn that already matches one of the songbase song's references, if it exists
       ImmutableList<Hymn.Builder> matchingReference =
           songbaseBuilder.getReferencesList().stream()
-              .map(reference -> getHymnFrom(reference, builders))
+              .map(workspace::get)
               .filter(Optional::isPresent)
               .map(Optional::get)
               .collect(toImmutableList());
       if (matchingReference.isEmpty()) {
         // No matching references, so add the songbase song
-        builders.add(songbaseBuilder);
+        workspace.add(songbaseBuilder);
         return;
       }
 
@@ -80,7 +77,7 @@ public class SongbaseMerger {
       songbaseBuilder.getReferencesList().stream()
           .filter(reference -> !matchingReference.get(0).getReferencesList().contains(reference))
           .forEach(reference -> {
-            matchingReference.get(0).addReferences(reference);
+            workspace.addReference(matchingReference.get(0), reference);
             matchingReference.get(0).addProvenance("songbase");
           });
       // Set inline chords property only if there are chords found in the song
@@ -88,6 +85,5 @@ public class SongbaseMerger {
         matchingReference.get(0).addAllChordLines(songbaseBuilder.getChordLinesList());
       }
     });
-    return builders.stream().map(Hymn.Builder::build).collect(toImmutableList());
   }
 }
@@ -2,12 +2,13 @@ package com.hymnsmobile.pipeline.russian;
 
 import com.google.common.collect.ImmutableList;
 import com.hymnsmobile.pipeline.dagger.DaggerPipelineComponent;
+import com.hymnsmobile.pipeline.utils.ProtoUtils;
 
 import java.io.BufferedWriter;
-import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.Set;
 import java.util.logging.Logger;
 import javax.inject.Inject;
@@ -54,7 +55,7 @@ public class RussianPipeline {
 
   public void run() throws IOException {
     LOGGER.info("Russian pipeline starting");
-    this.hymns.addAll(RussianHymns.parseFrom(new FileInputStream(FILE_PATH)).getRussianHymnsList());
+    this.hymns.addAll(ProtoUtils.parseFile(Path.of(FILE_PATH), RussianHymns.parser()).getRussianHymnsList());
     LOGGER.info("Russian pipeline finished");
   }
 
@@ -16,20 +16,30 @@ public class Fetcher {
   @VisibleForTesting static final String SONGBASE_DB_DUMP_URL = "https://songbase.life/api/v2/app_data";
 
   private final HttpClient client;
+  private final URI dbDumpUri;
 
   @Inject
   public Fetcher(HttpClient client) {
+    this(client, URI.create(SONGBASE_DB_DUMP_URL));
+  }
+
+  /**
+   * Fetches the dump from somewhere other than Songbase itself (e.g. a local stand-in server).
+   */
+  @VisibleForTesting
+  public Fetcher(HttpClient client, URI dbDumpUri) {
     this.client = client;
+    this.dbDumpUri = dbDumpUri;
   }
 
   public String fetch() throws IOException, InterruptedException {
     HttpResponse<String> response = client.send(
-        HttpRequest.newBuilder().uri(URI.create(SONGBASE_DB_DUMP_URL)).build(),
+        HttpRequest.newBuilder().uri(dbDumpUri).build(),
         BodyHandlers.ofString());
 
     if (response.statusCode() != 200) {
       throw new IllegalStateException(
-          String.format("%s returned with status code: %d", SONGBASE_DB_DUMP_URL,
+          String.format("%s returned with status code: %d", dbDumpUri,
               response.statusCode()));
     }
     return response.body();
@@ -129,6 +129,7 @@ public class SongbaseDiffer {
 
   private Multimap<String, SongReference> parseHymns() throws ClassNotFoundException, SQLException {
     Class.forName("org.sqlite.JDBC");
+    // storage/output holds SQLite databases rather than proto snapshots, so it has no SnapshotCatalog to ask.
     Optional<File> mostRecentFile = fileReadWriter.readLargestFilePath("storage/output",
         Optional.of("\\d\\d\\d\\d-\\d\\d-\\d\\d_\\d\\d-\\d\\d-\\d\\d_PDT"));
     // No file to read
@@ -26,9 +26,9 @@ public class Writer {
   }
 
   public void write(String responseBody) throws IOException {
-    String fileName = String.format("storage/songbase/%s.txt",
+    String fileName = String.format("storage/songbase/%s.txt.gz",
         currentTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss_z")));
     LOGGER.fine(String.format("Writing songbase to %s", fileName));
-    fileReadWriter.writeString(fileName, responseBody);
+    fileReadWriter.writeCompressedString(fileName, responseBody);
   }
 }
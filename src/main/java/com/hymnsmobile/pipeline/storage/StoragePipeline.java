@@ -6,6 +6,7 @@ import com.hymnsmobile.pipeline.models.DuplicationResults;
 import com.hymnsmobile.pipeline.models.Hymn;
 import com.hymnsmobile.pipeline.models.PipelineError;
 import com.hymnsmobile.pipeline.models.PipelineErrors;
+import com.hymnsmobile.pipeline.models.RunReport;
 import com.hymnsmobile.pipeline.storage.models.HymnEntity;
 import dagger.Lazy;
 
@@ -73,4 +74,12 @@ public class StoragePipeline {
     fileReadWriter.writeString(outputDirectory.get().getPath() + "/duplications.textproto",
                                duplicationResults.toString());
   }
+
+  /**
+   * Writes {@code runReport} both as a textproto to read and as a binary proto to compare against other runs.
+   */
+  public void writeRunReport(RunReport runReport) throws IOException {
+    fileReadWriter.writeString(outputDirectory.get().getPath() + "/run_report.textproto", runReport.toString());
+    fileReadWriter.writeProtoFile(outputDirectory.get().getPath() + "/run_report.binaryproto", runReport);
+  }
 }
@@ -1,20 +1,84 @@
 package com.hymnsmobile.pipeline.utils;
 
 import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
 
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPInputStream;
 
 public class ProtoUtils {
 
-    public static byte[] hashProto(MessageLite message) throws NoSuchAlgorithmException {
-        // Serialize the protobuf message to a byte array
-        byte[] serializedMessage = message.toByteArray();
+    /**
+     * Size of the buffers used to compress and decompress protos.
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
 
-        // Create a MessageDigest instance for SHA-256
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    /**
+     * @return a new SHA-256 digest
+     */
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * SHA-256 of everything in {@code input}, which is read to the end and then closed.
+     */
+    public static byte[] hashStream(InputStream input) throws IOException {
+        MessageDigest digest = newSha256();
+        try (DigestInputStream digestInput = new DigestInputStream(new BufferedInputStream(input, BUFFER_SIZE), digest)) {
+            digestInput.transferTo(OutputStream.nullOutputStream());
+        }
+        return digest.digest();
+    }
+
+    /**
+     * SHA-256 of the contents of {@code path}.
+     */
+    public static byte[] hashFile(Path path) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            return hashStream(input);
+        }
+    }
+
+    /**
+     * Parses a binary proto file that may or may not be gzipped. Either way, the file is streamed in a buffer at a time,
+     * and gzipped files are decompressed as they are streamed.
+     */
+    public static <M extends MessageLite> M parseFile(Path path, Parser<M> parser) throws IOException {
+        if (!isGzipped(path)) {
+            try (InputStream input = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)) {
+                return parser.parseFrom(input);
+            }
+        }
+        try (InputStream input = new GZIPInputStream(Files.newInputStream(path), BUFFER_SIZE)) {
+            return parser.parseFrom(input);
+        }
+    }
 
-        // Compute the hash
-        return digest.digest(serializedMessage);
+    /**
+     * Whether {@code path} starts with the gzip magic number. No valid proto can start with it, since 0x1f would be a
+     * tag with the invalid wire type 7.
+     */
+    public static boolean isGzipped(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException(path.toString());
+        }
+        try (InputStream input = Files.newInputStream(path)) {
+            return input.read() == 0x1f && input.read() == 0x8b;
+        }
     }
 }
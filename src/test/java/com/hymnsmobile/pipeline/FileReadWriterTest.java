@@ -1,19 +1,27 @@
 package com.hymnsmobile.pipeline;
 
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.hymnsmobile.pipeline.models.CompressionReport;
 import com.hymnsmobile.pipeline.models.Line;
+import com.hymnsmobile.pipeline.models.SnapshotEntry;
+import com.hymnsmobile.pipeline.utils.ProtoUtils;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -107,14 +115,16 @@ class FileReadWriterTest {
   }
 
   @Test
-  public void writeProto__writesBinaryProto_writesTextProto() throws IOException {
+  public void writeProto__writesBinaryProto_writesTextProto() throws IOException, InterruptedException {
     String outputDirectory = RESOURCE_DIR_PATH + "/output";
     try {
       assertThat(new File(outputDirectory)).doesNotExist();
       target.writeProto(outputDirectory, Line.newBuilder().setLineContent("dummy content").build());
+      target.awaitPendingWrites();
       assertThat(new File(outputDirectory)).exists();
       assertThat(new File(outputDirectory)).isDirectory();
-      assertThat(Line.parser().parseFrom(new FileInputStream(outputDirectory + "/output.binaryproto")))
+      assertThat(Line.parser().parseFrom(
+          new GZIPInputStream(new FileInputStream(outputDirectory + "/output.binaryproto"))))
           .isEqualTo(Line.newBuilder().setLineContent("dummy content").build());
       assertThat(Files.readString(Paths.get(outputDirectory + "/output.textproto"), StandardCharsets.UTF_8))
           .isEqualTo("line_content: \"dummy content\"\n");
@@ -123,4 +133,151 @@ class FileReadWriterTest {
       assertThat(FileUtils.deleteQuietly(new File(outputDirectory))).isTrue();
     }
   }
+
+  @Test
+  public void writeProto__compressed__readsBack_recordsCompression() throws IOException, InterruptedException {
+    String outputDirectory = RESOURCE_DIR_PATH + "/output";
+    Line line = Line.newBuilder().setLineContent("la ".repeat(1000)).build();
+    try {
+      target.writeProto(outputDirectory + "/dir_1", line);
+      target.awaitPendingWrites();
+
+      assertThat(target.readLatestOutput(outputDirectory, Optional.of("dir_\\d"), Line.parser())).hasValue(line);
+      CompressionReport report = target.getCompressionReport();
+      assertThat(report.getUncompressedBytesWritten()).isEqualTo(line.getSerializedSize());
+      assertThat(report.getCompressionRatio()).isGreaterThan(10);
+      assertThat(report.getCompressedBytesRead()).isEqualTo(report.getCompressedBytesWritten());
+      assertThat(report.getUncompressedBytesRead()).isEqualTo(line.getSerializedSize());
+    } finally {
+      // Clean up files no matter happens to the test.
+      assertThat(FileUtils.deleteQuietly(new File(outputDirectory))).isTrue();
+    }
+  }
+
+  @Test
+  public void writeProto__returnsHashesOfWhatWasWritten() throws IOException {
+    String outputDirectory = RESOURCE_DIR_PATH + "/output";
+    Line line = Line.newBuilder().setLineContent("dummy content").build();
+    try {
+      SnapshotEntry written = target.writeProto(outputDirectory + "/dir_1", FileReadWriter.DELTA, line);
+
+      Path file = Paths.get(outputDirectory, "dir_1", "delta.binaryproto");
+      assertThat(written.getDirectory()).isEqualTo("dir_1");
+      assertThat(written.getKind()).isEqualTo(SnapshotEntry.Kind.DELTA);
+      assertThat(written.getContentSha256().toByteArray())
+          .isEqualTo(ProtoUtils.hashStream(new ByteArrayInputStream(line.toByteArray())));
+      assertThat(written.getFileSha256().toByteArray()).isEqualTo(ProtoUtils.hashFile(file));
+      assertThat(written.getFileSize()).isEqualTo(Files.size(file));
+    } finally {
+      // Clean up files no matter happens to the test.
+      assertThat(FileUtils.deleteQuietly(new File(outputDirectory))).isTrue();
+    }
+  }
+
+  @Test
+  public void writeProto__textProtosSkipped__onlyWritesBinaryProto() throws IOException, InterruptedException {
+    String outputDirectory = RESOURCE_DIR_PATH + "/output";
+    target = new FileReadWriter(false);
+    try {
+      target.writeProto(outputDirectory, Line.newBuilder().setLineContent("dummy content").build());
+      target.awaitPendingWrites();
+      assertThat(new File(outputDirectory + "/output.binaryproto")).exists();
+      assertThat(new File(outputDirectory + "/output.textproto")).doesNotExist();
+    } finally {
+      // Clean up files no matter happens to the test.
+      assertThat(FileUtils.deleteQuietly(new File(outputDirectory))).isTrue();
+    }
+  }
+
+  @Test
+  public void readProto__fileMissing__returnsEmpty() {
+    assertThat(target.readProto(RESOURCE_DIR_PATH + "/missing.binaryproto", Line.parser())).isEmpty();
+  }
+
+  @Test
+  public void writeProtoFile__createsParentDirectories_roundTrips() throws IOException {
+    String outputDirectory = RESOURCE_DIR_PATH + "/output";
+    String fileName = outputDirectory + "/nested/output.binaryproto";
+    try {
+      assertThat(new File(outputDirectory)).doesNotExist();
+      target.writeProtoFile(fileName, Line.newBuilder().setLineContent("dummy content").build());
+      assertThat(target.readProto(fileName, Line.parser()))
+          .hasValue(Line.newBuilder().setLineContent("dummy content").build());
+    } finally {
+      // Clean up files no matter happens to the test.
+      assertThat(FileUtils.deleteQuietly(new File(outputDirectory))).isTrue();
+    }
+  }
+
+  @Test
+  public void readDelimitedProtos__fileMissing__returnsEmpty() {
+    assertThat(target.readDelimitedProtos(RESOURCE_DIR_PATH + "/missing.binaryproto", Line.parser())).isEmpty();
+  }
+
+  @Test
+  public void appendDelimitedProtos__truncatedTail__readsCompleteRecords() throws IOException {
+    String outputDirectory = RESOURCE_DIR_PATH + "/output";
+    String fileName = outputDirectory + "/records.binaryproto";
+    Line first = Line.newBuilder().setLineContent("first").build();
+    Line second = Line.newBuilder().setLineContent("second").build();
+    Line third = Line.newBuilder().setLineContent("third").build();
+    try {
+      target.appendDelimitedProtos(fileName, List.of(first));
+      target.appendDelimitedProtos(fileName, List.of(second, third));
+      assertThat(target.readDelimitedProtos(fileName, Line.parser())).containsExactly(first, second, third);
+
+      // Simulate a crash part-way through writing the last record.
+      byte[] content = Files.readAllBytes(Paths.get(fileName));
+      Files.write(Paths.get(fileName), Arrays.copyOf(content, content.length - 2));
+      assertThat(target.readDelimitedProtos(fileName, Line.parser())).containsExactly(first, second);
+
+      assertThat(target.listFiles(outputDirectory)).containsExactly(fileName);
+      target.deleteRecursively(outputDirectory);
+      assertThat(new File(outputDirectory)).doesNotExist();
+    } finally {
+      // Clean up files no matter happens to the test.
+      FileUtils.deleteQuietly(new File(outputDirectory));
+    }
+  }
+
+  @Test
+  public void readLatestOutput__withDeltas__replaysDeltasOnTopOfLatestFullOutput()
+      throws IOException, InterruptedException {
+    String outputDirectory = RESOURCE_DIR_PATH + "/output";
+    try {
+      // Superseded by the full output after it.
+      target.writeProto(outputDirectory + "/dir_1", Line.newBuilder().setLineContent("stale").build());
+      target.writeProto(outputDirectory + "/dir_2", Line.newBuilder().setLineContent("a").build());
+      target.writeProto(outputDirectory + "/dir_3", FileReadWriter.DELTA,
+          Line.newBuilder().setLineContent("b").build());
+      target.writeProto(outputDirectory + "/dir_4", FileReadWriter.DELTA,
+          Line.newBuilder().setLineContent("c").build());
+      target.awaitPendingWrites();
+
+      assertThat(target.readLatestOutput(outputDirectory, Optional.of("dir_\\d"), Line.parser(), Line.parser(),
+          (base, delta) -> Line.newBuilder().setLineContent(base.getLineContent() + delta.getLineContent()).build()))
+          .hasValue(Line.newBuilder().setLineContent("abc").build());
+    } finally {
+      // Clean up files no matter happens to the test.
+      assertThat(FileUtils.deleteQuietly(new File(outputDirectory))).isTrue();
+    }
+  }
+
+  @Test
+  public void readLatestOutput__onlyDeltas__throwsException() throws IOException, InterruptedException {
+    String outputDirectory = RESOURCE_DIR_PATH + "/output";
+    try {
+      target.writeProto(outputDirectory + "/dir_1", FileReadWriter.DELTA,
+          Line.newBuilder().setLineContent("b").build());
+      target.awaitPendingWrites();
+
+      assertThatThrownBy(() -> target.readLatestOutput(
+          outputDirectory, Optional.empty(), Line.parser(), Line.parser(), (base, delta) -> base))
+          .isInstanceOf(IllegalArgumentException.class)
+          .hasMessage("No output to apply the deltas in src/test/resources/common/output to");
+    } finally {
+      // Clean up files no matter happens to the test.
+      assertThat(FileUtils.deleteQuietly(new File(outputDirectory))).isTrue();
+    }
+  }
 }
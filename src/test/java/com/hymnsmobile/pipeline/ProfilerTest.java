@@ -0,0 +1,86 @@
+package com.hymnsmobile.pipeline;
+
+import com.hymnsmobile.pipeline.models.StageTiming;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class ProfilerTest {
+
+  private Profiler target;
+
+  @BeforeEach
+  public void setUp() {
+    target = new Profiler();
+  }
+
+  @Test
+  public void profile__returnsResultAndCountsItems() {
+    List<String> result = target.profile("step", () -> List.of("a", "b", "c"), List::size);
+
+    assertThat(result).containsExactly("a", "b", "c");
+    assertThat(target.getProfiles())
+        .extracting(StageTiming::getName, StageTiming::getOutcome, StageTiming::getItemCount)
+        .containsExactly(tuple("step", StageTiming.Outcome.SUCCEEDED, 3));
+  }
+
+  @Test
+  public void profile__nestedSteps__recordParent() throws InterruptedException {
+    target.profile("outer", () -> {
+      target.profile("inner", () -> Thread.sleep(20));
+      target.countItems(2);
+    });
+
+    assertThat(target.getProfiles())
+        .extracting(StageTiming::getName, StageTiming::getParent, StageTiming::getItemCount)
+        .containsExactly(tuple("inner", "outer", 0), tuple("outer", "", 2));
+    assertThat(target.getProfiles().get(1).getDurationMillis())
+        .isGreaterThanOrEqualTo(target.getProfiles().get(0).getDurationMillis())
+        .isGreaterThanOrEqualTo(20);
+  }
+
+  @Test
+  public void profile__stepThrows__recordsFailure() {
+    IOException failure = new IOException("failed");
+
+    assertThatThrownBy(() -> target.profile("step", () -> {
+      throw failure;
+    })).isSameAs(failure);
+    assertThat(target.getProfiles())
+        .extracting(StageTiming::getName, StageTiming::getOutcome)
+        .containsExactly(tuple("step", StageTiming.Outcome.FAILED));
+  }
+
+  @Test
+  public void profile__measuresAllocations() {
+    target.profile("allocate", () -> new byte[10 * 1024 * 1024], bytes -> 1);
+
+    // Only HotSpot can tell how much a thread allocated, and reports 0 everywhere else.
+    assertThat(target.getProfiles().get(0).getAllocatedBytes())
+        .satisfiesAnyOf(
+            allocated -> assertThat(allocated).isZero(),
+            allocated -> assertThat(allocated).isGreaterThanOrEqualTo(10 * 1024 * 1024));
+  }
+
+  @Test
+  public void skipped__recordsSkipped() {
+    target.skipped("step");
+
+    assertThat(target.getProfiles())
+        .extracting(StageTiming::getName, StageTiming::getOutcome)
+        .containsExactly(tuple("step", StageTiming.Outcome.SKIPPED));
+  }
+
+  @Test
+  public void countItems__outsideStep__throwsException() {
+    assertThatThrownBy(() -> target.countItems(1))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessage("Not inside a profiled step");
+  }
+}
@@ -0,0 +1,73 @@
+package com.hymnsmobile.pipeline;
+
+import com.hymnsmobile.pipeline.models.Line;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RecordFileTest {
+
+  private static final String OUTPUT_DIRECTORY = "src/test/resources/common/output";
+  private static final String FILE_NAME = OUTPUT_DIRECTORY + "/output.records";
+
+  private static final Line ONE = Line.newBuilder().setLineContent("one").setTransliteration("1").build();
+  private static final Line TWO = Line.newBuilder().setLineContent("two").setTransliteration("2").build();
+  private static final Line THREE = Line.newBuilder().setLineContent("three").setTransliteration("3").build();
+
+  @AfterEach
+  public void tearDown() {
+    // Clean up files no matter happens to the test.
+    FileUtils.deleteQuietly(new File(OUTPUT_DIRECTORY));
+  }
+
+  @Test
+  public void write_open__randomAccess() throws IOException {
+    RecordFile.write(FILE_NAME, List.of(ONE, TWO, THREE), Line::getLineContent);
+
+    try (RecordFile.Reader<Line> reader = RecordFile.open(FILE_NAME, Line.parser())) {
+      assertThat(reader.size()).isEqualTo(3);
+      assertThat(reader.keys()).containsExactly("one", "three", "two");
+      assertThat(reader.get("two")).hasValue(TWO);
+      assertThat(reader.get("four")).isEmpty();
+    }
+  }
+
+  @Test
+  public void write_open__streamsInKeyOrder() throws IOException {
+    RecordFile.write(FILE_NAME, List.of(ONE, TWO, THREE), Line::getLineContent);
+
+    try (RecordFile.Reader<Line> reader = RecordFile.open(FILE_NAME, Line.parser())) {
+      assertThat(reader.stream()).containsExactly(ONE, THREE, TWO);
+      assertThat(reader.stream(1, 3)).containsExactly(THREE, TWO);
+      assertThat(reader.stream().parallel().collect(Collectors.toSet())).containsExactlyInAnyOrder(ONE, TWO, THREE);
+    }
+  }
+
+  @Test
+  public void write__duplicateKey__throwsException() {
+    assertThatThrownBy(() -> RecordFile.write(FILE_NAME, List.of(ONE, ONE), Line::getLineContent))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Duplicate key one in " + FILE_NAME);
+  }
+
+  @Test
+  public void open__notARecordFile__throwsException() throws IOException {
+    Files.createDirectories(Path.of(OUTPUT_DIRECTORY));
+    Files.writeString(Path.of(FILE_NAME), "definitely not a record file", StandardCharsets.UTF_8);
+
+    assertThatThrownBy(() -> RecordFile.open(FILE_NAME, Line.parser()))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Not a record file: " + FILE_NAME);
+  }
+}
@@ -0,0 +1,185 @@
+package com.hymnsmobile.pipeline;
+
+import com.hymnsmobile.pipeline.models.Line;
+import com.hymnsmobile.pipeline.models.SnapshotEntry;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnapshotCatalogTest {
+
+  private static final String OUTPUT_DIRECTORY = "src/test/resources/common/output";
+  private static final Optional<String> FILE_MASK = Optional.of("dir_\\d");
+
+  private FileReadWriter fileReadWriter;
+
+  @BeforeEach
+  public void setUp() {
+    fileReadWriter = new FileReadWriter(false);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    // Clean up files no matter happens to the test.
+    FileUtils.deleteQuietly(new File(OUTPUT_DIRECTORY));
+  }
+
+  @Test
+  public void load__noCatalog__catalogsExistingSnapshots() throws IOException {
+    writeFull("dir_1", "a");
+    writeDelta("dir_2", "b");
+    Files.createDirectories(Path.of(OUTPUT_DIRECTORY, "not_a_snapshot"));
+
+    SnapshotCatalog catalog = SnapshotCatalog.load(OUTPUT_DIRECTORY, FILE_MASK);
+
+    assertThat(catalog.getEntries()).extracting(SnapshotEntry::getDirectory).containsExactly("dir_1", "dir_2");
+    assertThat(catalog.getEntries()).extracting(SnapshotEntry::getKind)
+        .containsExactly(SnapshotEntry.Kind.FULL, SnapshotEntry.Kind.DELTA);
+    assertThat(catalog.getEntries()).extracting(SnapshotEntry::getFormatVersion).containsOnly(2);
+    assertThat(new File(OUTPUT_DIRECTORY, SnapshotCatalog.CATALOG_FILE)).exists();
+  }
+
+  @Test
+  public void add__latestIsLastAdded() throws IOException {
+    writeFull("dir_2", "a");
+    SnapshotCatalog catalog = SnapshotCatalog.load(OUTPUT_DIRECTORY, FILE_MASK);
+    // Names don't matter once a snapshot is cataloged.
+    SnapshotEntry written = writeDelta("dir_1", "b");
+    catalog.add(OUTPUT_DIRECTORY + "/dir_1", written, 7);
+    catalog.save();
+
+    SnapshotEntry latest = SnapshotCatalog.load(OUTPUT_DIRECTORY, FILE_MASK).getLatest().orElseThrow();
+    assertThat(latest.getDirectory()).isEqualTo("dir_1");
+    assertThat(latest.getKind()).isEqualTo(SnapshotEntry.Kind.DELTA);
+    assertThat(latest.getRecordCount()).isEqualTo(7);
+    assertThat(latest.getContentSha256()).isEqualTo(written.getContentSha256());
+    assertThat(SnapshotCatalog.load(OUTPUT_DIRECTORY, FILE_MASK).getLatestChain())
+        .extracting(File::getName).containsExactly("output.binaryproto", "delta.binaryproto");
+  }
+
+  @Test
+  public void load__snapshotDeleted__dropsIt() throws IOException {
+    writeFull("dir_1", "a");
+    writeFull("dir_2", "b");
+    SnapshotCatalog.load(OUTPUT_DIRECTORY, FILE_MASK);
+    FileUtils.deleteDirectory(new File(OUTPUT_DIRECTORY, "dir_2"));
+
+    assertThat(SnapshotCatalog.load(OUTPUT_DIRECTORY, FILE_MASK).getEntries())
+        .extracting(SnapshotEntry::getDirectory).containsExactly("dir_1");
+  }
+
+  @Test
+  public void load__snapshotTruncated__throwsException() throws IOException {
+    writeFull("dir_1", "a");
+    SnapshotCatalog.load(OUTPUT_DIRECTORY, FILE_MASK);
+    try (RandomAccessFile file = new RandomAccessFile(OUTPUT_DIRECTORY + "/dir_1/output.binaryproto", "rw")) {
+      file.setLength(file.length() - 1);
+    }
+
+    assertThatThrownBy(() -> SnapshotCatalog.load(OUTPUT_DIRECTORY, FILE_MASK))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("but was written with");
+  }
+
+  @Test
+  public void getLatestChain__snapshotCorrupted__throwsException() throws IOException {
+    writeFull("dir_1", "a");
+    SnapshotCatalog.load(OUTPUT_DIRECTORY, FILE_MASK);
+    try (RandomAccessFile file = new RandomAccessFile(OUTPUT_DIRECTORY + "/dir_1/output.binaryproto", "rw")) {
+      file.seek(file.length() - 1);
+      int last = file.read();
+      file.seek(file.length() - 1);
+      file.write(last ^ 0xff);
+    }
+
+    assertThatThrownBy(() -> SnapshotCatalog.load(OUTPUT_DIRECTORY, FILE_MASK).getLatestChain())
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("has been corrupted");
+  }
+
+  @Test
+  public void getLatestChain__fromLatestFullSnapshot() throws IOException {
+    writeFull("dir_1", "a");
+    writeFull("dir_2", "b");
+    writeDelta("dir_3", "c");
+
+    assertThat(SnapshotCatalog.load(OUTPUT_DIRECTORY, FILE_MASK).getLatestChain())
+        .extracting(file -> file.getParentFile().getName())
+        .containsExactly("dir_2", "dir_3");
+  }
+
+  @Test
+  public void applyRetention__dropsSnapshotsBeforeOldestKeptFullSnapshot() throws IOException {
+    writeFull("dir_1", "a");
+    writeDelta("dir_2", "b");
+    writeFull("dir_3", "c");
+    writeDelta("dir_4", "d");
+    writeFull("dir_5", "e");
+    SnapshotCatalog catalog = SnapshotCatalog.load(OUTPUT_DIRECTORY, FILE_MASK);
+
+    assertThat(catalog.applyRetention(2))
+        .containsExactly(Path.of(OUTPUT_DIRECTORY, "dir_1").toString(), Path.of(OUTPUT_DIRECTORY, "dir_2").toString());
+    assertThat(catalog.getEntries()).extracting(SnapshotEntry::getDirectory)
+        .containsExactly("dir_3", "dir_4", "dir_5");
+  }
+
+  @Test
+  public void applyRetention__dropsFullSnapshotsIdenticalToLaterOnes() throws IOException {
+    SnapshotCatalog catalog = SnapshotCatalog.load(OUTPUT_DIRECTORY, FILE_MASK);
+    catalog.add(OUTPUT_DIRECTORY + "/dir_1", writeFull("dir_1", "a"), 1);
+    catalog.add(OUTPUT_DIRECTORY + "/dir_2", writeFull("dir_2", "b"), 1);
+    catalog.add(OUTPUT_DIRECTORY + "/dir_3", writeDelta("dir_3", "c"), 1);
+    catalog.add(OUTPUT_DIRECTORY + "/dir_4", writeFull("dir_4", "b"), 1);
+    catalog.add(OUTPUT_DIRECTORY + "/dir_5", writeFull("dir_5", "a"), 1);
+
+    // dir_2 has a delta on top of it, so it stays even though dir_4 is the same.
+    assertThat(catalog.applyRetention(10)).containsExactly(Path.of(OUTPUT_DIRECTORY, "dir_1").toString());
+    assertThat(catalog.getEntries()).extracting(SnapshotEntry::getDirectory)
+        .containsExactly("dir_2", "dir_3", "dir_4", "dir_5");
+  }
+
+  @Test
+  public void addToCatalog__deletesSnapshotsNoLongerKept() throws IOException {
+    writeFull("dir_1", "a");
+    SnapshotEntry written = writeFull("dir_2", "b");
+
+    fileReadWriter.addToCatalog(OUTPUT_DIRECTORY + "/dir_2", FILE_MASK, written, 1, 1);
+
+    assertThat(new File(OUTPUT_DIRECTORY, "dir_1")).doesNotExist();
+    assertThat(SnapshotCatalog.load(OUTPUT_DIRECTORY, FILE_MASK).getEntries())
+        .extracting(SnapshotEntry::getDirectory).containsExactly("dir_2");
+  }
+
+  @Test
+  public void addToCatalog__nothingToKeepSet__deletesNothing() throws IOException {
+    writeFull("dir_1", "a");
+    SnapshotEntry written = writeFull("dir_2", "b");
+
+    fileReadWriter.addToCatalog(OUTPUT_DIRECTORY + "/dir_2", FILE_MASK, written, 1, 0);
+
+    assertThat(new File(OUTPUT_DIRECTORY, "dir_1")).exists();
+    assertThat(SnapshotCatalog.load(OUTPUT_DIRECTORY, FILE_MASK).getEntries())
+        .extracting(SnapshotEntry::getDirectory).containsExactly("dir_1", "dir_2");
+  }
+
+  private SnapshotEntry writeFull(String directory, String content) throws IOException {
+    return fileReadWriter.writeProto(OUTPUT_DIRECTORY + "/" + directory,
+        Line.newBuilder().setLineContent(content).build());
+  }
+
+  private SnapshotEntry writeDelta(String directory, String content) throws IOException {
+    return fileReadWriter.writeProto(OUTPUT_DIRECTORY + "/" + directory, FileReadWriter.DELTA,
+        Line.newBuilder().setLineContent(content).build());
+  }
+}
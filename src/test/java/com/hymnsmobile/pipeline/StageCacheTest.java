@@ -0,0 +1,152 @@
+package com.hymnsmobile.pipeline;
+
+import com.hymnsmobile.pipeline.models.Fingerprint;
+import com.hymnsmobile.pipeline.models.Line;
+import com.hymnsmobile.pipeline.models.StageCacheEntry;
+import com.hymnsmobile.pipeline.models.StageCacheKey;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class StageCacheTest {
+
+  private static final String OUTPUT_DIRECTORY = "src/test/resources/common/output";
+  private static final String INPUT_FILE = OUTPUT_DIRECTORY + "/input.txt";
+  private static final String CACHE_FILE = "storage/cache/stage.binaryproto";
+  private static final Line OUTPUT = Line.newBuilder().setLineContent("output").build();
+
+  @Mock private FileReadWriter fileReadWriter;
+
+  private StageCache target;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    target = new StageCache(fileReadWriter, true);
+    Files.createDirectories(Path.of(OUTPUT_DIRECTORY));
+    Files.writeString(Path.of(INPUT_FILE), "input", StandardCharsets.UTF_8);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    // Clean up files no matter happens to the test.
+    FileUtils.deleteQuietly(new File(OUTPUT_DIRECTORY));
+  }
+
+  @Test
+  public void key__sameInputs__sameKey() throws IOException {
+    assertThat(key()).isEqualTo(key());
+  }
+
+  @Test
+  public void key__inputFileChanged__differentKey() throws IOException {
+    StageCacheKey before = key();
+    Files.writeString(Path.of(INPUT_FILE), "changed", StandardCharsets.UTF_8);
+
+    assertThat(key()).isNotEqualTo(before);
+  }
+
+  @Test
+  public void key__configChanged__differentKey() throws IOException {
+    assertThat(target.key("stage", List.of(INPUT_FILE), List.of(StageCache.class), List.of("other config")))
+        .isNotEqualTo(key());
+  }
+
+  @Test
+  public void read__otherClassInPackageChanged__returnsEmpty() throws Exception {
+    // Load a copy of Stage from a directory of its own, alongside a class it depends on.
+    Path classes = Path.of(OUTPUT_DIRECTORY, "classes");
+    Path packageDirectory = classes.resolve(Stage.class.getPackageName().replace('.', '/'));
+    Files.createDirectories(packageDirectory);
+    String stageClassFile = Stage.class.getName().substring(Stage.class.getPackageName().length() + 1) + ".class";
+    try (InputStream stageClass = Stage.class.getResourceAsStream(stageClassFile)) {
+      Files.copy(stageClass, packageDirectory.resolve(stageClassFile));
+    }
+    Path dependencyClassFile = packageDirectory.resolve("Dependency.class");
+    Files.writeString(dependencyClassFile, "dependency", StandardCharsets.UTF_8);
+
+    try (URLClassLoader classLoader = new URLClassLoader(new URL[] {classes.toUri().toURL()}, null)) {
+      List<Class<?>> code = List.of(Class.forName(Stage.class.getName(), false, classLoader));
+      StageCacheKey cachedKey = target.key("stage", List.of(INPUT_FILE), code, List.of("config"));
+      doReturn(Optional.of(StageCacheEntry.newBuilder().setKey(cachedKey).setOutput(OUTPUT.toByteString()).build()))
+          .when(fileReadWriter).readProto(CACHE_FILE, StageCacheEntry.parser());
+      assertThat(target.read(cachedKey, Line.parser())).hasValue(OUTPUT);
+
+      Files.writeString(dependencyClassFile, "changed dependency", StandardCharsets.UTF_8);
+
+      StageCacheKey key = target.key("stage", List.of(INPUT_FILE), code, List.of("config"));
+      assertThat(key.getCodeList()).extracting(Fingerprint::getName)
+          .contains("com.hymnsmobile.pipeline.Dependency");
+      assertThat(target.read(key, Line.parser())).isEmpty();
+    }
+  }
+
+  @Test
+  public void read__keyMatches__returnsCachedOutput() throws IOException {
+    StageCacheKey key = key();
+    doReturn(Optional.of(StageCacheEntry.newBuilder().setKey(key).setOutput(OUTPUT.toByteString()).build()))
+        .when(fileReadWriter).readProto(CACHE_FILE, StageCacheEntry.parser());
+
+    assertThat(target.read(key, Line.parser())).hasValue(OUTPUT);
+  }
+
+  @Test
+  public void read__keyDiffers__returnsEmpty() throws IOException {
+    StageCacheKey cachedKey = key();
+    doReturn(Optional.of(StageCacheEntry.newBuilder().setKey(cachedKey).setOutput(OUTPUT.toByteString()).build()))
+        .when(fileReadWriter).readProto(CACHE_FILE, StageCacheEntry.parser());
+    Files.writeString(Path.of(INPUT_FILE), "changed", StandardCharsets.UTF_8);
+
+    assertThat(target.read(key(), Line.parser())).isEmpty();
+  }
+
+  @Test
+  public void write__storesKeyWithOutput() throws IOException {
+    StageCacheKey key = key();
+
+    target.write(key, OUTPUT);
+
+    verify(fileReadWriter).writeProtoFile(
+        CACHE_FILE, StageCacheEntry.newBuilder().setKey(key).setOutput(OUTPUT.toByteString()).build());
+  }
+
+  @Test
+  public void disabled__neverReadsOrWrites() throws IOException {
+    target = new StageCache(fileReadWriter, false);
+    StageCacheKey key = key();
+
+    assertThat(target.read(key, Line.parser())).isEmpty();
+    target.write(key, OUTPUT);
+
+    verifyNoInteractions(fileReadWriter);
+  }
+
+  private StageCacheKey key() throws IOException {
+    return target.key("stage", List.of(INPUT_FILE), List.of(StageCache.class), List.of("config"));
+  }
+
+  /**
+   * Stands in for a stage whose code is fingerprinted.
+   */
+  private static class Stage {}
+}
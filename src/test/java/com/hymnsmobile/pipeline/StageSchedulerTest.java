@@ -0,0 +1,118 @@
+package com.hymnsmobile.pipeline;
+
+import com.hymnsmobile.pipeline.models.StageTiming;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class StageSchedulerTest {
+
+  private ExecutorService executor;
+  private Profiler profiler;
+
+  @BeforeEach
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+    profiler = new Profiler();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void run__independentStages__runConcurrently() throws InterruptedException, ExecutionException {
+    // Each stage waits for the other to start, so they can only both finish if they run at the same time.
+    CountDownLatch started = new CountDownLatch(2);
+    StageScheduler.Stage stage = () -> {
+      started.countDown();
+      if (!started.await(5, TimeUnit.SECONDS)) {
+        throw new IllegalStateException("Stages didn't run concurrently");
+      }
+    };
+
+    new StageScheduler(profiler).add("a", stage).add("b", stage).run(executor);
+
+    assertThat(profiler.getProfiles())
+        .extracting(StageTiming::getOutcome)
+        .containsExactly(StageTiming.Outcome.SUCCEEDED, StageTiming.Outcome.SUCCEEDED);
+  }
+
+  @Test
+  public void run__dependentStage__runsAfterItsDependencies() throws InterruptedException, ExecutionException {
+    List<String> order = new CopyOnWriteArrayList<>();
+
+    new StageScheduler(profiler)
+        .add("a", () -> {
+          Thread.sleep(50);
+          order.add("a");
+        })
+        .add("b", () -> order.add("b"))
+        .add("c", () -> order.add("c"), "a", "b")
+        .run(executor);
+
+    // Profiles are in the order the stages finished, and "a" takes longer than "b".
+    List<StageTiming> timings = profiler.getProfiles();
+    assertThat(order).containsExactly("b", "a", "c");
+    assertThat(timings).extracting(StageTiming::getName).containsExactly("b", "a", "c");
+    assertThat(timings.get(1).getDurationMillis()).isGreaterThanOrEqualTo(50);
+    assertThat(timings.get(2).getStartMillis()).isGreaterThanOrEqualTo(50);
+  }
+
+  @Test
+  public void run__stageFails__skipsDependentsAndThrows() throws InterruptedException {
+    IOException failure = new IOException("failed");
+    List<String> ran = new CopyOnWriteArrayList<>();
+    StageScheduler scheduler = new StageScheduler(profiler)
+        .add("a", () -> {
+          throw failure;
+        })
+        .add("b", () -> ran.add("b"), "a")
+        .add("c", () -> ran.add("c"), "b");
+
+    assertThatThrownBy(() -> scheduler.run(executor))
+        .isInstanceOf(ExecutionException.class)
+        .hasMessage("Stage a failed")
+        .hasCause(failure);
+    assertThat(ran).isEmpty();
+    assertThat(profiler.getProfiles())
+        .extracting(StageTiming::getName, StageTiming::getOutcome)
+        .containsExactly(
+            tuple("a", StageTiming.Outcome.FAILED),
+            tuple("b", StageTiming.Outcome.SKIPPED),
+            tuple("c", StageTiming.Outcome.SKIPPED));
+  }
+
+  @Test
+  public void add__unknownDependency__throwsException() {
+    assertThatThrownBy(() -> new StageScheduler(profiler).add("a", () -> {
+    }, "b"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("a depends on b, which needs to be added first");
+  }
+
+  @Test
+  public void add__duplicateStage__throwsException() {
+    StageScheduler scheduler = new StageScheduler(profiler).add("a", () -> {
+    });
+
+    assertThatThrownBy(() -> scheduler.add("a", () -> {
+    }))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Stage a was already added");
+  }
+}
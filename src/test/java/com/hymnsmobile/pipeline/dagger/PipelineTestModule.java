@@ -5,6 +5,7 @@ import com.hymnsmobile.pipeline.FileReadWriter;
 import com.hymnsmobile.pipeline.hymnalnet.dagger.HymnalNetPipelineTestComponent;
 import com.hymnsmobile.pipeline.models.PipelineError;
 import com.hymnsmobile.pipeline.testutil.MockHttpResponse;
+import com.hymnsmobile.pipeline.testutil.MockStreamingHttpResponse;
 import dagger.Module;
 import dagger.Provides;
 
@@ -47,28 +48,35 @@ public interface PipelineTestModule {
     HttpClient httpClient = mock(HttpClient.class);
     try {
       when(httpClient.send(any(HttpRequest.class), eq(BodyHandlers.ofString()))).thenAnswer(
-          invocation -> {
-            HttpRequest request = invocation.getArgument(0);
-            File responseDirectory = getResponseDirectory(request.uri().getAuthority());
-            String filename = request.uri().getPath().replace("/", "_");
-            File[] responses = responseDirectory.listFiles();
-            if (responses == null) {
-              throw new RuntimeException("mocked responses not found");
-            }
-
-            Optional<File> response = ImmutableList.copyOf(responses).stream()
-                .filter(file -> file.getName().equals(filename)).findFirst();
-            if (response.isEmpty()) {
-              return new MockHttpResponse(404, "Not found");
-            }
-            return new MockHttpResponse(200, readInputStreamAsString(response.get()));
-          });
+          invocation -> readMockedResponse(invocation.getArgument(0))
+              .map(body -> new MockHttpResponse(200, body))
+              .orElse(new MockHttpResponse(404, "Not found")));
+      when(httpClient.send(any(HttpRequest.class), eq(BodyHandlers.ofInputStream()))).thenAnswer(
+          invocation -> readMockedResponse(invocation.getArgument(0))
+              .map(body -> MockStreamingHttpResponse.gzipped(200, body))
+              .orElse(new MockStreamingHttpResponse(404, "Not found")));
     } catch (IOException | InterruptedException e) {
       throw new RuntimeException(e);
     }
     return httpClient;
   }
 
+  private static Optional<String> readMockedResponse(HttpRequest request) throws IOException {
+    File responseDirectory = getResponseDirectory(request.uri().getAuthority());
+    String filename = request.uri().getPath().replace("/", "_");
+    File[] responses = responseDirectory.listFiles();
+    if (responses == null) {
+      throw new RuntimeException("mocked responses not found");
+    }
+
+    Optional<File> response = ImmutableList.copyOf(responses).stream()
+        .filter(file -> file.getName().equals(filename)).findFirst();
+    if (response.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(readInputStreamAsString(response.get()));
+  }
+
   private static File getResponseDirectory(String authority) {
     String responseDirectoryFormat = "src/test/resources/%s/input";
     final File responseDirectory;
@@ -24,7 +24,8 @@ class H4aPipelineTest {
   }
 
   @Test
-  public void blockListErrors__addPipelineErrors() throws BadHanyuPinyinOutputFormatCombination, SQLException {
+  public void blockListErrors__addPipelineErrors()
+      throws BadHanyuPinyinOutputFormatCombination, SQLException, IOException {
     H4aPipelineTestModule.overrideMiscBlockList.add("E14214124");
     H4aPipelineTestModule.overrideMiscBlockList.add("ES140");
     H4aPipelineTestModule.overrideMiscBlockList.add("ES163");
@@ -0,0 +1,131 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.hymnsmobile.pipeline.FileReadWriter;
+import com.hymnsmobile.pipeline.hymnalnet.models.CheckpointRecord;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetJson;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class FetchCheckpointTest {
+
+  private static final String SEGMENT = "storage/hymnalnet/checkpoint/2024-01-02_03-04-05_UTC.binaryproto";
+
+  @Mock private FileReadWriter fileReadWriter;
+
+  private FetchCheckpoint target;
+
+  @BeforeEach
+  public void setUp() {
+    target = new FetchCheckpoint(fileReadWriter, ZonedDateTime.of(2024, 1, 2, 3, 4, 5, 0, ZoneId.of("UTC")));
+  }
+
+  @Test
+  public void load__multipleSegments__laterRecordsTakePrecedence() {
+    HymnalNetKey h1 = key("1");
+    HymnalNetKey h2 = key("2");
+    doReturn(List.of("segment_1", "segment_2")).when(fileReadWriter).listFiles("storage/hymnalnet/checkpoint");
+    doReturn(List.of(fetched(h1), CheckpointRecord.newBuilder().setNotFound(h2).build()))
+        .when(fileReadWriter).readDelimitedProtos("segment_1", CheckpointRecord.parser());
+    doReturn(List.of(CheckpointRecord.newBuilder().setNotFound(h1).build(), fetched(h2)))
+        .when(fileReadWriter).readDelimitedProtos("segment_2", CheckpointRecord.parser());
+
+    target.load();
+
+    assertThat(target.wasNotFound(h1)).isTrue();
+    assertThat(target.getFetched(h1)).isEmpty();
+    assertThat(target.wasNotFound(h2)).isFalse();
+    assertThat(target.getFetched(h2)).hasValue(fetched(h2).getFetched());
+    assertThat(target.getFetchedSongs()).containsExactly(fetched(h2).getFetched());
+  }
+
+  @Test
+  public void recordFetched__appendsInBatches() throws IOException {
+    for (int i = 1; i < FetchCheckpoint.FLUSH_EVERY; i++) {
+      target.recordFetched(fetched(key(String.valueOf(i))).getFetched());
+    }
+    verify(fileReadWriter, never()).appendDelimitedProtos(any(), anyList());
+
+    target.recordNotFound(key("missing"));
+    verify(fileReadWriter).appendDelimitedProtos(
+        any(), argThat(records -> records.size() == FetchCheckpoint.FLUSH_EVERY));
+  }
+
+  @Test
+  public void flush__appendsPendingRecordsToSegment() throws IOException {
+    target.recordFetched(fetched(key("1")).getFetched());
+    target.recordNotFound(key("2"));
+
+    target.flush();
+    // Nothing left to write.
+    target.flush();
+
+    verify(fileReadWriter).appendDelimitedProtos(
+        SEGMENT, List.of(fetched(key("1")), CheckpointRecord.newBuilder().setNotFound(key("2")).build()));
+  }
+
+  @Test
+  public void recordFetched__whileBatchIsBeingWritten__doesNotWaitForWrite() throws Exception {
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch finishWrite = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      writing.countDown();
+      finishWrite.await();
+      return null;
+    }).when(fileReadWriter).appendDelimitedProtos(any(), anyList());
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> fullBatch = executor.submit(() -> {
+        for (int i = 1; i <= FetchCheckpoint.FLUSH_EVERY; i++) {
+          target.recordFetched(fetched(key(String.valueOf(i))).getFetched());
+        }
+      });
+      writing.await();
+
+      // Would block until the write finishes if records were added under the same lock that the write holds.
+      target.recordNotFound(key("missing"));
+
+      finishWrite.countDown();
+      fullBatch.get();
+    } finally {
+      finishWrite.countDown();
+      executor.shutdownNow();
+    }
+    target.flush();
+    verify(fileReadWriter).appendDelimitedProtos(
+        SEGMENT, List.of(CheckpointRecord.newBuilder().setNotFound(key("missing")).build()));
+  }
+
+  private static HymnalNetKey key(String number) {
+    return HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber(number).build();
+  }
+
+  private static CheckpointRecord fetched(HymnalNetKey key) {
+    return CheckpointRecord.newBuilder()
+        .setFetched(HymnalNetJson.newBuilder().setKey(key).setTitle("Hymn " + key.getHymnNumber()))
+        .build();
+  }
+}
@@ -0,0 +1,162 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.google.common.collect.ImmutableList;
+import com.hymnsmobile.pipeline.FileReadWriter;
+import com.hymnsmobile.pipeline.hymnalnet.models.FetchReport;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetJson;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetKey;
+import com.hymnsmobile.pipeline.models.PipelineError;
+import com.hymnsmobile.pipeline.testutil.StandInServer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Fetches a full-size catalogue from a local {@link StandInServer} and reports throughput, tail latency and how errors
+ * were handled, so that concurrency and retry settings can be tuned offline. These are excluded from the normal test
+ * run. Run them with ./gradlew loadTest.
+ */
+@Tag("load")
+class FetchLoadTest {
+
+  private static final Logger LOGGER = Logger.getGlobal();
+
+  /**
+   * Every classic hymn. The ones without a fixture of their own are served the fallback fixture.
+   */
+  private static final ImmutableList<HymnalNetKey> CATALOGUE = HymnType.CLASSIC_HYMN.maxNumber
+      .map(maxNumber -> IntStream.rangeClosed(1, maxNumber)
+          .mapToObj(number -> HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber(String.valueOf(number)).build())
+          .collect(ImmutableList.toImmutableList()))
+      .orElseThrow();
+
+  private static final FetchPolicyConfig FETCH_POLICY_CONFIG =
+      new FetchPolicyConfig(500, 10, 1000, Duration.ofSeconds(1), 5, Duration.ofMillis(50), Duration.ofSeconds(2), 50,
+                            Duration.ofSeconds(1));
+
+  @Test
+  public void hymnalNet__wellBehavedServer() throws IOException {
+    for (int concurrency : List.of(1, 4, 8, 16)) {
+      LoadResult result = fetchCatalogue(
+          "well-behaved",
+          new StandInServer.Config(Duration.ofMillis(5), Duration.ZERO, 0, 0, Optional.of("_v2_hymn_h_1336")),
+          concurrency);
+      assertThat(result.errors).isEmpty();
+      assertThat(result.hymnalNetJsons).containsKeys(CATALOGUE.toArray(new HymnalNetKey[0]));
+    }
+  }
+
+  @Test
+  public void hymnalNet__slowFlakyServer() throws IOException {
+    LoadResult result = fetchCatalogue(
+        "slow and flaky",
+        new StandInServer.Config(Duration.ofMillis(20), Duration.ofMillis(30), 0.05, 0,
+                                 Optional.of("_v2_hymn_h_1336")),
+        8);
+    // Nearly every failure should have been retried away.
+    assertThat(result.hymnalNetJsons.size()).isGreaterThanOrEqualTo(CATALOGUE.size() * 99 / 100);
+    assertThat(result.report.getRetries()).isPositive();
+  }
+
+  @Test
+  public void hymnalNet__throttlingServer() throws IOException {
+    LoadResult result = fetchCatalogue(
+        "throttling",
+        new StandInServer.Config(Duration.ofMillis(5), Duration.ZERO, 0, 100, Optional.of("_v2_hymn_h_1336")),
+        8);
+    assertThat(result.hymnalNetJsons.size()).isGreaterThanOrEqualTo(CATALOGUE.size() * 99 / 100);
+    assertThat(result.report.getThrottledResponses()).isPositive();
+  }
+
+  @Test
+  public void songbase__slowFlakyServer() throws IOException, InterruptedException {
+    int attempts = 50;
+    int failures = 0;
+    try (StandInServer server = StandInServer.start(
+        new StandInServer.Config(Duration.ofMillis(20), Duration.ofMillis(30), 0.05, 0, Optional.empty()))) {
+      com.hymnsmobile.pipeline.songbase.Fetcher fetcher =
+          new com.hymnsmobile.pipeline.songbase.Fetcher(HttpClient.newHttpClient(), server.getSongbaseDbDumpUri());
+      long start = System.nanoTime();
+      for (int i = 0; i < attempts; i++) {
+        try {
+          assertThat(fetcher.fetch()).isNotEmpty();
+        } catch (IllegalStateException e) {
+          failures++;
+        }
+      }
+      Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+      LOGGER.info(String.format(
+          "[songbase] %d fetches in %s, %d failed (no retries), p50 %s, p99 %s, %d bytes sent",
+          attempts, elapsed, failures, percentile(server.getLatencies(), 50), percentile(server.getLatencies(), 99),
+          server.getBytesSent()));
+    }
+    assertThat(failures).isLessThan(attempts);
+  }
+
+  private static class LoadResult {
+    final ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons;
+    final Set<PipelineError> errors;
+    final FetchReport report;
+
+    LoadResult(ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons, Set<PipelineError> errors,
+        FetchReport report) {
+      this.hymnalNetJsons = hymnalNetJsons;
+      this.errors = errors;
+      this.report = report;
+    }
+  }
+
+  private LoadResult fetchCatalogue(String scenario, StandInServer.Config serverConfig, int concurrency)
+      throws IOException {
+    try (StandInServer server = StandInServer.start(serverConfig)) {
+      ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons = new ConcurrentHashMap<>();
+      Set<PipelineError> errors = ConcurrentHashMap.newKeySet();
+      // Nothing should be read from or written to storage.
+      FileReadWriter fileReadWriter = mock(FileReadWriter.class);
+      FetchPolicy fetchPolicy = new FetchPolicy(HttpClient.newHttpClient(), FETCH_POLICY_CONFIG);
+      FetchMetricsCollector metrics = new FetchMetricsCollector();
+      Fetcher fetcher = new Fetcher(
+          server.getHymnalNetEndpoint(), fetchPolicy, new ResponseCache(fileReadWriter),
+          new NotFoundCache(fileReadWriter, ZonedDateTime.now()), new FetchCheckpoint(fileReadWriter, ZonedDateTime.now()),
+          metrics, new ProbePlanner(ImmutableList.of(), 0),
+          concurrency, false, CATALOGUE, hymnalNetJsons, errors);
+
+      long start = System.nanoTime();
+      fetcher.fetchHymns();
+      Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+      FetchReport report = fetchPolicy.getReport();
+      List<Duration> latencies = server.getLatencies();
+      LOGGER.info(String.format(
+          "[%s, concurrency %d] %d songs in %s (%.1f requests/s), latency p50 %s p95 %s p99 %s max %s, "
+              + "status codes %s, %d errors, %d bytes sent%n%s%n%s",
+          scenario, concurrency, hymnalNetJsons.size(), elapsed, latencies.size() * 1e9 / elapsed.toNanos(),
+          percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99), percentile(latencies, 100),
+          server.getStatusCodes(), errors.size(), server.getBytesSent(), report, metrics.toProto()));
+      return new LoadResult(hymnalNetJsons, errors, report);
+    }
+  }
+
+  private static Duration percentile(List<Duration> latencies, int percentile) {
+    if (latencies.isEmpty()) {
+      return Duration.ZERO;
+    }
+    List<Duration> sorted = latencies.stream().sorted().toList();
+    int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+    return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+  }
+}
@@ -0,0 +1,43 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.hymnsmobile.pipeline.hymnalnet.models.FetchMetrics;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetKey;
+import com.hymnsmobile.pipeline.hymnalnet.models.ThroughputSample;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FetchMetricsCollectorTest {
+
+  @Test
+  public void toProto__aggregatesEverythingRecorded() {
+    FetchMetricsCollector target = new FetchMetricsCollector();
+    target.start();
+    target.recordResult(new FetchResult.FetchNotFound());
+    target.recordResult(new FetchResult.FetchNotFound());
+    target.recordResult(new FetchResult.AlreadyStored());
+    target.recordRequest(HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber("1").build(), Duration.ofMillis(5));
+    target.recordRequest(HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber("2").build(), Duration.ofMillis(7));
+    target.recordRequest(HymnalNetKey.newBuilder().setHymnType("ns").setHymnNumber("1").build(), Duration.ofMillis(3));
+    target.recordBytesDownloaded(100);
+    target.recordBytesDownloaded(50);
+    target.recordParse(Duration.ofMillis(2));
+    target.recordRelatedSongs(4);
+
+    FetchMetrics metrics = target.toProto();
+    assertThat(metrics.getResultsMap()).containsOnly(
+        Map.entry("FetchNotFound", 2L), Map.entry("AlreadyStored", 1L));
+    assertThat(metrics.getLatencyByHymnTypeMap()).containsOnlyKeys("h", "ns");
+    assertThat(metrics.getLatencyByHymnTypeMap().get("h").getCount()).isEqualTo(2);
+    assertThat(metrics.getLatencyByHymnTypeMap().get("h").getMaxMicros()).isEqualTo(7_000);
+    assertThat(metrics.getBytesDownloaded()).isEqualTo(150);
+    assertThat(metrics.getResponsesParsed()).isEqualTo(1);
+    assertThat(metrics.getParseMicros()).isEqualTo(2_000);
+    assertThat(metrics.getRelatedSongs()).isEqualTo(4);
+    assertThat(metrics.getRequestsPerSecondList().stream().mapToLong(ThroughputSample::getRequests).sum())
+        .isEqualTo(3);
+  }
+}
@@ -0,0 +1,139 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.hymnsmobile.pipeline.hymnalnet.models.FetchReport;
+import com.hymnsmobile.pipeline.testutil.MockHttpResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FetchPolicyTest {
+
+  private static final HttpRequest REQUEST =
+      HttpRequest.newBuilder().uri(URI.create("https://hymnalnetapi.herokuapp.com/v2/hymn/h/1?check_exists=true"))
+          .build();
+
+  @Mock private HttpClient client;
+
+  private FetchPolicy target;
+
+  @BeforeEach
+  public void setUp() {
+    target = new FetchPolicy(
+        client,
+        new FetchPolicyConfig(10, 1, 20, Duration.ofMinutes(1), 3, Duration.ZERO, Duration.ZERO, 2, Duration.ZERO));
+  }
+
+  @Test
+  public void send__throttledThenSuccess__retries_lowersRate() throws IOException, InterruptedException {
+    doReturn(new MockHttpResponse(503, "slow down"), new MockHttpResponse(200, "body"))
+        .when(client).send(REQUEST, HttpResponse.BodyHandlers.ofString());
+
+    HttpResponse<String> response = target.send(REQUEST, HttpResponse.BodyHandlers.ofString());
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(response.body()).isEqualTo("body");
+    FetchReport report = target.getReport();
+    assertThat(report.getRequests()).isEqualTo(2);
+    assertThat(report.getRetries()).isEqualTo(1);
+    assertThat(report.getThrottledResponses()).isEqualTo(1);
+    assertThat(report.getFinalRequestsPerSecond()).isLessThan(10);
+  }
+
+  @Test
+  public void send__throttledWhileOthersInFlight__lowersRateOnce() throws Exception {
+    target = new FetchPolicy(
+        client,
+        new FetchPolicyConfig(10, 1, 20, Duration.ofMinutes(1), 1, Duration.ZERO, Duration.ZERO, 10, Duration.ZERO));
+    // Both requests are in flight before either gets its response.
+    CyclicBarrier inFlight = new CyclicBarrier(2);
+    doAnswer(invocation -> {
+      inFlight.await();
+      return new MockHttpResponse(503, "slow down");
+    }).when(client).send(REQUEST, HttpResponse.BodyHandlers.ofString());
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<HttpResponse<String>> first = executor.submit(
+          () -> target.send(REQUEST, HttpResponse.BodyHandlers.ofString()));
+      Future<HttpResponse<String>> second = executor.submit(
+          () -> target.send(REQUEST, HttpResponse.BodyHandlers.ofString()));
+      assertThat(first.get().statusCode()).isEqualTo(503);
+      assertThat(second.get().statusCode()).isEqualTo(503);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    FetchReport report = target.getReport();
+    assertThat(report.getThrottledResponses()).isEqualTo(2);
+    assertThat(report.getFinalRequestsPerSecond()).isEqualTo(5);
+  }
+
+  @Test
+  public void send__throttledAgainAfterRateLowered__lowersRateAgain() throws IOException, InterruptedException {
+    target = new FetchPolicy(
+        client,
+        new FetchPolicyConfig(10, 1, 20, Duration.ofMinutes(1), 1, Duration.ZERO, Duration.ZERO, 10, Duration.ZERO));
+    doReturn(new MockHttpResponse(503, "slow down"))
+        .when(client).send(REQUEST, HttpResponse.BodyHandlers.ofString());
+
+    target.send(REQUEST, HttpResponse.BodyHandlers.ofString());
+    target.send(REQUEST, HttpResponse.BodyHandlers.ofString());
+
+    assertThat(target.getReport().getFinalRequestsPerSecond()).isEqualTo(2.5);
+  }
+
+  @Test
+  public void send__alwaysFails__returnsLastResponse_tripsCircuitBreaker() throws IOException, InterruptedException {
+    doReturn(new MockHttpResponse(500, "error"))
+        .when(client).send(REQUEST, HttpResponse.BodyHandlers.ofString());
+
+    HttpResponse<String> response = target.send(REQUEST, HttpResponse.BodyHandlers.ofString());
+
+    assertThat(response.statusCode()).isEqualTo(500);
+    verify(client, times(3)).send(REQUEST, HttpResponse.BodyHandlers.ofString());
+    FetchReport report = target.getReport();
+    assertThat(report.getRetries()).isEqualTo(2);
+    assertThat(report.getCircuitBreakerTrips()).isEqualTo(2);
+  }
+
+  @Test
+  public void send__notRetryable__returnsImmediately() throws IOException, InterruptedException {
+    doReturn(new MockHttpResponse(400, "not found"))
+        .when(client).send(REQUEST, HttpResponse.BodyHandlers.ofString());
+
+    HttpResponse<String> response = target.send(REQUEST, HttpResponse.BodyHandlers.ofString());
+
+    assertThat(response.statusCode()).isEqualTo(400);
+    verify(client, times(1)).send(REQUEST, HttpResponse.BodyHandlers.ofString());
+    assertThat(target.getReport().getRetries()).isEqualTo(0);
+  }
+
+  @Test
+  public void send__ioException__rethrownAfterLastAttempt() throws IOException, InterruptedException {
+    doThrow(new IOException("connection reset"))
+        .when(client).send(REQUEST, HttpResponse.BodyHandlers.ofString());
+
+    assertThatThrownBy(() -> target.send(REQUEST, HttpResponse.BodyHandlers.ofString()))
+        .isInstanceOf(IOException.class)
+        .hasMessage("connection reset");
+    verify(client, times(3)).send(REQUEST, HttpResponse.BodyHandlers.ofString());
+  }
+}
@@ -1,8 +1,11 @@
 package com.hymnsmobile.pipeline.hymnalnet;
 
 import com.google.common.collect.ImmutableList;
+import com.hymnsmobile.pipeline.FileReadWriter;
+import com.hymnsmobile.pipeline.hymnalnet.dagger.HymnalNetPipelineTestModule;
 import com.hymnsmobile.pipeline.hymnalnet.models.*;
 import com.hymnsmobile.pipeline.models.PipelineError;
+import com.hymnsmobile.pipeline.testutil.MockStreamingHttpResponse;
 import com.hymnsmobile.pipeline.testutil.TestUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,13 +15,20 @@ import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.ZonedDateTime;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -26,31 +36,37 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class FetcherTest {
 
-  @Mock private HttpClient client;
-  @Mock private HttpResponse<String> errorResponse;
-  @Mock private HttpResponse<String> missingResponse;
-  @Mock private HttpResponse<String> h1;
-  @Mock private HttpResponse<String> ht1;
-  @Mock private HttpResponse<String> h21;
+  private static final URI ENDPOINT = URI.create("https://hymnalnetapi.herokuapp.com");
+  private static final ProbePlanner NO_PROBES = new ProbePlanner(ImmutableList.of(), 0);
 
+  @Mock private HttpClient client;
+  @Mock private ResponseCache responseCache;
+  @Mock private NotFoundCache notFoundCache;
+  @Mock private FileReadWriter fileReadWriter;
+  private HttpResponse<InputStream> notModifiedResponse;
+  private HttpResponse<InputStream> errorResponse;
+  private HttpResponse<InputStream> missingResponse;
+  private HttpResponse<InputStream> h1;
+  private HttpResponse<InputStream> ht1;
+  private HttpResponse<InputStream> h21;
+
+  private FetchPolicy fetchPolicy;
+  private FetchCheckpoint checkpoint;
   private Fetcher target;
 
   @BeforeEach
   public void setUp() throws IOException {
-    lenient().doReturn(500).when(errorResponse).statusCode();
-    lenient().doReturn("error response found!").when(errorResponse).body();
-
-    lenient().doReturn(400).when(missingResponse).statusCode();
-    lenient().doReturn("not found!").when(missingResponse).body();
-
-    lenient().doReturn(200).when(h1).statusCode();
-    lenient().doReturn(TestUtils.readText("src/test/resources/hymnalnet/input/_v2_hymn_h_1")).when(h1).body();
-
-    lenient().doReturn(200).when(ht1).statusCode();
-    lenient().doReturn(TestUtils.readText("src/test/resources/hymnalnet/input/_v2_hymn_ht_1")).when(ht1).body();
-
-    lenient().doReturn(200).when(h21).statusCode();
-    lenient().doReturn(TestUtils.readText("src/test/resources/hymnalnet/input/_v2_hymn_h_21")).when(h21).body();
+    fetchPolicy = new FetchPolicy(client, HymnalNetPipelineTestModule.fetchPolicyConfig());
+    checkpoint = new FetchCheckpoint(fileReadWriter, ZonedDateTime.now());
+
+    errorResponse = new MockStreamingHttpResponse(500, "error response found!");
+    missingResponse = new MockStreamingHttpResponse(400, "not found!");
+    notModifiedResponse = new MockStreamingHttpResponse(304, "");
+    h1 = new MockStreamingHttpResponse(200, TestUtils.readText("src/test/resources/hymnalnet/input/_v2_hymn_h_1"));
+    // Hymnal.net may or may not honor "Accept-Encoding: gzip", so both need to work.
+    ht1 = MockStreamingHttpResponse.gzipped(
+        200, TestUtils.readText("src/test/resources/hymnalnet/input/_v2_hymn_ht_1"));
+    h21 = new MockStreamingHttpResponse(200, TestUtils.readText("src/test/resources/hymnalnet/input/_v2_hymn_h_21"));
   }
 
   @Test
@@ -74,43 +90,156 @@ class FetcherTest {
     doReturn(h21)
         .when(client)
         .send(
-            HttpRequest.newBuilder().uri(URI.create("https://hymnalnetapi.herokuapp.com/v2/hymn/h/21?check_exists=true")).build(),
-            HttpResponse.BodyHandlers.ofString());
+            request("h/21").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
 
     doReturn(missingResponse)
         .when(client)
         .send(
-            HttpRequest.newBuilder().uri(URI.create("https://hymnalnetapi.herokuapp.com/v2/hymn/pt/21?check_exists=true")).build(),
-            HttpResponse.BodyHandlers.ofString());
+            request("pt/21").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
 
-    Set<HymnalNetJson> alreadyFetched = Set.of(h1);
 
     Set<PipelineError> errors = new HashSet<>();
 
-    Set<HymnalNetJson> hymnalNetJsons = new HashSet<>(alreadyFetched);
-    target = new Fetcher(client, songsToFetch, hymnalNetJsons, errors);
+    ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons = new ConcurrentHashMap<>();
+    hymnalNetJsons.put(h1.getKey(), h1);
+    target = newFetcher(1, false, songsToFetch, hymnalNetJsons, errors);
     target.fetchHymns();
 
     assertThat(hymnalNetJsons).hasSize(2);
     assertThat(errors).isEmpty();
   }
 
+  @Test
+  public void fetchHymns__refreshStored_notModified__keepsStoredSong() throws IOException, InterruptedException {
+    HymnalNetKey key = HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber("20").build();
+    HymnalNetJson stored = HymnalNetJson.newBuilder().setKey(key).setTitle("stored title").build();
+
+    doReturn(Optional.of(CachedResponse.newBuilder().setKey(key).setEtag("\"etag\"").setBodySha256("sha").build()))
+        .when(responseCache).get(key);
+    doReturn(notModifiedResponse)
+        .when(client)
+        .send(
+            request("h/20").header("If-None-Match", "\"etag\"").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
+
+    ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons = new ConcurrentHashMap<>();
+    hymnalNetJsons.put(key, stored);
+    Set<PipelineError> errors = new HashSet<>();
+
+    target = newFetcher(1, true, ImmutableList.of(key), hymnalNetJsons, errors);
+    target.fetchHymns();
+
+    assertThat(hymnalNetJsons).containsExactly(Map.entry(key, stored));
+    assertThat(errors).isEmpty();
+    verify(responseCache, never()).readBody(any());
+    verify(responseCache, never()).put(any(), any(), any());
+  }
+
+  @Test
+  public void fetchHymns__notModified_notStored__parsesCachedBody() throws IOException, InterruptedException {
+    HymnalNetKey key = HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber("21").build();
+    CachedResponse cachedResponse =
+        CachedResponse.newBuilder().setKey(key).setLastModified("Tue, 01 Jan 2030 00:00:00 GMT")
+            .setBodySha256("sha").build();
+
+    lenient().doReturn(Optional.of(cachedResponse)).when(responseCache).get(key);
+    doReturn(Optional.of(TestUtils.readText("src/test/resources/hymnalnet/input/_v2_hymn_h_21")))
+        .when(responseCache).readBody(cachedResponse);
+    doReturn(notModifiedResponse)
+        .when(client)
+        .send(
+            request("h/21").header("If-Modified-Since", "Tue, 01 Jan 2030 00:00:00 GMT").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
+    doReturn(missingResponse)
+        .when(client)
+        .send(
+            request("h/20").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
+
+    ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons = new ConcurrentHashMap<>();
+    Set<PipelineError> errors = new HashSet<>();
+
+    target = newFetcher(1, false, ImmutableList.of(key), hymnalNetJsons, errors);
+    target.fetchHymns();
+
+    assertThat(hymnalNetJsons).containsOnlyKeys(key);
+    assertThat(hymnalNetJsons.get(key).getTitle()).isEqualTo("Hymn 20");
+    assertThat(errors).isEmpty();
+  }
+
+  @Test
+  public void fetchHymns__knownMissing__notRefetched() {
+    HymnalNetKey key = HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber("1").build();
+    doReturn(true).when(notFoundCache).isKnownMissing(key);
+
+    ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons = new ConcurrentHashMap<>();
+    Set<PipelineError> errors = new HashSet<>();
+
+    target = newFetcher(1, false, ImmutableList.of(key), hymnalNetJsons, errors);
+    target.fetchHymns();
+
+    verifyNoInteractions(client);
+    assertThat(hymnalNetJsons).isEmpty();
+    assertThat(errors).containsExactly(
+        PipelineError.newBuilder()
+            .setSource(PipelineError.Source.HYMNAL_NET)
+            .setSeverity(PipelineError.Severity.ERROR)
+            .setErrorType(PipelineError.ErrorType.FETCH_ERROR)
+            .addMessages("h/1")
+            .addMessages("404")
+            .build());
+  }
+
+  @Test
+  public void fetchHymns__resumedFromCheckpoint__notRefetched() {
+    HymnalNetKey fetched = HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber("1").build();
+    HymnalNetKey notFound = HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber("2").build();
+    HymnalNetJson fetchedJson = HymnalNetJson.newBuilder().setKey(fetched).setTitle("checkpointed").build();
+
+    doReturn(List.of("storage/hymnalnet/checkpoint/segment.binaryproto"))
+        .when(fileReadWriter).listFiles("storage/hymnalnet/checkpoint");
+    doReturn(List.of(CheckpointRecord.newBuilder().setFetched(fetchedJson).build(),
+                     CheckpointRecord.newBuilder().setNotFound(notFound).build()))
+        .when(fileReadWriter).readDelimitedProtos("storage/hymnalnet/checkpoint/segment.binaryproto",
+                                                  CheckpointRecord.parser());
+    checkpoint.load();
+
+    ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons = new ConcurrentHashMap<>();
+    Set<PipelineError> errors = new HashSet<>();
+
+    target = newFetcher(1, false, ImmutableList.of(fetched, notFound), hymnalNetJsons, errors);
+    target.fetchHymns();
+
+    verifyNoInteractions(client);
+    assertThat(hymnalNetJsons).containsExactly(Map.entry(fetched, fetchedJson));
+    assertThat(errors).containsExactly(
+        PipelineError.newBuilder()
+            .setSource(PipelineError.Source.HYMNAL_NET)
+            .setSeverity(PipelineError.Severity.ERROR)
+            .setErrorType(PipelineError.ErrorType.FETCH_ERROR)
+            .addMessages("h/2")
+            .addMessages("404")
+            .build());
+  }
+
   @Test
   public void fetchHymns__fetchErrorCode__addsErrorToList() throws IOException, InterruptedException {
     ImmutableList<HymnalNetKey> songsToFetch =
         ImmutableList.of(HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber("1").build());
 
-    lenient().doReturn(null).when(errorResponse).body();
+    errorResponse = new MockStreamingHttpResponse(500, "");
     doReturn(errorResponse)
         .when(client)
         .send(
-            HttpRequest.newBuilder().uri(URI.create("https://hymnalnetapi.herokuapp.com/v2/hymn/h/1?check_exists=true")).build(),
-            HttpResponse.BodyHandlers.ofString());
+            request("h/1").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
 
-    Set<HymnalNetJson> hymnalNetJsons = new HashSet<>();
+    ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons = new ConcurrentHashMap<>();
     Set<PipelineError> errors = new HashSet<>();
 
-    target = new Fetcher(client, songsToFetch, hymnalNetJsons, errors);
+    target = newFetcher(1, false, songsToFetch, hymnalNetJsons, errors);
     target.fetchHymns();
 
     assertThat(hymnalNetJsons).isEmpty();
@@ -132,13 +261,13 @@ class FetcherTest {
     doReturn(errorResponse)
         .when(client)
         .send(
-            HttpRequest.newBuilder().uri(URI.create("https://hymnalnetapi.herokuapp.com/v2/hymn/nt/1?check_exists=true")).build(),
-            HttpResponse.BodyHandlers.ofString());
+            request("nt/1").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
 
-    Set<HymnalNetJson> hymnalNetJsons = new HashSet<>();
+    ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons = new ConcurrentHashMap<>();
     Set<PipelineError> errors = new HashSet<>();
 
-    target = new Fetcher(client, songsToFetch, hymnalNetJsons, errors);
+    target = newFetcher(1, false, songsToFetch, hymnalNetJsons, errors);
     target.fetchHymns();
 
     assertThat(hymnalNetJsons).isEmpty();
@@ -159,17 +288,17 @@ class FetcherTest {
     ImmutableList<HymnalNetKey> songsToFetch =
         ImmutableList.of(HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber("1").build());
 
-    lenient().doReturn(null).when(missingResponse).body();
+    missingResponse = new MockStreamingHttpResponse(400, "");
     doReturn(missingResponse)
         .when(client)
         .send(
-            HttpRequest.newBuilder().uri(URI.create("https://hymnalnetapi.herokuapp.com/v2/hymn/h/1?check_exists=true")).build(),
-            HttpResponse.BodyHandlers.ofString());
+            request("h/1").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
 
-    Set<HymnalNetJson> hymnalNetJsons = new HashSet<>();
+    ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons = new ConcurrentHashMap<>();
     Set<PipelineError> errors = new HashSet<>();
 
-    target = new Fetcher(client, songsToFetch, hymnalNetJsons, errors);
+    target = newFetcher(1, false, songsToFetch, hymnalNetJsons, errors);
     target.fetchHymns();
 
     assertThat(hymnalNetJsons).isEmpty();
@@ -191,13 +320,13 @@ class FetcherTest {
     doReturn(missingResponse)
         .when(client)
         .send(
-            HttpRequest.newBuilder().uri(URI.create("https://hymnalnetapi.herokuapp.com/v2/hymn/nt/1?check_exists=true")).build(),
-            HttpResponse.BodyHandlers.ofString());
+            request("nt/1").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
 
-    Set<HymnalNetJson> hymnalNetJsons = new HashSet<>();
+    ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons = new ConcurrentHashMap<>();
     Set<PipelineError> errors = new HashSet<>();
 
-    target = new Fetcher(client, songsToFetch, hymnalNetJsons, errors);
+    target = newFetcher(1, false, songsToFetch, hymnalNetJsons, errors);
     target.fetchHymns();
 
     assertThat(hymnalNetJsons).isEmpty();
@@ -209,16 +338,16 @@ class FetcherTest {
     ImmutableList<HymnalNetKey> songsToFetch =
         ImmutableList.of(HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber("1").build());
 
-    Set<HymnalNetJson> hymnalNetJsons = new HashSet<>();
+    ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons = new ConcurrentHashMap<>();
     doThrow(new IOException())
         .when(client)
         .send(
-            HttpRequest.newBuilder().uri(URI.create("https://hymnalnetapi.herokuapp.com/v2/hymn/h/1?check_exists=true")).build(),
-            HttpResponse.BodyHandlers.ofString());
+            request("h/1").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
 
     Set<PipelineError> errors = new HashSet<>();
 
-    target = new Fetcher(client, songsToFetch, hymnalNetJsons, errors);
+    target = newFetcher(1, false, songsToFetch, hymnalNetJsons, errors);
     target.fetchHymns();
 
     assertThat(hymnalNetJsons).isEmpty();
@@ -236,17 +365,17 @@ class FetcherTest {
     ImmutableList<HymnalNetKey> songsToFetch =
         ImmutableList.of(HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber("1").build());
 
-    Set<HymnalNetJson> hymnalNetJsons = new HashSet<>();
+    ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons = new ConcurrentHashMap<>();
     doAnswer(invocationOnMock -> {
       throw new URISyntaxException("dummy", "dummy");
     }).when(client)
         .send(
-            HttpRequest.newBuilder().uri(URI.create("https://hymnalnetapi.herokuapp.com/v2/hymn/h/1?check_exists=true")).build(),
-            HttpResponse.BodyHandlers.ofString());
+            request("h/1").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
 
     Set<PipelineError> errors = new HashSet<>();
 
-    target = new Fetcher(client, songsToFetch, hymnalNetJsons, errors);
+    target = newFetcher(1, false, songsToFetch, hymnalNetJsons, errors);
     target.fetchHymns();
 
     assertThat(hymnalNetJsons).isEmpty();
@@ -265,16 +394,16 @@ class FetcherTest {
     ImmutableList<HymnalNetKey> songsToFetch =
         ImmutableList.of(HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber("1").build());
 
-    Set<HymnalNetJson> hymnalNetJsons = new HashSet<>();
+    ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons = new ConcurrentHashMap<>();
     doThrow(new InterruptedException())
         .when(client)
         .send(
-            HttpRequest.newBuilder().uri(URI.create("https://hymnalnetapi.herokuapp.com/v2/hymn/h/1?check_exists=true")).build(),
-            HttpResponse.BodyHandlers.ofString());
+            request("h/1").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
 
     Set<PipelineError> errors = new HashSet<>();
 
-    target = new Fetcher(client, songsToFetch, hymnalNetJsons, errors);
+    target = newFetcher(1, false, songsToFetch, hymnalNetJsons, errors);
     target.fetchHymns();
 
     assertThat(hymnalNetJsons).isEmpty();
@@ -299,38 +428,102 @@ class FetcherTest {
     ImmutableList<HymnalNetKey> songsToFetch =
         ImmutableList.of(HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber("1").build());
 
-    Set<HymnalNetJson> hymnalNetJsons = new HashSet<>();
-    doReturn(missingResponse).when(client).send(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofString()));
+    ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons = new ConcurrentHashMap<>();
+    doReturn(missingResponse).when(client).send(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream()));
     doReturn(errorResponse)
         .when(client)
         .send(
-            HttpRequest.newBuilder().uri(URI.create("https://hymnalnetapi.herokuapp.com/v2/hymn/ch/1?check_exists=true")).build(),
-            HttpResponse.BodyHandlers.ofString());
+            request("ch/1").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
     doReturn(h1)
         .when(client)
         .send(
-            HttpRequest.newBuilder().uri(URI.create("https://hymnalnetapi.herokuapp.com/v2/hymn/h/1?check_exists=true")).build(),
-            HttpResponse.BodyHandlers.ofString());
+            request("h/1").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
     doReturn(ht1)
         .when(client)
         .send(
-            HttpRequest.newBuilder().uri(URI.create("https://hymnalnetapi.herokuapp.com/v2/hymn/ht/1?check_exists=true")).build(),
-            HttpResponse.BodyHandlers.ofString());
+            request("ht/1").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
     doThrow(new IOException())
         .when(client)
         .send(
-            HttpRequest.newBuilder().uri(URI.create("https://hymnalnetapi.herokuapp.com/v2/hymn/cb/1?check_exists=true")).build(),
-            HttpResponse.BodyHandlers.ofString());
+            request("cb/1").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
 
     Set<PipelineError> errors = new HashSet<>();
 
-    target = new Fetcher(client, songsToFetch, hymnalNetJsons, errors);
+    target = newFetcher(1, false, songsToFetch, hymnalNetJsons, errors);
     target.fetchHymns();
 
     HymnalNet.Builder expected = HymnalNet.newBuilder();
     TestUtils.readTextProto("src/test/resources/hymnalnet/output/fetcher_test_fetchSuccessful.textproto", expected);
 
-    assertThat(hymnalNetJsons).containsExactlyInAnyOrderElementsOf(expected.getHymnanlNetJsonList());
+    assertThat(hymnalNetJsons.values()).containsExactlyInAnyOrderElementsOf(expected.getHymnanlNetJsonList());
     assertThat(errors).containsExactlyInAnyOrderElementsOf(expected.getErrorsList());
   }
+
+  /**
+   * Same as {@link #fetchHymns__fetchSuccessful__fetchesRelatedSongs_onlyAddErrorsForFetchExceptions}, but with
+   * multiple requests in flight at once. Should result in exactly the same songs and errors.
+   */
+  @Test
+  public void fetchHymns__concurrentFetch__sameResultsAsSequentialFetch() throws IOException, InterruptedException {
+    ImmutableList<HymnalNetKey> songsToFetch =
+        ImmutableList.of(
+            HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber("1").build(),
+            HymnalNetKey.newBuilder().setHymnType("ht").setHymnNumber("1").build());
+
+    doReturn(missingResponse).when(client).send(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream()));
+    doReturn(errorResponse)
+        .when(client)
+        .send(
+            request("ch/1").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
+    doReturn(h1)
+        .when(client)
+        .send(
+            request("h/1").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
+    doReturn(ht1)
+        .when(client)
+        .send(
+            request("ht/1").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
+    doThrow(new IOException())
+        .when(client)
+        .send(
+            request("cb/1").build(),
+            HttpResponse.BodyHandlers.ofInputStream());
+
+    ConcurrentMap<HymnalNetKey, HymnalNetJson> sequentialJsons = new ConcurrentHashMap<>();
+    Set<PipelineError> sequentialErrors = ConcurrentHashMap.newKeySet();
+    newFetcher(1, false, songsToFetch, sequentialJsons, sequentialErrors).fetchHymns();
+
+    ConcurrentMap<HymnalNetKey, HymnalNetJson> concurrentJsons = new ConcurrentHashMap<>();
+    Set<PipelineError> concurrentErrors = ConcurrentHashMap.newKeySet();
+    newFetcher(4, false, songsToFetch, concurrentJsons, concurrentErrors).fetchHymns();
+
+    HymnalNet.Builder expected = HymnalNet.newBuilder();
+    TestUtils.readTextProto("src/test/resources/hymnalnet/output/fetcher_test_fetchSuccessful.textproto", expected);
+
+    assertThat(sequentialJsons.values()).containsExactlyInAnyOrderElementsOf(expected.getHymnanlNetJsonList());
+    assertThat(concurrentJsons).containsExactlyInAnyOrderEntriesOf(sequentialJsons);
+    assertThat(concurrentErrors).containsExactlyInAnyOrderElementsOf(sequentialErrors);
+  }
+
+  /**
+   * Request that the fetcher is expected to make for {@code path} (e.g. "h/1").
+   */
+  private static HttpRequest.Builder request(String path) {
+    return HttpRequest.newBuilder()
+        .uri(URI.create("https://hymnalnetapi.herokuapp.com/v2/hymn/" + path + "?check_exists=true"))
+        .header("Accept-Encoding", "gzip");
+  }
+
+  private Fetcher newFetcher(int concurrency, boolean refreshStored, ImmutableList<HymnalNetKey> songsToFetch,
+      ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons, Set<PipelineError> errors) {
+    return new Fetcher(ENDPOINT, fetchPolicy, responseCache, notFoundCache, checkpoint, new FetchMetricsCollector(),
+                       NO_PROBES, concurrency, refreshStored, songsToFetch, hymnalNetJsons, errors);
+  }
 }
@@ -10,7 +10,6 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,7 +32,7 @@ class HymnalNetPipelineTest {
 
   @Test
   @FetchHymns(keysToFetch = {"h/1336"})
-  public void fetchSingleSongFromNetwork__shouldFetchSong() throws IOException, NoSuchAlgorithmException {
+  public void fetchSingleSongFromNetwork__shouldFetchSong() throws IOException {
     hymnalNetPipeline.run();
 
     assertThat(hymnalNetPipeline.getHymnalNetJsons()).hasSize(1);
@@ -126,7 +125,7 @@ class HymnalNetPipelineTest {
   @Test
   @FetchHymns(keysToFetch = {"c/60"}) // should be read from stored file via ReadFromStorageExtension
   @ReadFromStorage
-  public void fetchSingleSongFromStorage__shouldFetchSong() throws IOException, NoSuchAlgorithmException {
+  public void fetchSingleSongFromStorage__shouldFetchSong() throws IOException {
     hymnalNetPipeline.run();
 
     assertThat(hymnalNetPipeline.getHymnalNetJsons()).hasSize(1);
@@ -259,7 +258,7 @@ class HymnalNetPipelineTest {
    */
   @Test
   @FetchHymns(keysToFetch = {"ns/510c"})
-  public void songsWithNewSongChinese__shouldConvertToChineseSongs() throws IOException, NoSuchAlgorithmException {
+  public void songsWithNewSongChinese__shouldConvertToChineseSongs() throws IOException {
     hymnalNetPipeline.run();
 
     assertThat(hymnalNetPipeline.getHymnalNetJsons().stream()
@@ -279,7 +278,7 @@ class HymnalNetPipelineTest {
       "c/60"// should be read from stored file
   })
   @ReadFromStorage
-  public void runEndToEnd() throws IOException, NoSuchAlgorithmException {
+  public void runEndToEnd() throws IOException {
     hymnalNetPipeline.run();
 
     HymnalNet expected =
@@ -298,4 +297,23 @@ class HymnalNetPipelineTest {
     assertThat(fileName.getValue()).isEqualTo("storage/hymnalnet/1993-07-17_10-10-00_PDT");
     assertThat(proto.getValue()).ignoringRepeatedFieldOrder().isEqualTo(expected);
   }
+
+  /**
+   * Same as {@link #runEndToEnd}, but with several songs fetched in parallel. Should result in exactly the same songs
+   * and errors, and the crawl should finish once the last related song has been visited.
+   */
+  @Test
+  @FetchHymns(keysToFetch = {"h/1", "ns/510", "c/60"}, concurrency = 4)
+  @ReadFromStorage
+  public void runEndToEnd__concurrentFetch__sameResultAsSequentialFetch() throws IOException {
+    hymnalNetPipeline.run();
+
+    HymnalNet expected =
+        TestUtils.readTextProto(
+            "src/test/resources/hymnalnet/output/hymnal_net_pipeline_test_run.textproto",
+            HymnalNet.newBuilder());
+
+    assertThat(hymnalNetPipeline.getHymnalNetJsons()).containsExactlyElementsIn(expected.getHymnanlNetJsonList());
+    assertThat(hymnalNetPipeline.getErrors()).containsExactlyElementsIn(expected.getErrorsList());
+  }
 }
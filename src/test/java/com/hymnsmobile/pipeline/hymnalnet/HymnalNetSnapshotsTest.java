@@ -0,0 +1,140 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.google.protobuf.ByteString;
+import com.hymnsmobile.pipeline.FileReadWriter;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNet;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetDelta;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetJson;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetKey;
+import com.hymnsmobile.pipeline.models.PipelineError;
+import com.hymnsmobile.pipeline.models.SnapshotEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class HymnalNetSnapshotsTest {
+
+  private static final HymnalNetJson H1 = song("h", "1", "Hymn 1");
+  private static final HymnalNetJson H2 = song("h", "2", "Hymn 2");
+  private static final HymnalNetJson H3 = song("h", "3", "Hymn 3");
+  private static final HymnalNetJson H4 = song("h", "4", "Hymn 4");
+
+  @Mock private FileReadWriter fileReadWriter;
+
+  private HymnalNetSnapshots target;
+
+  @BeforeEach
+  public void setUp() {
+    target = new HymnalNetSnapshots(fileReadWriter);
+  }
+
+  @Test
+  public void diff_applyDelta__reconstructsCurrentSnapshot() {
+    HymnalNet previous = snapshot(H1, H2, H3);
+    HymnalNet current = snapshot(song("h", "1", "Hymn 1 (updated)"), H3, H4).toBuilder()
+        .addErrors(PipelineError.newBuilder().addMessages("error"))
+        .build();
+
+    HymnalNetDelta delta = HymnalNetSnapshots.diff(previous, current);
+    assertThat(delta.getAddedList()).containsExactly(H4);
+    assertThat(delta.getReplacedList()).containsExactly(song("h", "1", "Hymn 1 (updated)"));
+    assertThat(delta.getRemovedList()).containsExactly(H2.getKey());
+    assertThat(delta.getDepth()).isEqualTo(1);
+
+    assertThat(HymnalNetSnapshots.applyDelta(previous, delta))
+        .isEqualTo(current.toBuilder().setDeltasSinceFullSnapshot(1).build());
+  }
+
+  @Test
+  public void write__fewChanges__writesDelta() throws IOException {
+    HymnalNet previous = snapshot(H1, H2, H3);
+    HymnalNet current = snapshot(H1, H2, H3, H4);
+
+    target.write("dir", Optional.of(previous), current);
+
+    verify(fileReadWriter).writeProto("dir", FileReadWriter.DELTA, HymnalNetSnapshots.diff(previous, current));
+  }
+
+  @Test
+  public void write__mostlyChanged__writesFullSnapshot() throws IOException {
+    HymnalNet current = snapshot(H2, H3, H4);
+
+    target.write("dir", Optional.of(snapshot(H1)), current);
+
+    verify(fileReadWriter).writeProto("dir", current);
+  }
+
+  @Test
+  public void write__tooManyDeltasInARow__compacts() throws IOException {
+    HymnalNet previous =
+        snapshot(H1, H2, H3).toBuilder().setDeltasSinceFullSnapshot(HymnalNetSnapshots.MAX_DELTAS).build();
+    HymnalNet current = snapshot(H1, H2, H3, H4);
+
+    target.write("dir", Optional.of(previous), current);
+
+    verify(fileReadWriter).writeProto("dir", current);
+  }
+
+  @Test
+  public void write__unchanged__writesNothing() throws IOException {
+    HymnalNet previous = snapshot(H1, H2).toBuilder().setDeltasSinceFullSnapshot(3).build();
+
+    assertThat(target.write("dir", Optional.of(previous), snapshot(H1, H2))).isFalse();
+
+    verifyNoInteractions(fileReadWriter);
+  }
+
+  @Test
+  public void write__noPreviousSnapshot__writesFullSnapshot() throws IOException {
+    HymnalNet current = snapshot(H1);
+    SnapshotEntry written = SnapshotEntry.newBuilder().setFileSha256(ByteString.copyFromUtf8("sha")).build();
+    doReturn(written).when(fileReadWriter).writeProto("dir", current);
+
+    target.write("dir", Optional.empty(), current);
+
+    verify(fileReadWriter).addToCatalog(eq("dir"), any(), eq(written), eq(1),
+        eq(HymnalNetSnapshots.FULL_SNAPSHOTS_TO_KEEP));
+  }
+
+  @Test
+  public void snapshotOf_write__sameSongsAndErrorsInAnotherOrder__secondWriteSkipped() throws IOException {
+    PipelineError error1 = PipelineError.newBuilder().addMessages("error 1").build();
+    PipelineError error2 = PipelineError.newBuilder().addMessages("error 2").build();
+    // The errors come from a hash set, so they can be in a different order on every run.
+    HymnalNet first = HymnalNetSnapshots.snapshotOf(List.of(H2, H1), List.of(error1, error2));
+    HymnalNet second = HymnalNetSnapshots.snapshotOf(List.of(H1, H2), List.of(error2, error1));
+
+    assertThat(target.write("first", Optional.empty(), first)).isTrue();
+    assertThat(target.write("second", Optional.of(first), second)).isFalse();
+
+    assertThat(second).isEqualTo(first);
+    verify(fileReadWriter).writeProto("first", first);
+    verify(fileReadWriter, never()).writeProto(eq("second"), any());
+  }
+
+  private static HymnalNet snapshot(HymnalNetJson... songs) {
+    return HymnalNet.newBuilder().addAllHymnanlNetJson(List.of(songs)).build();
+  }
+
+  private static HymnalNetJson song(String hymnType, String hymnNumber, String title) {
+    return HymnalNetJson.newBuilder()
+        .setKey(HymnalNetKey.newBuilder().setHymnType(hymnType).setHymnNumber(hymnNumber))
+        .setTitle(title)
+        .build();
+  }
+}
@@ -0,0 +1,52 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.hymnsmobile.pipeline.hymnalnet.models.LatencyBucket;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatencyHistogramTest {
+
+  @Test
+  public void bucketIndex__everyValueFallsWithinItsBucket() {
+    for (long micros : new long[]{0, 1, 15, 16, 17, 31, 32, 33, 1000, 123_456, 60_000_000, Long.MAX_VALUE}) {
+      int index = LatencyHistogram.bucketIndex(micros);
+      assertThat(LatencyHistogram.upperBound(index)).isGreaterThanOrEqualTo(micros);
+      if (index > 0) {
+        assertThat(LatencyHistogram.upperBound(index - 1)).isLessThan(micros);
+      }
+    }
+  }
+
+  @Test
+  public void bucketIndex__bucketsAreAccurateToASixteenth() {
+    int index = LatencyHistogram.bucketIndex(1_000_000);
+    long lowerBound = LatencyHistogram.upperBound(index - 1) + 1;
+    assertThat(LatencyHistogram.upperBound(index) - lowerBound).isLessThanOrEqualTo(1_000_000 / 16);
+  }
+
+  @Test
+  public void toProto__reportsPercentilesAndNonEmptyBuckets() {
+    LatencyHistogram target = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      target.record(Duration.ofMillis(i));
+    }
+
+    com.hymnsmobile.pipeline.hymnalnet.models.LatencyHistogram histogram = target.toProto();
+    assertThat(histogram.getCount()).isEqualTo(100);
+    assertThat(histogram.getMaxMicros()).isEqualTo(100_000);
+    assertThat(histogram.getP50Micros()).isBetween(50_000L, 50_000L * 17 / 16);
+    assertThat(histogram.getP99Micros()).isBetween(99_000L, 100_000L);
+    assertThat(histogram.getBucketsList().stream().mapToLong(LatencyBucket::getCount).sum()).isEqualTo(100);
+    assertThat(histogram.getBucketsList())
+        .isSortedAccordingTo((a, b) -> Long.compare(a.getUpperBoundMicros(), b.getUpperBoundMicros()));
+  }
+
+  @Test
+  public void toProto__empty__reportsZeros() {
+    assertThat(new LatencyHistogram().toProto())
+        .isEqualTo(com.hymnsmobile.pipeline.hymnalnet.models.LatencyHistogram.getDefaultInstance());
+  }
+}
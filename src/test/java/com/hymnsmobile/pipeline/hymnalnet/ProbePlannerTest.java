@@ -0,0 +1,66 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.google.common.collect.ImmutableList;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProbePlannerTest {
+
+  private ProbePlanner target;
+
+  @BeforeEach
+  public void setUp() {
+    target = new ProbePlanner(ImmutableList.of(HymnType.NEW_TUNE, HymnType.TAGALOG), 2);
+  }
+
+  @Test
+  public void plan__noKnownSongs__probesFromTheStart() {
+    assertThat(target.plan(ImmutableList.of(), key -> false))
+        .containsExactly(key("nt", "1"), key("nt", "2"), key("ht", "1"), key("ht", "2"));
+  }
+
+  @Test
+  public void plan__knownSongs__coversGaps_probesPastHighestKnown() {
+    assertThat(target.plan(ImmutableList.of(
+        key("nt", "3"), key("nt", "1"), key("nt", "12b"), key("h", "100"),
+        HymnalNetKey.newBuilder().setHymnType("ht").setHymnNumber("9").setQueryParams("?gb=1").build()), key -> false))
+        .containsExactly(
+            key("nt", "1"), key("nt", "2"), key("nt", "3"), key("nt", "4"), key("nt", "5"),
+            key("ht", "1"), key("ht", "2"));
+
+    assertThat(target.isProbe(key("nt", "3"))).isFalse();
+    assertThat(target.isProbe(key("nt", "4"))).isTrue();
+    assertThat(target.isProbe(key("ht", "1"))).isTrue();
+    assertThat(target.isProbe(key("h", "2000"))).isFalse();
+  }
+
+  @Test
+  public void plan__knownMissing__skipsGaps_stillProbesPastHighestKnown() {
+    Set<HymnalNetKey> knownMissing = Set.of(key("nt", "2"), key("nt", "4"));
+
+    assertThat(target.plan(ImmutableList.of(key("nt", "3")), knownMissing::contains))
+        .containsExactly(
+            key("nt", "1"), key("nt", "3"), key("nt", "4"), key("nt", "5"),
+            key("ht", "1"), key("ht", "2"));
+  }
+
+  @Test
+  public void onFound__extendsWindowPastHit() {
+    target.plan(ImmutableList.of(key("nt", "3")), key -> false);
+
+    assertThat(target.onFound(key("nt", "4"))).containsExactly(key("nt", "6"));
+    assertThat(target.onFound(key("nt", "10"))).containsExactly(key("nt", "7"), key("nt", "8"), key("nt", "9"),
+                                                                  key("nt", "10"), key("nt", "11"), key("nt", "12"));
+    assertThat(target.onFound(key("nt", "5"))).isEmpty();
+    assertThat(target.onFound(key("h", "5"))).isEmpty();
+  }
+
+  private static HymnalNetKey key(String hymnType, String hymnNumber) {
+    return HymnalNetKey.newBuilder().setHymnType(hymnType).setHymnNumber(hymnNumber).build();
+  }
+}
@@ -0,0 +1,66 @@
+package com.hymnsmobile.pipeline.hymnalnet;
+
+import com.hymnsmobile.pipeline.FileReadWriter;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ResponseCacheTest {
+
+  private static final HymnalNetKey H1 = HymnalNetKey.newBuilder().setHymnType("h").setHymnNumber("1").build();
+  private static final byte[] BODY = "{\"title\": \"Hymn 1\"}".getBytes(StandardCharsets.UTF_8);
+  private static final HttpHeaders HEADERS = HttpHeaders.of(Map.of("ETag", List.of("\"etag\"")), (name, value) -> true);
+
+  @Mock private FileReadWriter fileReadWriter;
+
+  private ResponseCache target;
+
+  @BeforeEach
+  public void setUp() {
+    target = new ResponseCache(fileReadWriter);
+  }
+
+  @Test
+  public void put__sameBody_bodyFileExists__bodyNotWrittenAgain() throws IOException {
+    doReturn(false, true).when(fileReadWriter).exists(anyString());
+
+    target.put(H1, BODY, HEADERS);
+    target.put(H1, BODY, HEADERS);
+
+    verify(fileReadWriter, times(1)).writeBytes(anyString(), any());
+  }
+
+  @Test
+  public void put__sameBody_bodyFileMissing__bodyWrittenAgain() throws IOException {
+    doReturn(false).when(fileReadWriter).exists(anyString());
+
+    target.put(H1, BODY, HEADERS);
+    target.put(H1, BODY, HEADERS);
+
+    verify(fileReadWriter, times(2)).writeBytes(anyString(), any());
+  }
+
+  @Test
+  public void put__noValidators__nothingWritten() throws IOException {
+    target.put(H1, BODY, HttpHeaders.of(Map.of(), (name, value) -> true));
+
+    verify(fileReadWriter, never()).writeBytes(anyString(), any());
+  }
+}
@@ -1,21 +1,29 @@
 package com.hymnsmobile.pipeline.hymnalnet.dagger;
 
 import com.google.common.collect.ImmutableList;
+import com.hymnsmobile.pipeline.hymnalnet.FetchPolicyConfig;
+import com.hymnsmobile.pipeline.hymnalnet.ProbePlanner;
 import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetJson;
 import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetKey;
 import com.hymnsmobile.pipeline.models.Hymn;
 import com.hymnsmobile.pipeline.models.PipelineError;
 import dagger.Module;
 import dagger.Provides;
+import java.net.URI;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Module
 public interface HymnalNetPipelineTestModule {
 
   List<HymnalNetKey> SONGS_TO_FETCH = new ArrayList<>();
+  AtomicInteger FETCH_CONCURRENCY = new AtomicInteger(1);
 
   @HymnalNet
   @Provides
@@ -26,15 +34,50 @@ public interface HymnalNetPipelineTestModule {
 
   @Provides
   @HymnalNetPipelineScope
-  static Set<HymnalNetJson> hymnalNetJsons() {
-    return new HashSet<>();
+  static ConcurrentMap<HymnalNetKey, HymnalNetJson> hymnalNetJsons() {
+    return new ConcurrentHashMap<>();
   }
 
   @HymnalNet
   @Provides
   @HymnalNetPipelineScope
   static Set<PipelineError> errors() {
-    return new HashSet<>();
+    return ConcurrentHashMap.newKeySet();
+  }
+
+  @FetchConcurrency
+  @Provides
+  static int fetchConcurrency() {
+    return FETCH_CONCURRENCY.get();
+  }
+
+  /**
+   * No rate limit and no waiting between retries, so that tests run as fast as possible.
+   */
+  @Provides
+  static FetchPolicyConfig fetchPolicyConfig() {
+    return new FetchPolicyConfig(0, 0, 0, Duration.ofMinutes(1), 3, Duration.ZERO, Duration.ZERO, 10, Duration.ZERO);
+  }
+
+  @HymnalNetEndpoint
+  @Provides
+  static URI hymnalNetEndpoint() {
+    return URI.create("https://hymnalnetapi.herokuapp.com");
+  }
+
+  @RefreshStoredSongs
+  @Provides
+  static boolean refreshStoredSongs() {
+    return false;
+  }
+
+  /**
+   * Tests fetch exactly {@link #SONGS_TO_FETCH}, so nothing is probed.
+   */
+  @Provides
+  @HymnalNetPipelineScope
+  static ProbePlanner probePlanner() {
+    return new ProbePlanner(ImmutableList.of(), 0);
   }
 
   @Provides
@@ -10,7 +10,10 @@ import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.extensions.proto.ProtoTruth.assertThat;
 
@@ -260,4 +263,53 @@ class LanguageAuditorTest {
             .addMessages(songReference4.toString())
             .build());
   }
+
+  @Test
+  public void audit__exceptionNeededByTwoSets__onlyUsedByFirstSet() {
+    SongReference songReference1 =
+        SongReference.newBuilder().setHymnType(HymnType.CLASSIC_HYMN.abbreviatedValue).setHymnNumber("1").build();
+    SongReference songReference2 =
+        SongReference.newBuilder().setHymnType(HymnType.NEW_SONG.abbreviatedValue).setHymnNumber("2").build();
+    SongReference songReference3 =
+        SongReference.newBuilder().setHymnType(HymnType.CLASSIC_HYMN.abbreviatedValue).setHymnNumber("3").build();
+    target.audit(
+        ImmutableSet.of(ImmutableSet.of(songReference1, songReference2),
+                        ImmutableSet.of(songReference1, songReference2, songReference3)),
+        Optional.of(ImmutableSet.of(ImmutableSet.of(songReference1, songReference2))));
+    assertThat(errors).ignoringRepeatedFieldOrder().containsExactly(
+        PipelineError.newBuilder()
+            .setSource(PipelineError.Source.MERGE)
+            .setSeverity(PipelineError.Severity.ERROR)
+            .setErrorType(PipelineError.ErrorType.AUDITOR_TOO_MANY_INSTANCES)
+            .addMessages(HymnType.CLASSIC_HYMN.toString())
+            .addMessages(songReference1.toString())
+            .addMessages(songReference2.toString())
+            .addMessages(songReference3.toString())
+            .build(),
+        PipelineError.newBuilder()
+            .setSource(PipelineError.Source.MERGE)
+            .setSeverity(PipelineError.Severity.ERROR)
+            .setErrorType(PipelineError.ErrorType.AUDITOR_INCOMPATIBLE_LANGUAGES)
+            .addMessages(songReference1.toString())
+            .addMessages(songReference2.toString())
+            .addMessages(songReference3.toString())
+            .build());
+  }
+
+  @Test
+  public void audit__manySets__errorsAddedInOrderOfSets() {
+    Set<PipelineError> orderedErrors = new LinkedHashSet<>();
+    ImmutableSet<Set<SongReference>> songReferenceSets =
+        IntStream.rangeClosed(1, 100)
+            .mapToObj(number -> SongReference.newBuilder()
+                .setHymnType(HymnType.CLASSIC_HYMN.abbreviatedValue)
+                .setHymnNumber(String.valueOf(number))
+                .build())
+            .map(songReference -> (Set<SongReference>) ImmutableSet.of(songReference))
+            .collect(toImmutableSet());
+    new LanguageAuditor(orderedErrors).audit(songReferenceSets, Optional.empty());
+    assertThat(orderedErrors.stream().map(error -> error.getMessages(0)).collect(Collectors.toList()))
+        .containsExactlyElementsIn(songReferenceSets.stream().map(Set::toString).collect(Collectors.toList()))
+        .inOrder();
+  }
 }
@@ -0,0 +1,112 @@
+package com.hymnsmobile.pipeline.merge;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.truth.Truth;
+import com.hymnsmobile.pipeline.models.Hymn;
+import com.hymnsmobile.pipeline.models.SongReference;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.google.common.truth.extensions.proto.ProtoTruth.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MergeWorkspaceTest {
+
+  private static final SongReference CLASSIC_1 =
+      SongReference.newBuilder().setHymnType(HymnType.CLASSIC_HYMN.abbreviatedValue).setHymnNumber("1").build();
+  private static final SongReference CLASSIC_2 =
+      SongReference.newBuilder().setHymnType(HymnType.CLASSIC_HYMN.abbreviatedValue).setHymnNumber("2").build();
+  private static final SongReference BE_FILLED_1 =
+      SongReference.newBuilder().setHymnType(HymnType.BE_FILLED.abbreviatedValue).setHymnNumber("1").build();
+
+  private MergeWorkspace target;
+
+  @BeforeEach
+  public void setUp() {
+    target = new MergeWorkspace();
+  }
+
+  @Test
+  public void get__findsHymnByAnyOfItsReferences() {
+    target.add(Hymn.newBuilder().setId(1).addReferences(CLASSIC_1).addReferences(BE_FILLED_1));
+
+    Truth.assertThat(target.get(CLASSIC_1).map(Hymn.Builder::getId)).hasValue(1);
+    Truth.assertThat(target.get(BE_FILLED_1).map(Hymn.Builder::getId)).hasValue(1);
+    Truth.assertThat(target.get(CLASSIC_2)).isEmpty();
+  }
+
+  @Test
+  public void add__duplicateReference__throwsException() {
+    target.add(Hymn.newBuilder().setId(1).addReferences(CLASSIC_1));
+
+    assertThatThrownBy(() -> target.add(Hymn.newBuilder().setId(2).addReferences(CLASSIC_1)))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void addReference__indexesNewReference() {
+    target.add(Hymn.newBuilder().setId(1).addReferences(CLASSIC_1));
+
+    target.addReference(target.get(CLASSIC_1).orElseThrow(), BE_FILLED_1);
+
+    Truth.assertThat(target.get(BE_FILLED_1).map(Hymn.Builder::getId)).hasValue(1);
+    assertThat(target.build()).containsExactly(
+        Hymn.newBuilder().setId(1).addReferences(CLASSIC_1).addReferences(BE_FILLED_1).build());
+  }
+
+  @Test
+  public void addReference__referenceOwnedByAnotherHymn__throwsException() {
+    target.add(Hymn.newBuilder().setId(1).addReferences(CLASSIC_1));
+    target.add(Hymn.newBuilder().setId(2).addReferences(CLASSIC_2));
+
+    assertThatThrownBy(() -> target.addReference(target.get(CLASSIC_2).orElseThrow(), CLASSIC_1))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void getBuilders__changesAreKept() {
+    target.add(Hymn.newBuilder().setId(1).addReferences(CLASSIC_1));
+
+    target.getBuilders().get(0).setTitle("changed");
+
+    assertThat(target.build()).containsExactly(
+        Hymn.newBuilder().setId(1).addReferences(CLASSIC_1).setTitle("changed").build());
+  }
+
+  @Test
+  public void reindex__referencesChangedOutsideWorkspace__indexesNewReferences() {
+    target.add(Hymn.newBuilder().setId(1).addReferences(CLASSIC_1));
+    target.getBuilders().get(0).clearReferences().addReferences(CLASSIC_2);
+
+    target.reindex();
+
+    Truth.assertThat(target.get(CLASSIC_1)).isEmpty();
+    Truth.assertThat(target.get(CLASSIC_2).map(Hymn.Builder::getId)).hasValue(1);
+  }
+
+  @Test
+  public void build__keepsOrderHymnsWereAdded() {
+    target.add(Hymn.newBuilder().setId(2).addReferences(CLASSIC_2));
+    target.add(Hymn.newBuilder().setId(1).addReferences(CLASSIC_1));
+
+    assertThat(target.build()).containsExactly(
+        Hymn.newBuilder().setId(2).addReferences(CLASSIC_2).build(),
+        Hymn.newBuilder().setId(1).addReferences(CLASSIC_1).build()).inOrder();
+    Truth.assertThat(target.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void takeChangedReferences__onlyHymnsChangedSinceLastTime() {
+    target.add(Hymn.newBuilder().setId(1).addReferences(CLASSIC_1));
+    target.add(Hymn.newBuilder().setId(2).addReferences(CLASSIC_2));
+    assertThat(target.takeChangedReferences()).containsExactly(CLASSIC_1, CLASSIC_2);
+    assertThat(target.takeChangedReferences()).isEmpty();
+
+    target.add(Hymn.newBuilder().setId(3).addReferences(BE_FILLED_1));
+    target.addLanguage(target.get(CLASSIC_2).orElseThrow(), BE_FILLED_1);
+    target.markChanged(ImmutableSet.of(CLASSIC_1));
+
+    assertThat(target.takeChangedReferences()).containsExactly(BE_FILLED_1, CLASSIC_2, CLASSIC_1);
+    assertThat(target.takeChangedReferences()).isEmpty();
+  }
+}
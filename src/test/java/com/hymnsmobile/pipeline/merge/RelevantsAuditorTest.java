@@ -162,4 +162,31 @@ class RelevantsAuditorTest {
             .addMessages(String.format("[%s, %s]", songReference3, songReference4))
             .build());
   }
+
+  @Test
+  public void audit__scopeExcludesException__exceptionStaysUsed() {
+    SongReference songReference1 =
+        SongReference.newBuilder().setHymnType(HymnType.CLASSIC_HYMN.abbreviatedValue).setHymnNumber("1").build();
+    SongReference songReference2 =
+        SongReference.newBuilder().setHymnType(HymnType.NEW_SONG.abbreviatedValue).setHymnNumber("2").build();
+    SongReference songReference3 =
+        SongReference.newBuilder().setHymnType(HymnType.CLASSIC_HYMN.abbreviatedValue).setHymnNumber("3").build();
+    target.audit(
+        ImmutableSet.of(new HashSet<>(ImmutableSet.of(songReference1, songReference2))),
+        Optional.of(ImmutableSet.of(ImmutableSet.of(songReference1, songReference2))));
+
+    // The set that the exception applies to hasn't changed, so it isn't audited again.
+    target.audit(ImmutableSet.of(), Optional.empty(), Optional.of(ImmutableSet.of(songReference3)));
+    assertThat(errors).isEmpty();
+
+    // Once it changes and the exception no longer applies, the exception is obsolete.
+    target.audit(ImmutableSet.of(), Optional.empty(), Optional.of(ImmutableSet.of(songReference1)));
+    assertThat(errors).containsExactly(
+        PipelineError.newBuilder()
+            .setSource(PipelineError.Source.MERGE)
+            .setSeverity(PipelineError.Severity.WARNING)
+            .setErrorType(PipelineError.ErrorType.AUDITOR_OBSOLETE_EXCEPTION)
+            .addMessages(String.format("[%s, %s]", songReference1, songReference2))
+            .build());
+  }
 }
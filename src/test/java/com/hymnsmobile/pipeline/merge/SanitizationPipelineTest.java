@@ -2,6 +2,7 @@ package com.hymnsmobile.pipeline.merge;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.hymnsmobile.pipeline.Profiler;
 import com.hymnsmobile.pipeline.merge.exceptions.Exceptions;
 import com.hymnsmobile.pipeline.merge.patchers.Patcher;
 import com.hymnsmobile.pipeline.models.Hymn;
@@ -30,12 +31,13 @@ class SanitizationPipelineTest {
   @BeforeEach
   public void setUp() {
     this.errors = new HashSet<>();
-    this.target = new SanitizationPipeline(new LanguageAuditor(errors), new RelevantsAuditor(errors), errors);
+    this.target =
+        new SanitizationPipeline(new LanguageAuditor(errors), new RelevantsAuditor(errors), new Profiler(), errors);
   }
 
   @Test
   public void sanitize__emptyInput__returnsEmptyResult() {
-    assertThat(target.sanitize(ImmutableList.of())).isEmpty();
+    assertThat(sanitize(ImmutableList.of())).isEmpty();
     assertThat(errors).isEmpty();
   }
 
@@ -44,7 +46,7 @@ class SanitizationPipelineTest {
     Hymn hymn = Hymn.newBuilder()
                     .addReferences(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
                     .build();
-    assertThat(target.sanitize(ImmutableList.of(hymn))).containsExactly(hymn);
+    assertThat(sanitize(ImmutableList.of(hymn))).containsExactly(hymn);
     assertThat(errors).isEmpty();
   }
 
@@ -53,7 +55,7 @@ class SanitizationPipelineTest {
     Hymn hymn = Hymn.newBuilder()
                     .addLanguages(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
                     .build();
-    assertThatThrownBy(() -> target.sanitize(ImmutableList.of(hymn)))
+    assertThatThrownBy(() -> sanitize(ImmutableList.of(hymn)))
         .isInstanceOf(IllegalStateException.class)
         .hasMessage("hymn references were empty");
     assertThat(errors).isEmpty();
@@ -65,7 +67,7 @@ class SanitizationPipelineTest {
                     .addReferences(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
                     .addLanguages(SongReference.newBuilder().setHymnNumber("c").setHymnNumber("1"))
                     .build();
-    assertThatThrownBy(() -> target.sanitize(ImmutableList.of(hymn)))
+    assertThatThrownBy(() -> sanitize(ImmutableList.of(hymn)))
         .isInstanceOf(IllegalStateException.class)
         .hasMessage("results was not of size 1");
     assertThat(errors).isEmpty();
@@ -117,7 +119,7 @@ class SanitizationPipelineTest {
                            .addReferences(SongReference.newBuilder().setHymnType("nt").setHymnNumber("1"))
                            .addRelevants(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
                            .build();
-    ImmutableList<Hymn> result = target.sanitize(ImmutableList.of(h1, ch1, de1, nt1, pt1));
+    ImmutableList<Hymn> result = sanitize(ImmutableList.of(h1, ch1, de1, nt1, pt1));
     assertThat(result).containsExactly(h1Expected, ch1Expected, de1Expected, nt1Expected, pt1);
     assertThat(errors).isEmpty();
   }
@@ -160,7 +162,7 @@ class SanitizationPipelineTest {
                            .addReferences(SongReference.newBuilder().setHymnType("nt").setHymnNumber("1"))
                            .addRelevants(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
                            .build();
-    ImmutableList<Hymn> result = target.sanitize(ImmutableList.of(h1, ch1, de1, nt1));
+    ImmutableList<Hymn> result = sanitize(ImmutableList.of(h1, ch1, de1, nt1));
     assertThat(result).containsExactly(h1Expected, ch1Expected, de1Expected, nt1Expected);
     assertThat(errors).isEmpty();
   }
@@ -183,7 +185,7 @@ class SanitizationPipelineTest {
                            .addReferences(SongReference.newBuilder().setHymnType("nt").setHymnNumber("1"))
                            .addRelevants(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
                            .build();
-    ImmutableList<Hymn> result = target.sanitize(ImmutableList.of(h1, nt1));
+    ImmutableList<Hymn> result = sanitize(ImmutableList.of(h1, nt1));
     assertThat(result).containsExactly(h1Expected, nt1Expected);
     assertThat(errors).isEmpty();
   }
@@ -224,7 +226,7 @@ class SanitizationPipelineTest {
 
     Exceptions exceptions = mock(Exceptions.class);
 
-    ImmutableList<Hymn> result = target.sanitize(ImmutableList.of(h1, ch1, de1, nt1), patcher, exceptions);
+    ImmutableList<Hymn> result = sanitize(ImmutableList.of(h1, ch1, de1, nt1), patcher, exceptions);
     result.stream().map(Hymn::getFlattenedLyrics).forEach(c -> Assertions.assertEquals(c, "patched"));
     result.stream().map(Hymn::getTitle).forEach(c -> Assertions.assertEquals(c, "also patched"));
     assertThat(errors).isEmpty();
@@ -239,7 +241,7 @@ class SanitizationPipelineTest {
     Hymn h1Expected = Hymn.newBuilder()
                           .addReferences(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
                           .build();
-    ImmutableList<Hymn> result = target.sanitize(ImmutableList.of(h1));
+    ImmutableList<Hymn> result = sanitize(ImmutableList.of(h1));
     assertThat(result).containsExactly(h1Expected);
     assertThat(errors).containsExactly(
         PipelineError.newBuilder()
@@ -266,7 +268,7 @@ class SanitizationPipelineTest {
                   .addReferences(SongReference.newBuilder().setHymnType("h").setHymnNumber("2"))
                   .addLanguages(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
                   .build();
-    ImmutableList<Hymn> result = target.sanitize(ImmutableList.of(h1, h2));
+    ImmutableList<Hymn> result = sanitize(ImmutableList.of(h1, h2));
     assertThat(result).containsExactly(h1, h2);
     assertThat(errors).ignoringRepeatedFieldOrder().containsExactly(
         PipelineError.newBuilder()
@@ -290,7 +292,7 @@ class SanitizationPipelineTest {
                   .addLanguages(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
                   .build();
     ImmutableList<Hymn> result =
-        target.sanitize(ImmutableList.of(h1, h2),
+        sanitize(ImmutableList.of(h1, h2),
                         new Patcher(errors) {
                           @Override
                           protected void performPatch() {
@@ -344,7 +346,7 @@ class SanitizationPipelineTest {
                            .addLanguages(SongReference.newBuilder().setHymnType("h").setHymnNumber("2"))
                            .build();
     ImmutableList<Hymn> result =
-        target.sanitize(ImmutableList.of(h1, h2, ch1),
+        sanitize(ImmutableList.of(h1, h2, ch1),
                         new Patcher(errors) {
                           @Override
                           protected void performPatch() {
@@ -398,7 +400,7 @@ class SanitizationPipelineTest {
                            .addRelevants(SongReference.newBuilder().setHymnType("h").setHymnNumber("2"))
                            .build();
     ImmutableList<Hymn> result =
-        target.sanitize(ImmutableList.of(h1, h2, ch1),
+        sanitize(ImmutableList.of(h1, h2, ch1),
                         new Patcher(errors) {
                           @Override
                           protected void performPatch() {
@@ -425,4 +427,160 @@ class SanitizationPipelineTest {
     assertThat(result).containsExactly(h1, h2Expected, ch1Expected);
     assertThat(errors).isEmpty();
   }
+
+  @Test
+  public void sanitize__linksReachedFromDifferentHymns__mergedInOrderOfHymns() {
+    Hymn h1 = Hymn.newBuilder()
+                  .addReferences(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
+                  .addLanguages(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
+                  .build();
+    Hymn ch1 = Hymn.newBuilder()
+                   .addReferences(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
+                   .build();
+    Hymn de1 = Hymn.newBuilder()
+                   .addReferences(SongReference.newBuilder().setHymnType("de").setHymnNumber("1"))
+                   .addLanguages(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
+                   .build();
+
+    Hymn h1Expected = Hymn.newBuilder()
+                          .addReferences(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
+                          .addLanguages(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
+                          .addLanguages(SongReference.newBuilder().setHymnType("de").setHymnNumber("1"))
+                          .build();
+    Hymn ch1Expected = Hymn.newBuilder()
+                           .addReferences(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
+                           .addLanguages(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
+                           .addLanguages(SongReference.newBuilder().setHymnType("de").setHymnNumber("1"))
+                           .build();
+    Hymn de1Expected = Hymn.newBuilder()
+                           .addReferences(SongReference.newBuilder().setHymnType("de").setHymnNumber("1"))
+                           .addLanguages(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
+                           .addLanguages(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
+                           .build();
+    ImmutableList<Hymn> result = sanitize(ImmutableList.of(h1, ch1, de1));
+    assertThat(result).containsExactly(h1Expected, ch1Expected, de1Expected).inOrder();
+    assertThat(errors).isEmpty();
+  }
+
+  @Test
+  public void sanitize__changedReferences__onlySanitizesLinkedHymns() {
+    Hymn h1 = Hymn.newBuilder()
+                  .addReferences(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
+                  .addLanguages(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
+                  .build();
+    Hymn ch1 = Hymn.newBuilder()
+                   .addReferences(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
+                   .addLanguages(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
+                   .build();
+    Hymn de1 = Hymn.newBuilder()
+                   .addReferences(SongReference.newBuilder().setHymnType("de").setHymnNumber("1"))
+                   .addLanguages(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
+                   .build();
+    // Not linked to anything that changed, so it is left as it is, even though it isn't sanitized.
+    Hymn h2 = Hymn.newBuilder()
+                  .addReferences(SongReference.newBuilder().setHymnType("h").setHymnNumber("2"))
+                  .addLanguages(SongReference.newBuilder().setHymnType("ch").setHymnNumber("2"))
+                  .build();
+    Hymn ch2 = Hymn.newBuilder()
+                   .addReferences(SongReference.newBuilder().setHymnType("ch").setHymnNumber("2"))
+                   .build();
+
+    Hymn h1Expected = Hymn.newBuilder()
+                          .addReferences(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
+                          .addLanguages(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
+                          .addLanguages(SongReference.newBuilder().setHymnType("de").setHymnNumber("1"))
+                          .build();
+    Hymn ch1Expected = Hymn.newBuilder()
+                           .addReferences(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
+                           .addLanguages(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
+                           .addLanguages(SongReference.newBuilder().setHymnType("de").setHymnNumber("1"))
+                           .build();
+    Hymn de1Expected = Hymn.newBuilder()
+                           .addReferences(SongReference.newBuilder().setHymnType("de").setHymnNumber("1"))
+                           .addLanguages(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
+                           .addLanguages(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
+                           .build();
+    ImmutableList<Hymn> result = sanitize(
+        ImmutableList.of(h1, ch1, de1, h2, ch2),
+        ImmutableSet.of(SongReference.newBuilder().setHymnType("de").setHymnNumber("1").build()));
+    assertThat(result).containsExactly(h1Expected, ch1Expected, de1Expected, h2, ch2).inOrder();
+    assertThat(errors).isEmpty();
+  }
+
+  @Test
+  public void sanitize__noChangedReferences__leavesHymnsAsTheyAre() {
+    Hymn h1 = Hymn.newBuilder()
+                  .addReferences(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
+                  .addLanguages(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
+                  .build();
+    Hymn ch1 = Hymn.newBuilder()
+                   .addReferences(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
+                   .build();
+    assertThat(sanitize(ImmutableList.of(h1, ch1), ImmutableSet.of())).containsExactly(h1, ch1).inOrder();
+    assertThat(errors).isEmpty();
+  }
+
+  @Test
+  public void sanitize__postSanitizePatch__sanitizedNextTime() {
+    Hymn h1 = Hymn.newBuilder()
+                  .addReferences(SongReference.newBuilder().setHymnType("h").setHymnNumber("1"))
+                  .build();
+    Hymn ch1 = Hymn.newBuilder()
+                   .addReferences(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"))
+                   .build();
+    MergeWorkspace workspace = new MergeWorkspace();
+    workspace.add(h1.toBuilder());
+    workspace.add(ch1.toBuilder());
+
+    Patcher patcher = mock(Patcher.class);
+    doAnswer(invocation -> {
+      ImmutableList<Hymn.Builder> builders = invocation.getArgument(0);
+      builders.get(0).addLanguages(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1"));
+      return null;
+    }).when(patcher).postSanitizePatches(any());
+    target.sanitize(workspace, patcher, mock(Exceptions.class));
+    // The patched link is left as it is until the next time around.
+    assertThat(workspace.build()).containsExactly(
+        h1.toBuilder().addLanguages(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1")).build(),
+        ch1).inOrder();
+
+    target.sanitize(workspace);
+    assertThat(workspace.build()).containsExactly(
+        h1.toBuilder().addLanguages(SongReference.newBuilder().setHymnType("ch").setHymnNumber("1")).build(),
+        ch1.toBuilder().addLanguages(SongReference.newBuilder().setHymnType("h").setHymnNumber("1")).build())
+        .inOrder();
+    assertThat(errors).isEmpty();
+  }
+
+  /**
+   * Sanitizes {@code hymns} as if they were all just added to the workspace.
+   */
+  private ImmutableList<Hymn> sanitize(ImmutableList<Hymn> hymns) {
+    MergeWorkspace workspace = workspaceOf(hymns);
+    target.sanitize(workspace);
+    return workspace.build();
+  }
+
+  private ImmutableList<Hymn> sanitize(ImmutableList<Hymn> hymns, Patcher patcher, Exceptions exceptions) {
+    MergeWorkspace workspace = workspaceOf(hymns);
+    target.sanitize(workspace, patcher, exceptions);
+    return workspace.build();
+  }
+
+  /**
+   * Sanitizes {@code hymns} as if they were already sanitized, and then only {@code changedReferences} changed.
+   */
+  private ImmutableList<Hymn> sanitize(ImmutableList<Hymn> hymns, Set<SongReference> changedReferences) {
+    MergeWorkspace workspace = workspaceOf(hymns);
+    workspace.takeChangedReferences();
+    workspace.markChanged(changedReferences);
+    target.sanitize(workspace);
+    return workspace.build();
+  }
+
+  private static MergeWorkspace workspaceOf(ImmutableList<Hymn> hymns) {
+    MergeWorkspace workspace = new MergeWorkspace();
+    hymns.forEach(hymn -> workspace.add(hymn.toBuilder()));
+    return workspace;
+  }
 }
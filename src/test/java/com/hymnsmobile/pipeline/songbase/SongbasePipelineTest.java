@@ -42,8 +42,8 @@ class SongbasePipelineTest {
 
     ArgumentCaptor<String> fileName = ArgumentCaptor.forClass(String.class);
     ArgumentCaptor<String> response = ArgumentCaptor.forClass(String.class);
-    verify(MOCK_FILE_WRITER).writeString(fileName.capture(), response.capture());
-    assertThat(fileName.getValue()).isEqualTo("storage/songbase/1993-07-17_10-10-00_PDT.txt");
+    verify(MOCK_FILE_WRITER).writeCompressedString(fileName.capture(), response.capture());
+    assertThat(fileName.getValue()).isEqualTo("storage/songbase/1993-07-17_10-10-00_PDT.txt.gz");
     assertThat(response.getValue()).isEqualTo(TestUtils.readText("src/test/resources/songbase/input/_api_v2_app_data"));
   }
 }
\ No newline at end of file
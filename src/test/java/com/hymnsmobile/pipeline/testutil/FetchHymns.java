@@ -9,4 +9,9 @@ import java.lang.annotation.Target;
 @Target({ElementType.TYPE, ElementType.METHOD})
 public @interface FetchHymns {
   String[] keysToFetch();
+
+  /**
+   * Number of songs fetched in parallel.
+   */
+  int concurrency() default 1;
 }
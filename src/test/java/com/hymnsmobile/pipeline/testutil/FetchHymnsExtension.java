@@ -16,12 +16,13 @@ public class FetchHymnsExtension implements BeforeEachCallback, AfterEachCallbac
 
   @Override
   public void beforeEach(ExtensionContext context) {
-    String[] keysToFetch = getKeysToFetch(context);
-    if (keysToFetch == null) {
+    FetchHymns fetchHymns = getFetchHymns(context);
+    if (fetchHymns == null) {
       return;
     }
+    HymnalNetPipelineTestModule.FETCH_CONCURRENCY.set(fetchHymns.concurrency());
     HymnalNetPipelineTestModule.SONGS_TO_FETCH.addAll(
-        ImmutableList.copyOf(keysToFetch).stream().map(keyToFetch -> {
+        ImmutableList.copyOf(fetchHymns.keysToFetch()).stream().map(keyToFetch -> {
           String[] parts = keyToFetch.split("/");
           if (parts.length < 2 || parts.length > 3) {
             throw new RuntimeException(String.format("%s is an invalid key to fetch", keyToFetch));
@@ -38,16 +39,17 @@ public class FetchHymnsExtension implements BeforeEachCallback, AfterEachCallbac
   @Override
   public void afterEach(ExtensionContext context) {
     HymnalNetPipelineTestModule.SONGS_TO_FETCH.clear();
+    HymnalNetPipelineTestModule.FETCH_CONCURRENCY.set(1);
   }
 
   /**
-   * Retrieves the names of fixture files for test
+   * Retrieves the songs to fetch for test, and how to fetch them
    */
-  private String[] getKeysToFetch(ExtensionContext context) {
+  private FetchHymns getFetchHymns(ExtensionContext context) {
     // Method-level fixture annotations have precedence over class-level fixture annotations
     FetchHymns methodAnnotation = context.getRequiredTestMethod().getAnnotation(FetchHymns.class);
     if (methodAnnotation != null) {
-      return methodAnnotation.keysToFetch();
+      return methodAnnotation;
     }
 
     // if a test has no annotation, then return null
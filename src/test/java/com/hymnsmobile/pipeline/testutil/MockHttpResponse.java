@@ -5,6 +5,7 @@ import java.net.http.HttpClient.Version;
 import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.Map;
 import java.util.Optional;
 import javax.net.ssl.SSLSession;
 
@@ -35,7 +36,7 @@ public class MockHttpResponse implements HttpResponse<String> {
 
   @Override
   public HttpHeaders headers() {
-    return null;
+    return HttpHeaders.of(Map.of(), (name, value) -> true);
   }
 
   @Override
@@ -0,0 +1,93 @@
+package com.hymnsmobile.pipeline.testutil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Response for requests made with {@link HttpResponse.BodyHandlers#ofInputStream()}. Every call to {@link #body()}
+ * returns a fresh stream, so the same response can be served more than once.
+ */
+public class MockStreamingHttpResponse implements HttpResponse<InputStream> {
+
+  private final int statusCode;
+  private final byte[] body;
+  private final HttpHeaders headers;
+
+  public MockStreamingHttpResponse(int statusCode, String body) {
+    this(statusCode, body.getBytes(StandardCharsets.UTF_8), Map.of());
+  }
+
+  private MockStreamingHttpResponse(int statusCode, byte[] body, Map<String, List<String>> headers) {
+    this.statusCode = statusCode;
+    this.body = body;
+    this.headers = HttpHeaders.of(headers, (name, value) -> true);
+  }
+
+  /**
+   * Response whose body is gzip-encoded, as if the server honored "Accept-Encoding: gzip".
+   */
+  public static MockStreamingHttpResponse gzipped(int statusCode, String body) {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+      gzip.write(body.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new MockStreamingHttpResponse(
+        statusCode, compressed.toByteArray(), Map.of("Content-Encoding", List.of("gzip")));
+  }
+
+  @Override
+  public int statusCode() {
+    return statusCode;
+  }
+
+  @Override
+  public HttpRequest request() {
+    return null;
+  }
+
+  @Override
+  public Optional<HttpResponse<InputStream>> previousResponse() {
+    return Optional.empty();
+  }
+
+  @Override
+  public HttpHeaders headers() {
+    return headers;
+  }
+
+  @Override
+  public InputStream body() {
+    return new ByteArrayInputStream(body);
+  }
+
+  @Override
+  public Optional<SSLSession> sslSession() {
+    return Optional.empty();
+  }
+
+  @Override
+  public URI uri() {
+    return null;
+  }
+
+  @Override
+  public Version version() {
+    return null;
+  }
+}
@@ -2,6 +2,7 @@ package com.hymnsmobile.pipeline.testutil;
 
 import com.hymnsmobile.pipeline.dagger.PipelineTestModule;
 import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNet;
+import com.hymnsmobile.pipeline.hymnalnet.models.HymnalNetDelta;
 import org.junit.jupiter.api.extension.AfterEachCallback;
 import org.junit.jupiter.api.extension.BeforeEachCallback;
 import org.junit.jupiter.api.extension.ExtensionContext;
@@ -10,6 +11,8 @@ import org.mockito.Mockito;
 import java.io.IOException;
 import java.util.Optional;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 
 public class ReadFromStorageExtension implements BeforeEachCallback, AfterEachCallback {
@@ -24,9 +27,11 @@ public class ReadFromStorageExtension implements BeforeEachCallback, AfterEachCa
       doAnswer(invocation -> Optional.of(c60))
           .when(PipelineTestModule.MOCK_FILE_WRITER)
           .readLatestOutput(
-              "storage/hymnalnet",
-              Optional.of("\\d\\d\\d\\d-\\d\\d-\\d\\d_\\d\\d-\\d\\d-\\d\\d_[A-Z]{3}"),
-              com.hymnsmobile.pipeline.hymnalnet.models.HymnalNet.parser());
+              eq("storage/hymnalnet"),
+              eq(Optional.of("\\d\\d\\d\\d-\\d\\d-\\d\\d_\\d\\d-\\d\\d-\\d\\d_[A-Z]{3}")),
+              eq(com.hymnsmobile.pipeline.hymnalnet.models.HymnalNet.parser()),
+              eq(HymnalNetDelta.parser()),
+              any());
     }
   }
 
@@ -0,0 +1,244 @@
+package com.hymnsmobile.pipeline.testutil;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for the Hymnal.net and Songbase APIs, serving the fixtures under {@code src/test/resources/hymnalnet/input}
+ * and {@code src/test/resources/songbase/input}. Unlike mocked responses, requests actually go over the network, so
+ * this can be used to measure fetch throughput and latency, and to see how the fetchers cope with slow, flaky or
+ * throttling servers.
+ */
+public class StandInServer implements AutoCloseable {
+
+  private static final String HYMNAL_NET_FIXTURES = "src/test/resources/hymnalnet/input";
+  private static final String SONGBASE_FIXTURES = "src/test/resources/songbase/input";
+  private static final String HYMNAL_NET_PREFIX = "/hymnalnet";
+  private static final String SONGBASE_PREFIX = "/songbase";
+  private static final String CHECK_EXISTS = "check_exists=true";
+
+  /**
+   * How the server should (mis)behave.
+   */
+  public static class Config {
+
+    /**
+     * Added to every response.
+     */
+    public final Duration latency;
+
+    /**
+     * Up to this much extra latency is added to every response, at random.
+     */
+    public final Duration latencyJitter;
+
+    /**
+     * Fraction of requests that fail with a 500.
+     */
+    public final double errorRate;
+
+    /**
+     * Requests above this rate get a 429 with a Retry-After. Non-positive means no limit.
+     */
+    public final int maxRequestsPerSecond;
+
+    /**
+     * Hymnal.net fixture (e.g. "_v2_hymn_h_1336") to serve for songs that don't have a fixture of their own, so that
+     * the server can stand in for a full-size catalogue. If absent, those songs are reported as not found.
+     */
+    public final Optional<String> fallbackFixture;
+
+    public Config(Duration latency, Duration latencyJitter, double errorRate, int maxRequestsPerSecond,
+        Optional<String> fallbackFixture) {
+      this.latency = latency;
+      this.latencyJitter = latencyJitter;
+      this.errorRate = errorRate;
+      this.maxRequestsPerSecond = maxRequestsPerSecond;
+      this.fallbackFixture = fallbackFixture;
+    }
+
+    public static Config wellBehaved() {
+      return new Config(Duration.ZERO, Duration.ZERO, 0, 0, Optional.empty());
+    }
+  }
+
+  private final Config config;
+  private final HttpServer server;
+  private final ExecutorService executor;
+
+  private final List<Duration> latencies = Collections.synchronizedList(new ArrayList<>());
+  private final Map<Integer, AtomicLong> statusCodes = new ConcurrentHashMap<>();
+  private final AtomicLong bytesSent = new AtomicLong();
+
+  // Throttling window, guarded by this.
+  private long windowStartNanos;
+  private int requestsInWindow;
+
+  private StandInServer(Config config) throws IOException {
+    this.config = config;
+    this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    this.executor = Executors.newCachedThreadPool();
+    this.server.createContext(HYMNAL_NET_PREFIX, exchange -> handle(exchange, this::hymnalNetFixture));
+    this.server.createContext(SONGBASE_PREFIX, exchange -> handle(exchange, this::songbaseFixture));
+    this.server.setExecutor(executor);
+  }
+
+  public static StandInServer start(Config config) throws IOException {
+    StandInServer standInServer = new StandInServer(config);
+    standInServer.server.start();
+    return standInServer;
+  }
+
+  /**
+   * To be injected as the Hymnal.net endpoint.
+   */
+  public URI getHymnalNetEndpoint() {
+    return URI.create(String.format("http://localhost:%d%s", server.getAddress().getPort(), HYMNAL_NET_PREFIX));
+  }
+
+  public URI getSongbaseDbDumpUri() {
+    return URI.create(
+        String.format("http://localhost:%d%s/api/v2/app_data", server.getAddress().getPort(), SONGBASE_PREFIX));
+  }
+
+  /**
+   * Time spent handling each request so far, including the injected latency.
+   */
+  public List<Duration> getLatencies() {
+    synchronized (latencies) {
+      return List.copyOf(latencies);
+    }
+  }
+
+  public Map<Integer, Long> getStatusCodes() {
+    Map<Integer, Long> counts = new ConcurrentHashMap<>();
+    statusCodes.forEach((statusCode, count) -> counts.put(statusCode, count.get()));
+    return counts;
+  }
+
+  public long getBytesSent() {
+    return bytesSent.get();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private interface FixtureResolver {
+    Optional<Path> resolve(URI requestUri);
+  }
+
+  private void handle(HttpExchange exchange, FixtureResolver fixtureResolver) throws IOException {
+    long start = System.nanoTime();
+    try {
+      sleep(config.latency.plusNanos(config.latencyJitter.isZero() ? 0 :
+          ThreadLocalRandom.current().nextLong(config.latencyJitter.toNanos())));
+
+      if (isThrottled()) {
+        exchange.getResponseHeaders().add("Retry-After", "1");
+        respond(exchange, 429, "Too many requests");
+      } else if (config.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < config.errorRate) {
+        respond(exchange, 500, "Internal server error");
+      } else {
+        Optional<Path> fixture = fixtureResolver.resolve(exchange.getRequestURI());
+        if (fixture.isEmpty()) {
+          // Hymnal.net responds with a 400 for songs that don't exist.
+          respond(exchange, 400, "Not found");
+        } else {
+          respond(exchange, 200, Files.readString(fixture.get(), StandardCharsets.UTF_8));
+        }
+      }
+    } finally {
+      exchange.close();
+      latencies.add(Duration.ofNanos(System.nanoTime() - start));
+    }
+  }
+
+  private void respond(HttpExchange exchange, int statusCode, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+    if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+        gzip.write(bytes);
+      }
+      bytes = compressed.toByteArray();
+      exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+    }
+    exchange.sendResponseHeaders(statusCode, bytes.length);
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(bytes);
+    }
+    statusCodes.computeIfAbsent(statusCode, unused -> new AtomicLong()).incrementAndGet();
+    bytesSent.addAndGet(bytes.length);
+  }
+
+  /**
+   * Fixtures are named after the request path with "/" replaced by "_", followed by any query params other than
+   * "check_exists" (e.g. "_v2_hymn_ch_1?gb=1").
+   */
+  private Optional<Path> hymnalNetFixture(URI requestUri) {
+    String path = requestUri.getPath().substring(HYMNAL_NET_PREFIX.length());
+    String query = Optional.ofNullable(requestUri.getQuery()).orElse("")
+        .replace("&" + CHECK_EXISTS, "").replace(CHECK_EXISTS, "");
+    String fileName = path.replace("/", "_") + (query.isEmpty() ? "" : "?" + query);
+    Path fixture = Path.of(HYMNAL_NET_FIXTURES, fileName);
+    if (Files.exists(fixture)) {
+      return Optional.of(fixture);
+    }
+    return config.fallbackFixture.map(fallback -> Path.of(HYMNAL_NET_FIXTURES, fallback));
+  }
+
+  private Optional<Path> songbaseFixture(URI requestUri) {
+    String path = requestUri.getPath().substring(SONGBASE_PREFIX.length());
+    Path fixture = Path.of(SONGBASE_FIXTURES, path.replace("/", "_"));
+    return Files.exists(fixture) ? Optional.of(fixture) : Optional.empty();
+  }
+
+  private synchronized boolean isThrottled() {
+    if (config.maxRequestsPerSecond <= 0) {
+      return false;
+    }
+    long now = System.nanoTime();
+    if (now - windowStartNanos >= TimeUnit.SECONDS.toNanos(1)) {
+      windowStartNanos = now;
+      requestsInWindow = 0;
+    }
+    return ++requestsInWindow > config.maxRequestsPerSecond;
+  }
+
+  private static void sleep(Duration duration) {
+    if (duration.isZero()) {
+      return;
+    }
+    try {
+      Thread.sleep(duration.toMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}